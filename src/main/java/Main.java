@@ -1,22 +1,52 @@
+import nes.APU;
 import nes.NES;
 import nes.CPU;
 import nes.EmulatorRunner;
 import nes.Memory;
+import nes.PPU;
+import nes.audio.AudioSink;
+import nes.audio.BlipBuffer;
+import nes.audio.LatencyProbe;
+import nes.audio.LineAudioSink;
+import nes.audio.NullAudioSink;
+import nes.audio.StemCapture;
+import nes.audio.WavAudioSink;
+import nes.audio.WavStemSink;
 import nes.gui.DebuggerWindow;
+import nes.gui.CanvasDisplay;
 import nes.gui.Display;
+import nes.gui.KeyboardInput;
+import nes.recording.Recorder;
+import nes.video.FanOutFrameSink;
+import nes.video.FrameCapture;
+import nes.video.FrameSink;
+import nes.video.PostProcessor;
 import javax.swing.SwingUtilities;
 
 import java.io.*;
 import java.util.*;
 
 public class Main {
+    private static final int STEM_LOG_CAPACITY = 1 << 18; // Register writes kept per channel for --stems
 
     public static void main(String[] args) {
         if (args.length > 0 && args[0].equals("--verify")) {
             runVerification();
         } else {
-            String romPath = args.length > 0 ? args[0] : "resources/nestest.nes";
-            runGameLoop(romPath);
+            String romPath = "resources/nestest.nes";
+            Map<String, String> options = new HashMap<>();
+            for (String arg : args) {
+                if (arg.startsWith("--")) {
+                    int eq = arg.indexOf('=');
+                    if (eq != -1)
+                        options.put(arg.substring(2, eq), arg.substring(eq + 1));
+                    else
+                        options.put(arg.substring(2), "");
+                } else {
+                    romPath = arg;
+                }
+            }
+            runGameLoop(romPath, options);
         }
     }
 
@@ -60,18 +90,114 @@ public class Main {
         }
     }
 
-    private static void runGameLoop(String romPath) {
+    private static void runGameLoop(String romPath, Map<String, String> options) {
         try {
+            // Options are checked before any window opens, so a typo exits cleanly
+            // --sample-rate=N picks the audio output rate; the APU synthesizes at it directly
+            int sampleRate = parseSampleRate(options.get("sample-rate"));
+            // --audio-quality=fast|standard|high sets the synthesis kernel length
+            BlipBuffer.Quality quality = parseQuality(options.get("audio-quality"));
+            // --frameskip=N skips N frames after each drawn one, --frameskip=auto only when behind
+            String frameSkipOption = options.get("frameskip");
+            boolean adaptiveFrameSkip = "auto".equals(frameSkipOption);
+            int frameSkip = adaptiveFrameSkip ? 0
+                    : parseIntOption("frameskip", frameSkipOption, 0, 0, "--frameskip=N|auto (N >= 0)");
+            // --dump=DIR writes every --dump-every=N frames as --dump-format=png|index
+            int dumpEvery = parseIntOption("dump-every", options.get("dump-every"), 1, 1, "--dump-every=N (N >= 1)");
+            FrameCapture.Format dumpFormat = parseDumpFormat(options.get("dump-format"));
+
             // GUI Initialization (EDT recommended, but simple here)
-            Display display = new Display();
+            // --display=canvas presents each frame with page flipping instead of repaint()
+            KeyboardInput input = new KeyboardInput();
+            FrameSink display;
+            if (options.containsKey("filter")) {
+                // --filter=scale2x,ntsc post-processes off the emulation thread (canvas display only)
+                CanvasDisplay canvas = new CanvasDisplay(input);
+                display = new PostProcessor(canvas, PostProcessor.parseFilters(options.get("filter")));
+            } else if ("canvas".equals(options.get("display"))) {
+                display = new CanvasDisplay(input);
+            } else {
+                display = new Display(input);
+            }
+
+            // --record=FILE writes a lossless video + audio recording, encoded off the emulation thread
+            Recorder recorder = null;
+            if (options.containsKey("record")) {
+                recorder = new Recorder(options.get("record"), sampleRate);
+                display = new FanOutFrameSink(display, recorder);
+            }
+
+            // F12 saves a screenshot, --dump=DIR the frame sequence, all encoded
+            // on background threads
+            FrameCapture capture = new FrameCapture();
+            display = new FanOutFrameSink(display, capture);
+            input.setScreenshotAction(() -> capture
+                    .requestScreenshot(new File(String.format("screenshot-%1$tY%1$tm%1$td-%1$tH%1$tM%1$tS.png", new Date())))
+                    .thenAccept(file -> System.out.println("Saved " + file)));
+            if (options.containsKey("dump"))
+                capture.startDump(new File(options.get("dump")), dumpEvery, dumpFormat);
+
+            // --wav=FILE streams the audio to a WAV file instead of the sound card
+            AudioSink audio;
+            WavAudioSink wav = null;
+            LatencyProbe latencyProbe = null;
+            if (options.containsKey("wav")) {
+                wav = new WavAudioSink(options.get("wav"), sampleRate);
+                audio = wav;
+            } else {
+                // --audio-buffer=RING,LINE,CHUNK sizes the playback buffers in samples
+                // (default 4096,2048,256); smaller is lower latency but underruns sooner
+                LineAudioSink line;
+                if (options.containsKey("audio-buffer"))
+                    line = openLine(sampleRate, options.get("audio-buffer"));
+                else
+                    line = LineAudioSink.open(sampleRate);
+                if (line != null)
+                    System.out.printf("Audio latency (nominal): %.1f ms%n", line.getNominalLatencyMillis());
+                if (line != null && options.containsKey("latency-probe"))
+                    latencyProbe = startLatencyProbe(line, options.get("latency-probe"));
+                audio = line != null ? line : new NullAudioSink(sampleRate);
+            }
 
             // Core Initialization
-            NES nes = new NES(display);
+            NES nes = new NES(display, audio);
             nes.loadROM(romPath);
 
+            if (latencyProbe != null)
+                nes.getApu().setLatencyProbe(latencyProbe);
+
+            if (quality != null)
+                nes.getApu().setQuality(quality);
+
+            if (recorder != null)
+                nes.getApu().addHook(recorder);
+
+            // --stems=FILE also writes each channel's pre-mix signal to a 5-channel
+            // WAV, and each channel's register writes to FILE.log on exit
+            String stemPath = options.get("stems");
+            WavStemSink stemWav = null;
+            StemCapture stems = null;
+            if (stemPath != null) {
+                stemWav = new WavStemSink(stemPath, sampleRate);
+                stems = nes.getApu().startStemCapture(stemWav, STEM_LOG_CAPACITY);
+            }
+
+            // --renderer=scanline trades mid-line accuracy for speed (per game)
+            if ("scanline".equals(options.get("renderer")))
+                nes.getPpu().setRenderer(PPU.RENDERER_SCANLINE);
+
+            if (adaptiveFrameSkip)
+                nes.getPpu().setAdaptiveFrameSkip(4);
+            else if (frameSkip > 0)
+                nes.getPpu().setFrameSkip(frameSkip);
+
+            // --renderthread draws frames on a second thread, one frame behind emulation
+            if (options.containsKey("renderthread"))
+                nes.getPpu().setPipelinedRendering(true);
+
             // Connect Controller
             // Display already has key listener, needs to feed NES controller
-            display.setController(nes.getController()); // Controller created inside NES now
+            input.setController(nes.getController()); // Controller created inside NES now
 
             // Start Emulation Thread
             System.out.println("Starting Emulation Thread...");
@@ -83,6 +209,25 @@ public class Main {
             // Start
             runner.start();
 
+            // Closing the debugger exits the JVM, so output files are finished in one
+            // ordered hook: join the emulation thread first so no sink is written
+            // while it closes
+            Recorder activeRecorder = recorder;
+            WavAudioSink activeWav = wav;
+            WavStemSink activeStemWav = stemWav;
+            StemCapture activeStems = stems;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                runner.stop();
+                closeAndReport(activeRecorder, "recording");
+                closeAndReport(activeWav, "WAV");
+                closeAndReport(capture, "frame dump");
+                if (activeStems != null) {
+                    nes.getApu().stopStemCapture();
+                    closeAndReport(activeStemWav, "stems");
+                    closeAndReport(() -> writeStemLog(activeStems, stemPath + ".log"), "stem log");
+                }
+            }, "Shutdown"));
+
             System.out.println("Emulator running.");
 
             // Launch Debugger
@@ -97,6 +242,122 @@ public class Main {
         }
     }
 
+    private static void closeAndReport(Closeable closeable, String what) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            System.err.println("Error writing " + what + ": " + e.getMessage());
+        }
+    }
+
+    // Stops with a usage message if the sizes are malformed or out of range
+    private static LineAudioSink openLine(int sampleRate, String sizes) {
+        String[] fields = sizes.split(",");
+        try {
+            if (fields.length != 3)
+                throw new IllegalArgumentException("Expected three sizes: " + sizes);
+            return LineAudioSink.open(sampleRate, Integer.parseInt(fields[0].trim()),
+                    Integer.parseInt(fields[1].trim()), Integer.parseInt(fields[2].trim()));
+        } catch (IllegalArgumentException e) { // Also NumberFormatException
+            rejectOption("audio-buffer", e.getMessage(), "--audio-buffer=RING,LINE,CHUNK (samples, default 4096,2048,256)");
+            return null;
+        }
+    }
+
+    private static int parseSampleRate(String value) {
+        if (value == null)
+            return APU.SAMPLE_RATE;
+        try {
+            int rate = Integer.parseInt(value);
+            if (rate >= APU.MIN_SAMPLE_RATE && rate <= APU.MAX_SAMPLE_RATE)
+                return rate;
+        } catch (NumberFormatException e) {
+            // Rejected below
+        }
+        rejectOption("sample-rate", value,
+                "--sample-rate=N (Hz, " + APU.MIN_SAMPLE_RATE + ".." + APU.MAX_SAMPLE_RATE + ")");
+        return 0;
+    }
+
+    // Null keeps the APU's default
+    private static BlipBuffer.Quality parseQuality(String value) {
+        if (value == null)
+            return null;
+        try {
+            return BlipBuffer.Quality.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            rejectOption("audio-quality", value, "--audio-quality=fast|standard|high");
+            return null;
+        }
+    }
+
+    private static FrameCapture.Format parseDumpFormat(String value) {
+        if (value == null)
+            return FrameCapture.Format.PNG;
+        try {
+            return FrameCapture.Format.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            rejectOption("dump-format", value, "--dump-format=png|index");
+            return null;
+        }
+    }
+
+    // An integer of at least min, or defaultValue if the option is absent
+    private static int parseIntOption(String option, String value, int defaultValue, int min, String usage) {
+        if (value == null)
+            return defaultValue;
+        try {
+            int n = Integer.parseInt(value);
+            if (n >= min)
+                return n;
+        } catch (NumberFormatException e) {
+            // Rejected below
+        }
+        rejectOption(option, value, usage);
+        return defaultValue;
+    }
+
+    // Prints why an option was rejected and how to use it, then exits
+    private static void rejectOption(String option, String detail, String usage) {
+        System.err.println("Invalid --" + option + ": " + detail);
+        System.err.println("Usage: " + usage);
+        System.exit(1);
+    }
+
+    private static void writeStemLog(StemCapture stems, String path) throws IOException {
+        try (Writer log = new BufferedWriter(new FileWriter(path))) {
+            for (int c = 0; c < StemCapture.CHANNELS; c++) {
+                log.write("# " + StemCapture.NAMES[c] + System.lineSeparator());
+                stems.getLog(c).writeTo(log);
+            }
+            log.write("# control" + System.lineSeparator());
+            stems.getControlLog().writeTo(log);
+        }
+    }
+
+    // --latency-probe[=ADDR] times writes to an APU register (hex, default $4003:
+    // pulse 1 note start) until their samples reach the line, reported every 2 s
+    private static LatencyProbe startLatencyProbe(LineAudioSink line, String address) {
+        LatencyProbe probe = new LatencyProbe(address.isEmpty() ? 0x4003 : Integer.parseInt(address, 16));
+        line.setLatencyProbe(probe);
+        Thread reporter = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                System.out.printf("Latency %s; %d underruns, %d dropped%n", probe, line.getUnderruns(),
+                        line.getSamplesDropped());
+            }
+        }, "LatencyReport");
+        reporter.setDaemon(true);
+        reporter.start();
+        return probe;
+    }
+
     private static String cleanLogLine(String logLine) {
         int ppuIndex = logLine.indexOf("PPU:");
         int cycIndex = logLine.indexOf("CYC:");
@@ -1,31 +1,46 @@
 package nes;
 
-import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.SourceDataLine;
+import java.util.ArrayList;
+import java.util.List;
+
+import nes.audio.AudioSink;
+import nes.audio.BlipBuffer;
+import nes.audio.FilterChain;
+import nes.audio.LatencyProbe;
+import nes.audio.NullAudioSink;
+import nes.audio.ScopeTap;
+import nes.audio.StemCapture;
+import nes.audio.StemSink;
+import nes.hooks.AudioHook;
 
-// Sync-to-Audio Implementation
 public class APU {
 
-    // Audio Output
-    private final SourceDataLine line;
-    private final byte[] outputBuffer = new byte[1470];
-    private int outputIndex = 0;
-
-    // NTSC CPU Frequency = 1.789773 MHz
-    // Sample Rate = 44100 Hz
-    // Cycles per Sample = 1789773 / 44100 = ~40.58
-    private static final double CYCLES_PER_SAMPLE = 40.5844;
-    private double cycleCounter = 0; // Tracks when to emit a sample
-
-    // Accumulators for Oversampling
-    private double p1Sum = 0;
-    private double p2Sum = 0;
-    private double triSum = 0;
-    private double noiseSum = 0;
-    private double dmcSum = 0;
-    private int sampleCount = 0; // Number of CPU cycles accumulated
+    // Audio Output. Samples are synthesized directly at the sink's rate.
+    public static final int SAMPLE_RATE = AudioSink.DEFAULT_SAMPLE_RATE;
+    public static final int MIN_SAMPLE_RATE = 8000;
+    public static final int MAX_SAMPLE_RATE = 192000;
+
+    private final AudioSink sink;
+    private final int sampleRate;
+
+    // NTSC CPU Frequency = 1.789773 MHz. Channels feed amplitude changes into
+    // a BlipBuffer, which is turned into samples once per FRAME_CYCLES (one
+    // video frame's worth of CPU time, ~735 samples at 44.1 kHz).
+    private static final double CPU_CLOCK = 1789773.0;
+    private static final int FRAME_CYCLES = 29781;
+    private static final int MIX_SCALE = 32767; // Mixer output 0..~1.0 in BlipBuffer units
+
+    private final int maxFrameSamples; // One frame plus headroom for rateAdjustment()
+    private BlipBuffer blip;
+    private BlipBuffer.Quality quality = BlipBuffer.Quality.STANDARD;
+    private final int[] frameSamples;
+    private final short[] pcm;
+    private final byte[] outputBuffer;
+    private long clock = 0; // CPU cycle the APU has run up to
+    private int frameTime = 0; // CPU cycles since the BlipBuffer frame started
+    private int mixLevel = 0; // Mixed output last handed to the BlipBuffer
+    private long samplesOut = 0; // Samples handed to the sink so far
+    private LatencyProbe latencyProbe; // null unless measuring
 
     // External Dependencies
     private Memory memory;
@@ -114,9 +129,8 @@ public class APU {
     private int dmcPeriod = 0;
     private int dmcTimer = 0;
 
-    // Filter State
-    private double prevSample = 0;
-    private double prevOutput = 0;
+    // Output stage (90 Hz and 440 Hz high-pass, 14 kHz low-pass)
+    private final FilterChain filters;
 
     // Tables
     private static final int[][] DUTY_TABLE = {
@@ -144,23 +158,101 @@ public class APU {
             428, 380, 340, 320, 286, 254, 226, 214, 190, 160, 142, 128, 106, 84, 72, 54
     };
 
-    public APU() {
-        SourceDataLine tempLine = null;
-        try {
-            AudioFormat format = new AudioFormat(44100, 16, 1, true, false);
-            tempLine = AudioSystem.getSourceDataLine(format);
-            tempLine.open(format, 4096);
-            tempLine.start();
-        } catch (LineUnavailableException e) {
-            e.printStackTrace();
+    // Nonlinear mixer, precomputed in MIX_SCALE units:
+    // pulse_out = 95.88 / (8128 / (p1 + p2) + 100)
+    // tnd_out = 163.67 / (24329 / (3 * tri + 2 * noise + dmc) + 100)
+    private static final int[] PULSE_TABLE = new int[31];
+    private static final int[] TND_TABLE = new int[203];
+
+    static {
+        for (int n = 1; n < PULSE_TABLE.length; n++) {
+            PULSE_TABLE[n] = (int) Math.round(95.88 / (8128.0 / n + 100) * MIX_SCALE);
+        }
+        for (int n = 1; n < TND_TABLE.length; n++) {
+            TND_TABLE[n] = (int) Math.round(163.67 / (24329.0 / n + 100) * MIX_SCALE);
         }
-        this.line = tempLine;
+    }
+
+    // frameCycle values stepFrameCounter() acts on (29830 wraps 4-step mode)
+    private static final int[] FRAME_COUNTER_STEPS = { 7457, 14913, 22371, 29829, 29830, 37281 };
+
+    public APU() {
+        this(NullAudioSink.INSTANCE);
+    }
+
+    public APU(AudioSink sink) {
+        this.sink = sink;
+        this.sampleRate = sink.getSampleRate();
+        if (sampleRate < MIN_SAMPLE_RATE || sampleRate > MAX_SAMPLE_RATE)
+            throw new IllegalArgumentException("Unsupported sample rate: " + sampleRate);
+        maxFrameSamples = (int) (FRAME_CYCLES * (sampleRate / CPU_CLOCK) * 1.25) + 16;
+        blip = new BlipBuffer(CPU_CLOCK, sampleRate, maxFrameSamples, quality);
+        frameSamples = new int[maxFrameSamples];
+        pcm = new short[maxFrameSamples];
+        outputBuffer = new byte[maxFrameSamples * 2];
+        filters = new FilterChain(sampleRate);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public BlipBuffer.Quality getQuality() {
+        return quality;
+    }
+
+    // Switches the synthesis kernel. Meant for setup: mid-frame, whatever the
+    // current frame has synthesized so far comes out as a ramp, not clean audio.
+    public void setQuality(BlipBuffer.Quality quality) {
+        if (quality == this.quality)
+            return;
+        this.quality = quality;
+        blip = new BlipBuffer(CPU_CLOCK, sampleRate, maxFrameSamples, quality);
+        if (mixLevel != 0)
+            blip.addDelta(frameTime, mixLevel);
     }
 
     public void setMemory(Memory memory) {
         this.memory = memory;
     }
 
+    // Stamps writes to the probe's register with the sample they land on
+    public void setLatencyProbe(LatencyProbe probe) {
+        this.latencyProbe = probe;
+    }
+
+    // === Scope ===
+    private volatile ScopeTap scope; // Set from the EDT while the debugger shows it
+
+    public void setScopeTap(ScopeTap tap) {
+        this.scope = tap;
+    }
+
+    // === Stems ===
+    private StemCapture stems; // null unless capturing
+
+    // Starts capturing each channel to its own stream plus per-channel
+    // register-write logs of logCapacity entries. Call between frames.
+    public StemCapture startStemCapture(StemSink sink, int logCapacity) {
+        stems = new StemCapture(sink, CPU_CLOCK, sampleRate, maxFrameSamples, quality, logCapacity);
+        return stems;
+    }
+
+    public void stopStemCapture() {
+        stems = null;
+    }
+
+    // === Hooks ===
+    private final List<AudioHook> hooks = new ArrayList<>();
+
+    public void addHook(AudioHook hook) {
+        hooks.add(hook);
+    }
+
+    public void removeHook(AudioHook hook) {
+        hooks.remove(hook);
+    }
+
     public void setCpu(CPU cpu) {
         this.cpu = cpu;
     }
@@ -197,6 +289,10 @@ public class APU {
     }
 
     public void writeRegister(int addr, int value) {
+        if (stems != null)
+            stems.logWrite(clock, addr, value);
+        if (latencyProbe != null && addr == latencyProbe.getAddress())
+            latencyProbe.onWrite(samplesOut + (long) (frameTime * (sampleRate / CPU_CLOCK)));
         switch (addr) {
             // Pulse 1
             case 0x4000:
@@ -381,50 +477,88 @@ public class APU {
     private boolean pendingFrameIrqEnabled;
     private boolean pendingWrite;
 
-    public void tick() {
-        // Run logic EVERY cycle (Oversampling)
+    // === Catch-up ===
+    // The APU can lag behind the CPU: nothing observes it except $4015 reads,
+    // the IRQ line and the sample output. Memory syncs it before register
+    // access and mapper writes, EmulatorRunner when nextIrqCycle() is reached
+    // and at the end of each frame. run() is exact in any chunking, so the
+    // output is the same as running it after every instruction.
 
-        // 1. Step Channels
-        stepPulse1();
-        stepPulse2();
-        stepTriangle();
-        stepNoise();
-        stepDMC();
+    public static final long NEVER = Long.MAX_VALUE;
 
-        // 2. Accumulate Outputs
-        if (p1LengthCounter > 0 && !p1Sweep.mute && DUTY_TABLE[p1Duty][p1Sequence] != 0) {
-            p1Sum += p1Envelope.output;
-        }
-        if (p2LengthCounter > 0 && !p2Sweep.mute && DUTY_TABLE[p2Duty][p2Sequence] != 0) {
-            p2Sum += p2Envelope.output;
-        }
-        if (triLengthCounter > 0 && triLinearCounter > 0) {
-            triSum += TRIANGLE_SEQUENCE[triSequence];
-        }
-        if (noiseLengthCounter > 0 && (noiseShiftRegister & 0x01) == 0) {
-            noiseSum += noiseEnvelope.output;
+    public void setClock(long cpuCycle) {
+        clock = cpuCycle;
+    }
+
+    public long getClock() {
+        return clock;
+    }
+
+    public void syncTo(long cpuCycle) {
+        if (cpuCycle > clock)
+            run((int) (cpuCycle - clock));
+    }
+
+    // Earliest CPU cycle by which the IRQ line may have risen on its own; a
+    // lower bound, so syncing there can find it still low. NEVER while it is
+    // already up: only register access lowers it again, and that syncs first.
+    public long nextIrqCycle() {
+        if (irqActive)
+            return NEVER;
+        long next = NEVER;
+        if (frameCounterResetDelay > 0) {
+            next = clock + frameCounterResetDelay; // Mode and IRQ enable about to change
+        } else if (!frameCounterMode && frameIrqEnabled) {
+            int cycles = 29829 - frameCycle;
+            next = clock + (cycles > 0 ? cycles : cycles + 29830);
         }
-        if (dmcBytesRemaining > 0 || dmcBitsRemaining > 0) {
-            dmcSum += dmcOutputLevel;
+        if (dmcIrqEnabled && !dmcLoop && dmcBytesRemaining > 0 && dmcPeriod > 0) {
+            // Last byte fetched at the next timer expiry at the soonest, then
+            // at least 8 expiries per further byte
+            long fetch = clock + dmcTimer + 1 + (dmcBytesRemaining - 1L) * 8 * (dmcPeriod + 1);
+            next = Math.min(next, fetch);
         }
+        return next;
+    }
 
-        sampleCount++;
-        cycleCounter++;
-
-        // 3. Downsample
-        if (cycleCounter >= CYCLES_PER_SAMPLE) {
-            cycleCounter -= CYCLES_PER_SAMPLE;
-            generateSample();
+    // Runs the APU for the given number of CPU cycles. Work is done per event
+    // rather than per cycle: the span is cut at frame counter clocks and
+    // BlipBuffer frame ends, and inside each piece the channel timers jump
+    // from one expiry to the next.
+    public void run(int cycles) {
+        while (cycles > 0) {
+            int n = Math.min(cycles, Math.min(cyclesToFrameCounterEvent(), FRAME_CYCLES - frameTime));
+            runChannels(frameTime, n);
+            runFrameCounter(n);
+            frameTime += n;
+            clock += n;
+            cycles -= n;
+            if (frameTime == FRAME_CYCLES)
+                endFrame();
+        }
+    }
 
-            p1Sum = 0;
-            p2Sum = 0;
-            triSum = 0;
-            noiseSum = 0;
-            dmcSum = 0;
-            sampleCount = 0;
+    // Cycles until the next cycle on which the frame counter does something
+    // (reset delay expiring or a sequencer step), counting that cycle
+    private int cyclesToFrameCounterEvent() {
+        int n = Integer.MAX_VALUE;
+        if (frameCounterResetDelay > 0)
+            n = frameCounterResetDelay;
+        for (int step : FRAME_COUNTER_STEPS) {
+            if (step > frameCycle) {
+                return Math.min(n, step - frameCycle);
+            }
         }
+        return n;
+    }
 
-        // 4. Frame Counter Stepping (Handle Reset Delay)
+    // Advances the frame counter n cycles; only the last can be an event
+    private void runFrameCounter(int n) {
+        frameCycle += n - 1;
+        if (frameCounterResetDelay > 0)
+            frameCounterResetDelay -= n - 1;
+
+        // Handle Reset Delay
         if (frameCounterResetDelay > 0) {
             frameCounterResetDelay--;
             if (frameCounterResetDelay == 0) {
@@ -449,6 +583,83 @@ public class APU {
         stepFrameCounter();
     }
 
+    // Steps the channel timers over n cycles starting at BlipBuffer time
+    // 'time'. Between expiries a timer only counts down, so those cycles are
+    // skipped in one subtraction; the output can only change on an expiry, or
+    // through register writes and frame counter clocks between calls.
+    //
+    // Channels that can't be heard until then (length counter out, volume 0,
+    // triangle halted) don't bound the loop: countDownTimers() moves their
+    // timers, sequencers and LFSR forward in bulk, to the same state.
+    private void runChannels(int time, int n) {
+        updateLevel(time);
+        boolean p1Quiet = p1LengthCounter == 0 || p1Sweep.mute || p1Envelope.output == 0;
+        boolean p2Quiet = p2LengthCounter == 0 || p2Sweep.mute || p2Envelope.output == 0;
+        boolean triQuiet = triLengthCounter == 0 || triLinearCounter == 0;
+        boolean noiseQuiet = noiseLengthCounter == 0 || noiseEnvelope.output == 0;
+        int end = time + n;
+        while (true) {
+            int next = Integer.MAX_VALUE;
+            if (!p1Quiet)
+                next = p1Timer;
+            if (!p2Quiet)
+                next = Math.min(next, p2Timer);
+            if (!triQuiet)
+                next = Math.min(next, triTimer);
+            if (!noiseQuiet)
+                next = Math.min(next, noiseTimer);
+            if (dmcPeriod > 0)
+                next = Math.min(next, dmcTimer);
+            if (next >= end - time) {
+                countDownTimers(end - time);
+                return;
+            }
+            countDownTimers(next);
+            time += next;
+
+            // At least one timer expires on this cycle
+            stepPulse1();
+            stepPulse2();
+            stepTriangle();
+            stepNoise();
+            stepDMC();
+            updateLevel(time);
+            time++;
+        }
+    }
+
+    // Only quiet channels' timers can expire within cycles; each expiry does
+    // what the stepper would, so the result is the same as stepping
+    private void countDownTimers(int cycles) {
+        int p1Period = (p1TimerLow | (p1TimerHigh << 8)) * 2 + 1;
+        p1Sequence = (p1Sequence + expiries(p1Timer, p1Period, cycles)) & 7;
+        p1Timer = advanceTimer(p1Timer, p1Period, cycles);
+
+        int p2Period = (p2TimerLow | (p2TimerHigh << 8)) * 2 + 1;
+        p2Sequence = (p2Sequence + expiries(p2Timer, p2Period, cycles)) & 7;
+        p2Timer = advanceTimer(p2Timer, p2Period, cycles);
+
+        triTimer = advanceTimer(triTimer, triTimerLow | (triTimerHigh << 8), cycles); // Halted: no sequencing
+
+        for (int i = expiries(noiseTimer, noisePeriod, cycles); i > 0; i--) {
+            clockNoiseShiftRegister();
+        }
+        noiseTimer = advanceTimer(noiseTimer, noisePeriod, cycles);
+
+        if (dmcPeriod > 0)
+            dmcTimer -= cycles;
+    }
+
+    // Reloads of a timer over the next cycles: it counts down to 0, and the
+    // cycle after that reloads it with period
+    private static int expiries(int timer, int period, int cycles) {
+        return cycles <= timer ? 0 : (cycles - timer - 1) / (period + 1) + 1;
+    }
+
+    private static int advanceTimer(int timer, int period, int cycles) {
+        return cycles <= timer ? timer - cycles : period - (cycles - timer - 1) % (period + 1);
+    }
+
     // --- Steppers ---
     private void stepPulse1() {
         if (p1Timer > 0) {
@@ -484,16 +695,20 @@ public class APU {
             noiseTimer--;
         } else {
             noiseTimer = noisePeriod;
-            int feedback;
-            if (noiseMode)
-                feedback = (noiseShiftRegister & 0x01) ^ ((noiseShiftRegister >> 6) & 0x01);
-            else
-                feedback = (noiseShiftRegister & 0x01) ^ ((noiseShiftRegister >> 1) & 0x01);
-            noiseShiftRegister >>= 1;
-            noiseShiftRegister |= (feedback << 14);
+            clockNoiseShiftRegister();
         }
     }
 
+    private void clockNoiseShiftRegister() {
+        int feedback;
+        if (noiseMode)
+            feedback = (noiseShiftRegister & 0x01) ^ ((noiseShiftRegister >> 6) & 0x01);
+        else
+            feedback = (noiseShiftRegister & 0x01) ^ ((noiseShiftRegister >> 1) & 0x01);
+        noiseShiftRegister >>= 1;
+        noiseShiftRegister |= (feedback << 14);
+    }
+
     private void stepDMC() {
         if (dmcPeriod > 0) {
             if (dmcTimer > 0)
@@ -603,52 +818,59 @@ public class APU {
         p2Sweep.clock(p2TimerLow | (p2TimerHigh << 8), 1);
     }
 
-    private void generateSample() {
-        if (sampleCount == 0)
-            return;
-
-        double outP1 = p1Sum / sampleCount;
-        double outP2 = p2Sum / sampleCount;
-        double outTri = triSum / sampleCount;
-        double outNoise = noiseSum / sampleCount;
-        double outDMC = dmcSum / sampleCount; // Should accumulate DMC too, technically
-
-        // --- Hardware Accurate Mixing ---
-        double pulseOut = 0;
-        if (outP1 > 0 || outP2 > 0) {
-            pulseOut = 95.88 / ((8128.0 / (outP1 + outP2)) + 100.0);
-        }
-
-        double tndOut = 0;
-        if (outTri > 0 || outNoise > 0 || outDMC > 0) {
-            double denom = (outTri / 8227.0) + (outNoise / 12241.0) + (outDMC / 22638.0);
-            if (denom > 0)
-                tndOut = 159.79 / ((1.0 / denom) + 100.0);
+    // Hands a change of the mixed output to the BlipBuffer
+    private void updateLevel(int time) {
+        int p1 = 0, p2 = 0, tri = 0, noise = 0, dmc = 0;
+        if (p1LengthCounter > 0 && !p1Sweep.mute && DUTY_TABLE[p1Duty][p1Sequence] != 0)
+            p1 = p1Envelope.output;
+        if (p2LengthCounter > 0 && !p2Sweep.mute && DUTY_TABLE[p2Duty][p2Sequence] != 0)
+            p2 = p2Envelope.output;
+        if (triLengthCounter > 0 && triLinearCounter > 0)
+            tri = TRIANGLE_SEQUENCE[triSequence];
+        if (noiseLengthCounter > 0 && (noiseShiftRegister & 0x01) == 0)
+            noise = noiseEnvelope.output;
+        if (dmcBytesRemaining > 0 || dmcBitsRemaining > 0)
+            dmc = dmcOutputLevel;
+
+        ScopeTap tap = scope;
+        if (tap != null)
+            tap.update(time, p1, p2, tri, noise, dmc);
+        if (stems != null)
+            stems.update(time, PULSE_TABLE[p1], PULSE_TABLE[p2], TND_TABLE[3 * tri], TND_TABLE[2 * noise], TND_TABLE[dmc]);
+
+        int level = PULSE_TABLE[p1 + p2] + TND_TABLE[3 * tri + 2 * noise + dmc];
+        if (level != mixLevel) {
+            blip.addDelta(time, level - mixLevel);
+            mixLevel = level;
         }
+    }
 
-        double output = pulseOut + tndOut;
-
-        // --- High Pass Filter ---
-        double temp = output;
-        output = temp - prevSample + 0.996 * prevOutput;
-        prevSample = temp;
-        prevOutput = output;
-
-        if (output > 1.0)
-            output = 1.0;
-        if (output < -1.0)
-            output = -1.0;
-
-        short finalSample = (short) (output * 32767.0);
+    // Closes a BlipBuffer frame and outputs its samples in one batch
+    private void endFrame() {
+        blip.endFrame(FRAME_CYCLES);
+        frameTime = 0;
+        int count = blip.readSamples(frameSamples);
 
-        outputBuffer[outputIndex++] = (byte) (finalSample & 0xFF);
-        outputBuffer[outputIndex++] = (byte) ((finalSample >> 8) & 0xFF);
+        filters.process(frameSamples, pcm, count);
 
-        if (outputIndex >= outputBuffer.length) {
-            if (line != null)
-                line.write(outputBuffer, 0, outputBuffer.length);
-            outputIndex = 0;
+        if (!hooks.isEmpty()) {
+            for (int i = 0; i < count; i++) {
+                outputBuffer[i * 2] = (byte) (pcm[i] & 0xFF);
+                outputBuffer[i * 2 + 1] = (byte) ((pcm[i] >> 8) & 0xFF);
+            }
+            for (AudioHook hook : hooks) {
+                hook.onSamples(outputBuffer, 0, count * 2);
+            }
         }
+        sink.write(pcm, count);
+        samplesOut += count;
+        double rate = sampleRate * sink.rateAdjustment();
+        blip.setSampleRate(rate);
+        if (stems != null)
+            stems.endFrame(FRAME_CYCLES, rate);
+        ScopeTap tap = scope;
+        if (tap != null)
+            tap.endFrame(FRAME_CYCLES);
     }
 
     // === Inner Classes ===
@@ -72,6 +72,7 @@ public class CPU {
     public int PC = 0; // Program Counter
     private int flags = 0x24; // Status Flags (Initially I=1, U=1)
     private long totalCycles = 0; // Total CPU cycles executed
+    private long stepStartCycle = 0;
     private boolean loggingEnabled = false;
 
     private final Memory memory;
@@ -102,6 +103,12 @@ public class CPU {
         return totalCycles;
     }
 
+    // Cycle count when the current instruction (or DMA step) began. Devices
+    // that are caught up lazily sync to this before being accessed.
+    public long getStepStartCycle() {
+        return stepStartCycle;
+    }
+
     public void reset(Integer startPC) {
         if (startPC != null) {
             PC = startPC;
@@ -112,6 +119,7 @@ public class CPU {
         flags = 0x24; // IRQ Disabled (I=1), Unused Bit (5) always set
         setSP(STACK_START); // Set stack pointer using bitfield
         totalCycles = 7; // Initialization takes 7 cycles
+        stepStartCycle = totalCycles;
     }
 
     public void reset() { // Default NES CPU behaviour
@@ -284,6 +292,8 @@ public class CPU {
     // === Execution ===
 
     public int executeNextInstruction() {
+        stepStartCycle = totalCycles;
+
         // Capture I flag state BEFORE instruction execution
         // This is used for "Delayed" interrupt handling (CLI/SEI/PLP)
         prevIFlag = getFlag(FLAG_I);
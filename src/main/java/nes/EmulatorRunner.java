@@ -1,11 +1,19 @@
 package nes;
 
+import java.util.concurrent.locks.LockSupport;
+
 public class EmulatorRunner implements Runnable {
     private final NES nes;
     private volatile boolean running = false;
     private volatile boolean paused = false;
+    private volatile boolean catchUp = true; // Lazy PPU catch-up instead of lock-step
     private Thread thread;
 
+    // NTSC: 1789773 Hz / 29780.5 CPU cycles per frame
+    private static final long FRAME_NANOS = Math.round(1e9 / 60.0988);
+    private static final long MAX_LAG_NANOS = 4 * FRAME_NANOS; // Further behind than this, stop catching up
+    private long nextFrameTime;
+
     public EmulatorRunner(NES nes) {
         this.nes = nes;
     }
@@ -15,6 +23,7 @@ public class EmulatorRunner implements Runnable {
             return;
         running = true;
         paused = false;
+        nextFrameTime = System.nanoTime();
         thread = new Thread(this, "EmulatorThread");
         thread.start();
     }
@@ -37,6 +46,14 @@ public class EmulatorRunner implements Runnable {
         return paused;
     }
 
+    public void setCatchUpScheduling(boolean enabled) {
+        this.catchUp = enabled;
+    }
+
+    public boolean isCatchUpScheduling() {
+        return catchUp;
+    }
+
     public void step() {
         if (!paused)
             return; // Only step when paused
@@ -66,15 +83,60 @@ public class EmulatorRunner implements Runnable {
                 continue;
 
             // Generate one frame
-            while (!ppu.frameComplete && running && !paused) {
-                stepSystem(cpu, ppu, apu);
+            if (catchUp) {
+                while (!ppu.frameComplete && running && !paused) {
+                    stepBurst(cpu, ppu, apu);
+                }
+                ppu.syncTo(cpu.getTotalCycles()); // Level again for step() and mode switches
+                apu.syncTo(cpu.getTotalCycles()); // Hands the frame's audio over
+            } else {
+                while (!ppu.frameComplete && running && !paused) {
+                    stepSystem(cpu, ppu, apu);
+                }
             }
 
             ppu.frameComplete = false;
-            // No sleep needed as APU audio writes block to sync speed
+            waitForNextFrame();
         }
     }
 
+    // Frame pacing. Audio no longer blocks the emulation thread; it follows
+    // this clock and corrects the drift itself (see LineAudioSink).
+    private void waitForNextFrame() {
+        nextFrameTime += FRAME_NANOS;
+        long now = System.nanoTime();
+        if (now - nextFrameTime > MAX_LAG_NANOS) {
+            nextFrameTime = now; // Paused, debugger stop or a slow host: don't race to catch up
+            return;
+        }
+        while (running && nextFrameTime - now > 0) {
+            LockSupport.parkNanos(nextFrameTime - now);
+            now = System.nanoTime();
+        }
+    }
+
+    // Runs exactly one frame on the calling thread (headless / batch use).
+    // Must not be mixed with start() on the same NES.
+    public void runFrame() {
+        CPU cpu = nes.getCpu();
+        PPU ppu = nes.getPpu();
+        APU apu = nes.getApu();
+        if (cpu == null)
+            return;
+
+        if (catchUp) {
+            while (!ppu.frameComplete) {
+                stepBurst(cpu, ppu, apu);
+            }
+            apu.syncTo(cpu.getTotalCycles());
+        } else {
+            while (!ppu.frameComplete) {
+                stepSystem(cpu, ppu, apu);
+            }
+        }
+        ppu.frameComplete = false;
+    }
+
     private void stepCpu() {
         CPU cpu = nes.getCpu();
         PPU ppu = nes.getPpu();
@@ -87,6 +149,7 @@ public class EmulatorRunner implements Runnable {
     // Single system step (CPU instruction + PPU/APU clocking)
     private void stepSystem(CPU cpu, PPU ppu, APU apu) {
         long lastTotalCycles = cpu.getTotalCycles();
+        apu.syncTo(lastTotalCycles); // No-op unless catch-up left it behind
 
         // Execute Instruction (or DMA step)
         cpu.executeNextInstruction();
@@ -105,12 +168,41 @@ public class EmulatorRunner implements Runnable {
         long cyclesToRun = currentTotalCycles - lastTotalCycles;
 
         // Clock PPU (3x) and APU (1x)
-        for (int i = 0; i < cyclesToRun * 3; i++) {
-            ppu.tick();
+        ppu.run((int) (cyclesToRun * 3));
+        apu.syncTo(currentTotalCycles);
+    }
+
+    // Same step with the PPU left behind the CPU. It is only brought forward
+    // when the CPU touches it (Memory syncs on PPU registers, mapper writes and
+    // interrupt checks), when the NMI line may have changed (VBlank, pre-render
+    // clear) and when the frame ends. Nothing the CPU can observe changes in
+    // between, so the result matches lock-step. The APU is left behind the
+    // same way: synced on its registers, its predicted IRQ and the frame end.
+    private void stepBurst(CPU cpu, PPU ppu, APU apu) {
+        long lastTotalCycles = cpu.getTotalCycles();
+
+        // Lock-step samples the NMI line with the PPU at the instruction start
+        if (lastTotalCycles >= Math.min(ppu.nextVBlankCycle(), ppu.nextFlagClearCycle())) {
+            ppu.syncTo(lastTotalCycles);
+        }
+
+        cpu.executeNextInstruction();
+
+        if (!cpu.isDmaActive()) {
+            cpu.setNMI(ppu.nmiOccurred);
+        }
+        // Lock-step checks the IRQ line with the APU at the instruction start
+        if (lastTotalCycles >= apu.nextIrqCycle()) {
+            apu.syncTo(lastTotalCycles);
         }
+        if (apu.irqActive && !cpu.isDmaActive()) {
+            cpu.irq();
+        }
+
+        long currentTotalCycles = cpu.getTotalCycles();
 
-        for (int i = 0; i < cyclesToRun; i++) {
-            apu.tick();
+        if (currentTotalCycles >= ppu.nextFrameEndCycle()) {
+            ppu.syncTo(currentTotalCycles);
         }
     }
 }
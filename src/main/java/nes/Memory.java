@@ -26,8 +26,12 @@ public class Memory {
     private boolean isChrRam = false;
 
     // Mapper State
+    public static final int MAPPER_NSF = 0x100; // Not an iNES number: NSF player banking
     private int mapperID;
 
+    // NSF State: 4KB PRG bank for each of $8000, $9000 ... $F000 ($5FF8-$5FFF)
+    private final int[] nsfBanks = new int[8];
+
     // MMC1 State
     private int currShift = 0;
     private int shiftCount = 0;
@@ -60,18 +64,35 @@ public class Memory {
     }
 
     public boolean isNmiAsserted() {
+        syncPpu();
         return ppu != null && ppu.nmiOccurred;
     }
 
     public void consumeNmi() {
+        syncPpu();
         if (ppu != null)
             ppu.nmiOccurred = false;
     }
 
     public boolean willNmiFire(int cpuCycles) {
+        syncPpu();
         return ppu != null && ppu.willNmiFire(cpuCycles);
     }
 
+    // The PPU may lag behind the CPU (EmulatorRunner catch-up scheduling).
+    // Bring it to the start of the current instruction, where lock-step
+    // stepping would have it, before anything that observes or changes it.
+    private void syncPpu() {
+        if (ppu != null && cpu != null)
+            ppu.syncTo(cpu.getStepStartCycle());
+    }
+
+    // The APU lags the same way; DMC fetches read PRG, so bank switches sync it too
+    private void syncApu() {
+        if (apu != null && cpu != null)
+            apu.syncTo(cpu.getStepStartCycle());
+    }
+
     public Memory(String romPath) throws IOException {
         byte[] romData = Files.readAllBytes(Paths.get(romPath));
 
@@ -116,10 +137,41 @@ public class Memory {
         java.util.Arrays.fill(apuIoRegisters, 0xFF);
     }
 
+    // Copy of the PPU-facing side (CHR data, mapper and banking state) for a
+    // replica PPU that renders on another thread. PRG is shared read-only;
+    // CPU, APU and controller are left unconnected.
+    Memory copyForRendering() {
+        return new Memory(this);
+    }
+
+    private Memory(Memory source) {
+        prgRom = source.prgRom;
+        chrRom = source.chrRom.clone();
+        isChrRam = source.isChrRam;
+        mapperID = source.mapperID;
+        currShift = source.currShift;
+        shiftCount = source.shiftCount;
+        mmc1Control = source.mmc1Control;
+        mmc1ChrBank0 = source.mmc1ChrBank0;
+        mmc1ChrBank1 = source.mmc1ChrBank1;
+        mmc1PrgBank = source.mmc1PrgBank;
+    }
+
     public void setPPU(PPU ppu) {
         this.ppu = ppu;
     }
 
+    // NSF music: prg is the image in 4KB banks, banks the initial
+    // $5FF8-$5FFF values. $6000-$7FFF is plain RAM; there is no CHR.
+    public Memory(byte[] prg, int[] banks) {
+        mapperID = MAPPER_NSF;
+        prgRom = prg;
+        chrRom = new byte[8192];
+        isChrRam = true;
+        System.arraycopy(banks, 0, nsfBanks, 0, nsfBanks.length);
+        java.util.Arrays.fill(apuIoRegisters, 0xFF);
+    }
+
     public void setController1(Controller controller) {
         this.controller1 = controller;
     }
@@ -134,6 +186,7 @@ public class Memory {
             value = ram[address & 0x07FF] & 0xFF;
 
         } else if (address < 0x4000) { // PPU
+            syncPpu();
             value = ppu != null ? ppu.readRegister(address & 0x2007, openBus) : openBus;
 
         } else if (address < 0x4020) { // IO
@@ -145,6 +198,7 @@ public class Memory {
                 value = openBus;
             else {
                 // Route to APU
+                syncApu();
                 int val = apu != null ? apu.readRegister(address, openBus) : -1;
                 if (val != -1)
                     value = val;
@@ -194,11 +248,16 @@ public class Memory {
             ram[address & 0x07FF] = (byte) value;
 
         } else if (address < 0x4000) { // PPU
+            syncPpu();
             if (ppu != null)
                 ppu.writeRegister(address & 0x2007, value);
 
         } else if (address < 0x4020) { // APU/IO
             if (address == 0x4014) {
+                if (ppu != null && ppu.eventLog != null) {
+                    syncPpu();
+                    ppu.recordEvent(address, value);
+                }
                 dmaTransfer(value);
                 return;
             }
@@ -210,17 +269,27 @@ public class Memory {
 
             // Route to APU
             if (apu != null) {
+                syncApu();
                 apu.writeRegister(address, value);
             }
 
         } else if (address < 0x6000) {
             // Expansion
+            if (mapperID == MAPPER_NSF && address >= 0x5FF8) {
+                syncApu(); // DMC fetches read through the banks
+                nsfBanks[address - 0x5FF8] = value;
+            }
 
         } else if (address < 0x8000) {
             saveRam[address - 0x6000] = (byte) value;
 
         } else {
             // Mapper Writes
+            if (ppu != null && ppu.eventLog != null) {
+                syncPpu();
+                ppu.recordEvent(address, value);
+            }
+            syncApu();
             writeMapper(address, value);
         }
     }
@@ -235,6 +304,11 @@ public class Memory {
             return prgRom[(address - 0x8000) & mask] & 0xFF;
         }
 
+        if (mapperID == MAPPER_NSF) {
+            int bank = nsfBanks[(address >> 12) & 0x07] % (prgRom.length / 4096);
+            return prgRom[bank * 4096 + (address & 0x0FFF)] & 0xFF;
+        }
+
         // Handle Mapper 1 (MMC1)
         if (mapperID == 1) {
             int bankMode = (mmc1Control >> 2) & 0x03;
@@ -271,6 +345,13 @@ public class Memory {
 
     private void writeMapper(int address, int value) {
         if (mapperID == 1) {
+            // Banking and mirroring changes must land at the right dot
+            syncPpu();
+            if (ppu != null) {
+                ppu.invalidatePredictions();
+                ppu.logMapperWrite(address, value);
+            }
+
             // MMC1 Logic
             if ((value & 0x80) != 0) {
                 // Reset Shift
@@ -303,6 +384,7 @@ public class Memory {
                                         break;
                                 }
                             }
+                            updatePPUChrisBanks(); // Bit 4 selects 4K or 8K CHR banking
                             break;
                         case 1: // CHR 0 (A000-BFFF)
                             mmc1ChrBank0 = currShift;
@@ -324,7 +406,9 @@ public class Memory {
     }
 
     private void updatePPUChrisBanks() {
-        // TODO: determine if needed
+        // CHR is read through readChr(), so only the debugger's cached views need telling
+        if (ppu != null)
+            ppu.markChrBanksChanged();
     }
 
     // Helper for PPU to call
@@ -377,6 +461,23 @@ public class Memory {
         }
     }
 
+    // FNV-1a over everything a program can write outside the APU: internal
+    // RAM, $6000 RAM and the NSF banks. Equal hashes at the same point of a
+    // periodic routine mean it will go on to do the same again.
+    public long stateHash() {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : ram) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        for (byte b : saveRam) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        for (int bank : nsfBanks) {
+            hash = (hash ^ bank) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
     private CPU cpu;
 
     public void setCPU(CPU cpu) {
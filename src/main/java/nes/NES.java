@@ -1,6 +1,9 @@
 package nes;
 
-import nes.gui.Display;
+import nes.audio.AudioSink;
+import nes.audio.NullAudioSink;
+import nes.video.FrameSink;
+import nes.video.NullFrameSink;
 import java.io.IOException;
 
 public class NES {
@@ -10,11 +13,25 @@ public class NES {
     private Memory memory;
     private Controller controller;
 
-    public NES(Display display) {
+    // Audio is discarded; pass an AudioSink to keep it
+    public NES(FrameSink frameSink) {
+        this(frameSink, NullAudioSink.INSTANCE);
+    }
+
+    public NES(FrameSink frameSink, AudioSink audioSink) {
         // Initialize Components
         controller = new Controller();
-        apu = new APU();
-        ppu = new PPU(display);
+        apu = new APU(audioSink);
+        ppu = new PPU(frameSink);
+    }
+
+    // Headless: video and audio output are discarded until a sink is attached
+    public NES() {
+        this(NullFrameSink.INSTANCE);
+    }
+
+    public void setFrameSink(FrameSink frameSink) {
+        ppu.setFrameSink(frameSink);
     }
 
     public void loadROM(String romPath) throws IOException {
@@ -30,6 +47,8 @@ public class NES {
 
         cpu = new CPU(memory);
         memory.setCPU(cpu);
+        ppu.setClock(cpu.getTotalCycles());
+        apu.setClock(cpu.getTotalCycles());
     }
 
     public void setController(Controller controller) {
@@ -41,6 +60,8 @@ public class NES {
     public void reset() {
         if (cpu != null) {
             cpu.reset();
+            ppu.setClock(cpu.getTotalCycles()); // PPU, APU and CPU clocks start aligned
+            apu.setClock(cpu.getTotalCycles());
         }
     }
 
@@ -1,6 +1,7 @@
 package nes;
 
-import nes.gui.Display;
+import nes.video.FrameSink;
+import nes.video.NullFrameSink;
 
 public class PPU {
     // Registers (CPU Visible)
@@ -18,10 +19,11 @@ public class PPU {
     private int bufferData; // Internal buffer for $2007 reads
 
     // Cycle Management
+    private static final int DOTS_PER_FRAME = 341 * 262;
     private int cycle = 0;
     private int scanline = 0; // 0-261
     public boolean nmiOccurred = false;
-    public boolean frameComplete = false;
+    public boolean frameComplete = false; // Set on wrap to scanline 0, cleared by the frame loop
 
     // Background Rendering Pipeline (Latches & Shifters)
     private int bgNextTileId;
@@ -34,12 +36,60 @@ public class PPU {
     private int bgShifterAttribLo;
     private int bgShifterAttribHi;
 
+    // Renderer Selection
+    public static final int RENDERER_ACCURATE = 0; // Per-dot pipeline (raster effects, mid-line writes)
+    public static final int RENDERER_SCANLINE = 1; // Whole line at dot 256 (throughput)
+    private int renderer = RENDERER_ACCURATE;
+
+    // Odd frames are one dot shorter on hardware when rendering is enabled.
+    // Off by default to keep the existing frame timing.
+    private boolean oddFrameSkip = false;
+    private boolean oddFrame = false;
+    private volatile int requestedRenderer = RENDERER_ACCURATE;
+
+    // Scanline Renderer State
+    private static final int LINE_SPRITE_FRONT = 0x10;
+    private static final int LINE_SPRITE_ZERO = 0x20;
+    private final int[] lineSprites = new int[256];
+    private final int[] lineColors = new int[32];
+    private int sprite0HitCycle = -1;
+
+    // Background Spans
+    // Register writes only happen between run() calls, so when a run() batch
+    // covers all 8 dots of a tile, those 8 pixels are fixed by the shifters on
+    // the tile's first dot and are drawn in one pass.
+    private int dotsRemaining = 0; // Dots left in the current run() batch, 0 outside run()
+    private int spanEndPixel = -1; // Last framebuffer index already drawn by a span
+    private final int[] spanSprites = new int[8];
+
+    // Frame Skip
+    // Skipped frames still run fetches, scroll updates, sprite 0 hit and status
+    // flags; only palette lookup and framebuffer writes are left out.
+    private static final long FRAME_NANOS = 1_000_000_000L * 341 * 262 / 5_369_318; // ~60.1 Hz
+    private volatile int frameSkip = 0; // Fixed: skip N frames after each rendered one
+    private volatile int maxAdaptiveSkip = 0; // Adaptive: skip up to N in a row while behind real time
+    private boolean skipFrame = false;
+    private int consecutiveSkips = 0;
+    private long lastFrameStart = 0;
+    private long frameLag = 0;
+    private volatile long framesRendered = 0;
+    private volatile long framesSkipped = 0;
+
+    // Pipelined Rendering
+    // Pixels are produced by a replica on a render thread (RenderPipeline);
+    // this PPU runs every frame as a skipped frame and logs register traffic.
+    // Switched on or off at the next frame wrap.
+    private volatile boolean requestedPipelined = false;
+    private RenderPipeline pipeline;
+
     // Memory
     public final byte[] nametables = new byte[2048]; // 2KB VRAM
     public final byte[] paletteRam = new byte[32];
     public final byte[] oam = new byte[256]; // Object Attribute Memory
 
-    private final Display display;
+    // Video Output
+    private final int[] frameBuffer = new int[FrameSink.WIDTH * FrameSink.HEIGHT];
+    private FrameSink frameSink;
 
     // Palette
     private static final int[] PALETTE_LOOKUP = {
@@ -53,8 +103,98 @@ public class PPU {
             0xCCD278, 0xB4DE78, 0xA8E290, 0x98E2B4, 0xA0D6E4, 0xA0A2A0, 0x000000, 0x000000
     };
 
-    public PPU(Display display) {
-        this.display = display;
+    // The 64 system colours, indexed by palette RAM value
+    public static int[] getSystemPalette() {
+        return PALETTE_LOOKUP.clone();
+    }
+
+    public PPU(FrameSink frameSink) {
+        setFrameSink(frameSink);
+    }
+
+    public PPU() {
+        this(NullFrameSink.INSTANCE);
+    }
+
+    public void setFrameSink(FrameSink frameSink) {
+        this.frameSink = frameSink != null ? frameSink : NullFrameSink.INSTANCE;
+        if (pipeline != null)
+            pipeline.setFrameSink(this.frameSink);
+    }
+
+    public void setOddFrameSkip(boolean enabled) {
+        this.oddFrameSkip = enabled;
+        if (pipeline != null)
+            pipeline.record(dotClock, RenderPipeline.LOG_ODD_FRAME_SKIP, 0, enabled ? 1 : 0);
+    }
+
+    // Frame skip settings are ignored while pipelined; the replica draws every frame
+    public void setPipelinedRendering(boolean enabled) {
+        this.requestedPipelined = enabled;
+    }
+
+    public boolean isPipelinedRendering() {
+        return requestedPipelined;
+    }
+
+    // Waits for the render thread to finish every completed frame
+    void drainPipeline() {
+        if (pipeline != null)
+            pipeline.drain();
+    }
+
+    public int getScanline() {
+        return scanline;
+    }
+
+    public int getCycle() {
+        return cycle;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    // Takes effect at the start of the next scanline; safe to call from any thread
+    public void setRenderer(int renderer) {
+        if (renderer != RENDERER_ACCURATE && renderer != RENDERER_SCANLINE)
+            throw new IllegalArgumentException("Unknown renderer: " + renderer);
+        this.requestedRenderer = renderer;
+    }
+
+    public int getRenderer() {
+        return requestedRenderer;
+    }
+
+    // Fixed frame skip: render one frame, then skip n (0 = render everything)
+    public void setFrameSkip(int n) {
+        this.frameSkip = Math.max(0, n);
+        this.maxAdaptiveSkip = 0;
+    }
+
+    // Adaptive frame skip: skip frames (at most maxSkip in a row) only while
+    // emulation falls behind real time. 0 disables.
+    public void setAdaptiveFrameSkip(int maxSkip) {
+        this.maxAdaptiveSkip = Math.max(0, maxSkip);
+        this.frameSkip = 0;
+    }
+
+    public long getFramesRendered() {
+        RenderPipeline p = pipeline;
+        return framesRendered + (p != null ? p.getFramesRendered() : 0);
+    }
+
+    public long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    public FrameSink getFrameSink() {
+        return frameSink;
+    }
+
+    // Current (possibly partially drawn) frame, 256x240 RGB
+    public int[] getFrameBuffer() {
+        return frameBuffer;
     }
 
     // === Register Interfaces ===
@@ -78,12 +218,16 @@ public class PPU {
                 res = (status & 0xE0) | (ioBus & 0x1F);
                 status &= ~0x80;
                 w = 0;
+                if (pipeline != null)
+                    pipeline.record(dotClock, RenderPipeline.LOG_READ, addr, 0);
                 break;
             case 0x2004:
                 res = oam[oamAddr] & 0xFF; // Usually not readable on standard NES, but we allow it
                 // Note: Real hardware OAM read is unreliable/complex but typically updates bus
                 break;
             case 0x2007:
+                if (pipeline != null)
+                    pipeline.record(dotClock, RenderPipeline.LOG_READ, addr, 0);
                 int data = bufferData;
                 bufferData = readVram(v);
 
@@ -92,6 +236,7 @@ public class PPU {
                     data = bufferData;
 
                 v += ((ctrl & 0x04) != 0) ? 32 : 1;
+                predictionVersion++;
                 res = data;
                 break;
         }
@@ -102,6 +247,11 @@ public class PPU {
 
     public void writeRegister(int addr, int val) {
         ioBus = val; // Update PPU Open Bus Latch
+        predictionVersion++;
+        if (eventLog != null)
+            recordEvent(addr, val);
+        if (pipeline != null)
+            pipeline.record(dotClock, RenderPipeline.LOG_WRITE, addr, val);
         switch (addr) {
             case 0x2000: // Control
                 ctrl = val;
@@ -170,53 +320,624 @@ public class PPU {
         return false;
     }
 
+    // === Event Prediction ===
+    // Where upcoming events fall on the CPU clock, assuming no further
+    // register, OAM, CHR or mapper writes. The dot clock is anchored to the CPU
+    // clock by setClock() and advances with every dot run, so in lock-step it
+    // stays at 3x the CPU cycle count. An event at CPU cycle c is visible once
+    // the PPU has been run up to c (syncTo). Writes bump predictionVersion so
+    // callers holding a timestamp know to ask again.
+
+    public static final long NEVER = Long.MAX_VALUE;
+
+    private long dotClock = 0;
+    private int predictionVersion = 0;
+    private long predictedHitDot = NEVER;
+    private int predictedHitVersion = -1;
+
+    public void setClock(long cpuCycle) {
+        dotClock = cpuCycle * 3;
+    }
+
+    public long getDotClock() {
+        return dotClock;
+    }
+
+    // Catches the PPU up to the given CPU cycle; no-op if it is already there
+    public void syncTo(long cpuCycle) {
+        runToDot(cpuCycle * 3);
+    }
+
+    void runToDot(long dot) {
+        if (dot > dotClock)
+            run((int) (dot - dotClock));
+    }
+
+    public int getPredictionVersion() {
+        return predictionVersion;
+    }
+
+    // For state the PPU doesn't see being written (mapper registers, CHR banks)
+    public void invalidatePredictions() {
+        predictionVersion++;
+    }
+
+    // Mapper writes change banking and mirroring under the render thread's feet
+    void logMapperWrite(int address, int value) {
+        if (pipeline != null)
+            pipeline.record(dotClock, RenderPipeline.LOG_MAPPER, address, value);
+    }
+
+    public long nextVBlankCycle() {
+        return toCpuCycle(nextVBlankDot());
+    }
+
+    // NMI edge: VBlank with NMI enabled in $2000
+    public long nextNmiCycle() {
+        return (ctrl & 0x80) != 0 ? nextVBlankCycle() : NEVER;
+    }
+
+    // Pre-render line: VBlank, sprite 0 and overflow flags clear, NMI line drops
+    public long nextFlagClearCycle() {
+        return toCpuCycle(nextFlagClearDot());
+    }
+
+    public long nextFrameEndCycle() {
+        return toCpuCycle(nextFrameEndDot());
+    }
+
+    public long nextSprite0HitCycle() {
+        return toCpuCycle(nextSprite0HitDot());
+    }
+
+    // Dot clock value of the dot that applies each event
+
+    long nextVBlankDot() {
+        return dotClockAt(241 * 341 + 1);
+    }
+
+    long nextFlagClearDot() {
+        return dotClockAt(261 * 341 + 1);
+    }
+
+    long nextFrameEndDot() {
+        return dotClockAt(frameLength() - 1);
+    }
+
+    long nextSprite0HitDot() {
+        // A dry run over sprite 0's lines is up to 128 pattern reads, so it is
+        // kept until a write invalidates it or the PPU runs past it
+        if (predictedHitVersion != predictionVersion || predictedHitDot < dotClock) {
+            predictedHitDot = predictSprite0HitDot();
+            predictedHitVersion = predictionVersion;
+        }
+        return predictedHitDot;
+    }
+
+    private static long toCpuCycle(long dot) {
+        return dot == NEVER ? NEVER : dot / 3 + 1;
+    }
+
+    // Length of the current frame: one dot short on odd frames with the skip
+    private int frameLength() {
+        return (oddFrame && oddFrameSkip && (mask & 0x18) != 0) ? DOTS_PER_FRAME - 1 : DOTS_PER_FRAME;
+    }
+
+    // Next time the PPU reaches frame position (line * 341 + dot)
+    private long dotClockAt(int position) {
+        int current = scanline * 341 + cycle;
+        if (position >= current)
+            return dotClock + (position - current);
+        return dotClockInNextFrame(position);
+    }
+
+    private long dotClockInNextFrame(int position) {
+        return dotClock + (frameLength() - (scanline * 341 + cycle)) + position;
+    }
+
+    // Replays the scroll counters forward line by line (incrementScrollY per
+    // line, horizontal reload from t at dot 257, full reload from t on the
+    // pre-render line) and tests sprite 0 against the background it would meet
+    private long predictSprite0HitDot() {
+        if ((mask & 0x18) != 0x18)
+            return NEVER;
+
+        int height = ((ctrl & 0x20) != 0) ? 16 : 8;
+        int first = (oam[0] & 0xFF) + 1;
+        int last = Math.min(first + height - 1, 239);
+        if (first > last)
+            return NEVER;
+
+        // Rest of this frame; the flag only rises once per frame
+        if ((status & 0x40) == 0 && scanline < 240) {
+            for (int line = Math.max(first, scanline); line <= last; line++) {
+                int rowAddr = v;
+                int startH;
+                int fromX = 0;
+                if (line == scanline) {
+                    if (cycle > 256)
+                        continue;
+                    fromX = Math.max(cycle - 1, 0);
+                    // v is two tiles ahead of the line start plus one per tile already fetched
+                    int fetched = (renderer == RENDERER_SCANLINE || cycle == 0) ? 0 : (cycle - 1) / 8;
+                    startH = horizontalPosition(v) - 2 - fetched;
+                } else {
+                    int rows = line - scanline - (cycle > 256 ? 1 : 0);
+                    for (int i = 0; i < rows; i++)
+                        rowAddr = nextRowAddress(rowAddr);
+                    startH = horizontalPosition(t);
+                }
+                int hitX = sprite0HitX(line, rowAddr, startH, fromX);
+                if (hitX >= 0)
+                    return dotClockAt(line * 341 + hitX + 1);
+            }
+        }
+
+        // Next frame
+        int rowAddr = t;
+        for (int line = 0; line < first; line++)
+            rowAddr = nextRowAddress(rowAddr);
+        for (int line = first; line <= last; line++) {
+            int hitX = sprite0HitX(line, rowAddr, horizontalPosition(t), 0);
+            if (hitX >= 0)
+                return dotClockInNextFrame(line * 341 + hitX + 1);
+            rowAddr = nextRowAddress(rowAddr);
+        }
+        return NEVER;
+    }
+
+    // First screen x >= fromX where sprite 0 and the background are both
+    // opaque on the given line, or -1
+    private int sprite0HitX(int line, int rowAddr, int startH, int fromX) {
+        int height = ((ctrl & 0x20) != 0) ? 16 : 8;
+        int diffY = line - (oam[0] & 0xFF) - 1;
+        int attr = oam[2] & 0xFF;
+        int sx = oam[3] & 0xFF;
+        int tileRow = ((attr & 0x80) != 0) ? height - 1 - diffY : diffY;
+        int patternAddr = spritePatternAddress(oam[1] & 0xFF, tileRow, height);
+        int sprite = readVram(patternAddr) | readVram(patternAddr + 8);
+        boolean flipH = (attr & 0x40) != 0;
+
+        for (int dx = 0; dx < 8; dx++) {
+            int px = sx + dx;
+            if (px >= 255)
+                break; // No hit at x=255
+            if (px < fromX)
+                continue;
+            int bit = flipH ? dx : (7 - dx);
+            if (((sprite >> bit) & 1) != 0 && predictBackgroundPixel(rowAddr, startH, px) != 0)
+                return px;
+        }
+        return -1;
+    }
+
+    // Background pattern value (0-3) at screen x of a line whose first fetched
+    // tile is at horizontal position startH, with fine/coarse Y from rowAddr
+    private int predictBackgroundPixel(int rowAddr, int startH, int screenX) {
+        int p = screenX + x;
+        int h = (startH + (p >> 3)) & 0x3F;
+        int addr = (rowAddr & 0x7BE0) | ((h & 0x20) << 5) | (h & 0x1F);
+        int tileId = readVram(0x2000 | (addr & 0x0FFF));
+        int tableAddr = ((ctrl & 0x10) != 0) ? 0x1000 : 0x0000;
+        int patternRow = tableAddr + (tileId * 16) + ((rowAddr >> 12) & 0x07);
+        int bit = 7 - (p & 7);
+        return ((readVram(patternRow) >> bit) & 1) | (((readVram(patternRow + 8) >> bit) & 1) << 1);
+    }
+
     // === Execution ===
 
     public void tick() {
-        // --- Background Logic ---
-        if (scanline >= 0 && scanline < 240 || scanline == 261) { // Visible or Pre-render
-            if (scanline == 0 && cycle == 0 && frameComplete) {
-                frameComplete = false; // Start new frame
+        if (renderer == RENDERER_SCANLINE && scanline < 240 && cycle >= 1 && cycle <= 256) {
+            tickScanlineRenderer();
+        } else {
+            runScheduledAction();
+        }
+        endDot();
+    }
+
+    // Same dot, driven by the original range checks instead of the action
+    // table. Kept as the reference for PPUTest and PPUBenchmark.
+    void tickReference() {
+        if (renderer == RENDERER_SCANLINE && scanline < 240 && cycle >= 1 && cycle <= 256) {
+            tickScanlineRenderer();
+        } else {
+            tickDot();
+        }
+        endDot();
+    }
+
+    private void endDot() {
+        // --- End of Cycle ---
+        dotClock++;
+        cycle++;
+        if (cycle >= 341) {
+            cycle = 0;
+            scanline++;
+            if (scanline >= 262) {
+                scanline = 0;
+                frameComplete = true; // Signal Main Loop
+                oddFrame = !oddFrame;
+                spanEndPixel = -1;
+                beginFrame();
+            }
+            renderer = requestedRenderer; // Renderer switches only take effect on a line boundary
+        }
+    }
+
+    // Executes the table entry for the current dot
+    private void runScheduledAction() {
+        byte[] schedule;
+        if ((mask & 0x18) == 0)
+            schedule = SCHEDULE_IDLE;
+        else
+            schedule = (oddFrame && oddFrameSkip) ? SCHEDULE_RENDERING_ODD : SCHEDULE_RENDERING;
+
+        switch (schedule[scanline * 341 + cycle]) {
+            case ACT_NONE:
+                break;
+            case ACT_PIXEL:
+                outputPixel();
+                break;
+            case ACT_PIXEL_LAST:
+                outputPixel();
+                finishScanline();
+                break;
+            case ACT_SHIFT:
+                updateShifters();
+                break;
+            case ACT_SHIFT_PIXEL:
+                updateShifters();
+                outputPixel();
+                break;
+            case ACT_NT:
+                updateShifters();
+                fetchNametable();
+                break;
+            case ACT_NT_PIXEL:
+                updateShifters();
+                fetchNametable();
+                outputPixel();
+                break;
+            case ACT_AT:
+                updateShifters();
+                fetchAttribute();
+                break;
+            case ACT_AT_PIXEL:
+                updateShifters();
+                fetchAttribute();
+                outputPixel();
+                break;
+            case ACT_LO:
+                updateShifters();
+                fetchPatternLo();
+                break;
+            case ACT_LO_PIXEL:
+                updateShifters();
+                fetchPatternLo();
+                outputPixel();
+                break;
+            case ACT_HI:
+                updateShifters();
+                fetchPatternHi();
+                break;
+            case ACT_HI_PIXEL:
+                updateShifters();
+                fetchPatternHi();
+                outputPixel();
+                break;
+            case ACT_INCX:
+                updateShifters();
+                incrementScrollX();
+                break;
+            case ACT_INCX_PIXEL:
+                updateShifters();
+                incrementScrollX();
+                outputPixel();
+                break;
+            case ACT_INCXY:
+                updateShifters();
+                incrementScrollX();
+                incrementScrollY();
+                break;
+            case ACT_INCXY_PIXEL_LAST:
+                updateShifters();
+                incrementScrollX();
+                incrementScrollY();
+                outputPixel();
+                finishScanline();
+                break;
+            case ACT_NT_TRANSFER_X:
+                updateShifters();
+                fetchNametable();
+                transferAddressX();
+                break;
+            case ACT_TRANSFER_Y:
+                transferAddressY();
+                break;
+            case ACT_VBLANK:
+                enterVBlank();
+                break;
+            case ACT_CLEAR_FLAGS:
+                clearFlags();
+                break;
+            case ACT_SKIP_DOT:
+                cycle = 340; // Odd frame: dot 340 of the pre-render line doesn't exist
+                break;
+        }
+    }
+
+    private void outputPixel() {
+        if (skipFrame) {
+            detectSprite0Hit();
+            return;
+        }
+
+        int pixelIndex = scanline * FrameSink.WIDTH + (cycle - 1);
+        if (pixelIndex <= spanEndPixel)
+            return; // Drawn by renderSpan()
+
+        if ((cycle & 7) == 1 && dotsRemaining >= 8) {
+            renderSpan(pixelIndex);
+            spanEndPixel = pixelIndex + 7;
+        } else {
+            renderPixel();
+        }
+    }
+
+    // Draws the 8 pixels of dots cycle..cycle+7 from the current shifter state.
+    // Equivalent to 8 renderPixel() calls with the shifts between them: pixel k
+    // reads bit (15 - x - k), and the next shifter load is only on dot cycle+8.
+    private void renderSpan(int pixelIndex) {
+        int screenX = cycle - 1;
+        evaluateSprites(spanSprites, screenX, 8);
+
+        boolean bgEnabled = (mask & 0x08) != 0;
+        boolean hitEnabled = (mask & 0x18) == 0x18;
+        int patternLo = bgShifterPatternLo;
+        int patternHi = bgShifterPatternHi;
+        int attribLo = bgShifterAttribLo;
+        int attribHi = bgShifterAttribHi;
+
+        for (int k = 0; k < 8; k++) {
+            int bgPixel = 0;
+            int bgPalette = 0;
+            if (bgEnabled) {
+                int bit = 15 - x - k;
+                bgPixel = ((patternLo >> bit) & 1) | (((patternHi >> bit) & 1) << 1);
+                bgPalette = ((attribLo >> bit) & 1) | (((attribHi >> bit) & 1) << 1);
+            }
+
+            int spr = spanSprites[k];
+            int sprPixel = spr & 0x03;
+
+            if ((spr & LINE_SPRITE_ZERO) != 0 && bgPixel != 0 && hitEnabled && screenX + k != 255)
+                status |= 0x40;
+
+            int colorSlot;
+            if (sprPixel != 0 && (bgPixel == 0 || (spr & LINE_SPRITE_FRONT) != 0)) {
+                colorSlot = (((spr >> 2) & 0x03) + 4) << 2 | sprPixel;
+            } else if (bgPixel != 0) {
+                colorSlot = (bgPalette << 2) | bgPixel;
+            } else {
+                colorSlot = 0;
             }
+            frameBuffer[pixelIndex + k] = PALETTE_LOOKUP[readVram(0x3F00 + colorSlot) & 0x3F];
+        }
+    }
 
+    private void finishScanline() {
+        if (!skipFrame)
+            frameSink.scanlineComplete(scanline, frameBuffer);
+    }
+
+    private void enterVBlank() {
+        status |= 0x80;
+        if ((ctrl & 0x80) != 0)
+            nmiOccurred = true;
+        if (skipFrame) {
+            if (pipeline == null)
+                framesSkipped++;
+        } else {
+            framesRendered++;
+            frameSink.frameComplete(frameBuffer);
+        }
+    }
+
+    private void clearFlags() {
+        status &= ~(0x80 | 0x40 | 0x20); // Clear VBlank, Sprite 0, Overflow
+        nmiOccurred = false;
+    }
+
+    // === Dot Schedule ===
+    // The 341x262 dot schedule compiled once into action codes, so tick() does
+    // one lookup and one dense switch instead of re-testing scanline ranges,
+    // the rendering mask, (cycle - 1) % 8 and the 256/257/280-304 windows.
+    // Variants: rendering disabled, rendering enabled, and rendering enabled on
+    // an odd frame with the pre-render dot skip. The scanline renderer's dots
+    // 1-256 are handled before the table is consulted.
+
+    private static final byte ACT_NONE = 0;
+    private static final byte ACT_PIXEL = 1;
+    private static final byte ACT_PIXEL_LAST = 2; // Pixel + end of line
+    private static final byte ACT_SHIFT = 3;
+    private static final byte ACT_SHIFT_PIXEL = 4;
+    private static final byte ACT_NT = 5;
+    private static final byte ACT_NT_PIXEL = 6;
+    private static final byte ACT_AT = 7;
+    private static final byte ACT_AT_PIXEL = 8;
+    private static final byte ACT_LO = 9;
+    private static final byte ACT_LO_PIXEL = 10;
+    private static final byte ACT_HI = 11;
+    private static final byte ACT_HI_PIXEL = 12;
+    private static final byte ACT_INCX = 13;
+    private static final byte ACT_INCX_PIXEL = 14;
+    private static final byte ACT_INCXY = 15;
+    private static final byte ACT_INCXY_PIXEL_LAST = 16;
+    private static final byte ACT_NT_TRANSFER_X = 17;
+    private static final byte ACT_TRANSFER_Y = 18;
+    private static final byte ACT_VBLANK = 19;
+    private static final byte ACT_CLEAR_FLAGS = 20;
+    private static final byte ACT_SKIP_DOT = 21;
+
+    private static final byte[] SCHEDULE_IDLE = buildSchedule(false, false);
+    private static final byte[] SCHEDULE_RENDERING = buildSchedule(true, false);
+    private static final byte[] SCHEDULE_RENDERING_ODD = buildSchedule(true, true);
+
+    private static byte[] buildSchedule(boolean rendering, boolean oddFrame) {
+        byte[] schedule = new byte[DOTS_PER_FRAME];
+        for (int line = 0; line < 262; line++) {
+            boolean visible = line < 240;
+            for (int dot = 0; dot < 341; dot++) {
+                byte action = ACT_NONE;
+                boolean pixel = visible && dot >= 1 && dot <= 256;
+
+                if (rendering && (visible || line == 261)) {
+                    if ((dot >= 2 && dot < 258) || (dot >= 321 && dot < 338)) {
+                        switch ((dot - 1) % 8) {
+                            case 0:
+                                action = (dot == 257) ? ACT_NT_TRANSFER_X : (pixel ? ACT_NT_PIXEL : ACT_NT);
+                                break;
+                            case 2:
+                                action = pixel ? ACT_AT_PIXEL : ACT_AT;
+                                break;
+                            case 4:
+                                action = pixel ? ACT_LO_PIXEL : ACT_LO;
+                                break;
+                            case 6:
+                                action = pixel ? ACT_HI_PIXEL : ACT_HI;
+                                break;
+                            case 7:
+                                if (dot == 256)
+                                    action = pixel ? ACT_INCXY_PIXEL_LAST : ACT_INCXY;
+                                else
+                                    action = pixel ? ACT_INCX_PIXEL : ACT_INCX;
+                                break;
+                            default:
+                                action = pixel ? ACT_SHIFT_PIXEL : ACT_SHIFT;
+                                break;
+                        }
+                    } else if (pixel) {
+                        action = ACT_PIXEL; // Dot 1
+                    } else if (line == 261 && dot >= 280 && dot < 305) {
+                        action = ACT_TRANSFER_Y;
+                    } else if (line == 261 && dot == 339 && oddFrame) {
+                        action = ACT_SKIP_DOT;
+                    }
+                } else if (pixel) {
+                    action = (dot == 256) ? ACT_PIXEL_LAST : ACT_PIXEL;
+                }
+
+                if (line == 241 && dot == 1)
+                    action = ACT_VBLANK;
+                if (line == 261 && dot == 1)
+                    action = ACT_CLEAR_FLAGS;
+
+                schedule[line * 341 + dot] = action;
+            }
+        }
+        return schedule;
+    }
+
+    // Advances the PPU by the given number of dots. Equivalent to calling tick()
+    // that many times, but dots with no observable effect (post-render and
+    // VBlank lines, HBlank, pre-render gaps, disabled rendering) are skipped in
+    // one step. Register state can't change mid-call, so the skip distance
+    // computed from it holds for the whole jump.
+    public void run(int dots) {
+        while (dots > 0) {
+            int position = scanline * 341 + cycle;
+            int idle = nextBusyDot() - position;
+            if (idle > 0) {
+                int n = Math.min(idle, dots);
+                skipTo(position + n);
+                dots -= n;
+            } else {
+                dotsRemaining = dots;
+                tick();
+                dots--;
+            }
+        }
+        dotsRemaining = 0;
+    }
+
+    // First dot at or after the current one that does any work, as
+    // scanline * 341 + cycle (DOTS_PER_FRAME = the wrap to the next frame).
+    private int nextBusyDot() {
+        boolean rendering = (mask & 0x18) != 0;
+        int line = scanline;
+        int dot = cycle;
+
+        while (line < 261) {
+            int base = line * 341;
+            if (line < 240) {
+                if (dot == 0)
+                    return base + 1;
+                if (dot <= 256) {
+                    // Scanline renderer: only dot 1, the sprite 0 hit dot and dot 256 do anything
+                    if (renderer == RENDERER_SCANLINE && dot >= 2 && dot < 256)
+                        return base + (sprite0HitCycle >= dot ? sprite0HitCycle : 256);
+                    return base + dot;
+                }
+                if (rendering) {
+                    if (dot == 257 || (dot >= 321 && dot < 338))
+                        return base + dot;
+                    if (dot < 321)
+                        return base + 321;
+                }
+            } else if (line == 241 && dot <= 1) {
+                return base + 1; // VBlank
+            }
+            // Rest of this line is idle
+            line++;
+            dot = 0;
+        }
+
+        // Pre-render line
+        int base = 261 * 341;
+        if (dot <= 1)
+            return base + 1; // Flag clear
+        if (rendering) {
+            if (dot < 258 || (dot >= 280 && dot < 305) || (dot >= 321 && dot < 338))
+                return base + dot;
+            if (dot < 280)
+                return base + 280;
+            if (dot < 321)
+                return base + 321;
+            if (dot <= 339 && oddFrame && oddFrameSkip)
+                return base + 339;
+        }
+        return DOTS_PER_FRAME;
+    }
+
+    // Jumps forward over idle dots, applying the line and frame wrap side effects
+    private void skipTo(int position) {
+        dotClock += position - (scanline * 341 + cycle);
+        if (position >= DOTS_PER_FRAME) {
+            scanline = 0;
+            cycle = 0;
+            frameComplete = true;
+            oddFrame = !oddFrame;
+            spanEndPixel = -1;
+            beginFrame();
+            renderer = requestedRenderer;
+            return;
+        }
+        int line = position / 341;
+        if (line != scanline)
+            renderer = requestedRenderer;
+        scanline = line;
+        cycle = position - line * 341;
+    }
+
+    // Cycle-accurate path: one dot of fetch / scroll / pixel work (branching reference)
+    private void tickDot() {
+        // --- Background Logic ---
+        if (scanline >= 0 && scanline < 240 || scanline == 261) { // Visible or Pre-render
             if ((mask & 0x18) != 0) { // If rendering enabled
                 // Cycle-based fetching
                 if ((cycle >= 2 && cycle < 258) || (cycle >= 321 && cycle < 338)) {
                     updateShifters();
-
-                    switch ((cycle - 1) % 8) {
-                        case 0:
-                            loadBackgroundShifters();
-                            // Fetch NT Byte
-                            bgNextTileId = readVram(0x2000 | (v & 0x0FFF));
-                            break;
-                        case 2:
-                            // Fetch Attribute Byte
-                            // Complex address calc: 0x23C0 + (v.nt << 10) + ((v.y >> 5) << 3) + (v.x >> 5)
-                            // But v has specific layout: yyy NN YYYYY XXXXX
-                            int addr = 0x23C0 | (v & 0x0C00) | ((v >> 4) & 0x38) | ((v >> 2) & 0x07);
-                            bgNextTileAttrib = readVram(addr);
-                            // Process Quad
-                            if ((v & 0x0040) != 0)
-                                bgNextTileAttrib >>= 4; // Top/Bottom
-                            if ((v & 0x0002) != 0)
-                                bgNextTileAttrib >>= 2; // Left/Right
-                            bgNextTileAttrib &= 0x03;
-                            break;
-                        case 4:
-                            // Fetch Lo BG
-                            int tableAddr = ((ctrl & 0x10) != 0) ? 0x1000 : 0x0000;
-                            bgNextTileLsb = readVram(tableAddr + (bgNextTileId * 16) + ((v >> 12) & 0x07));
-                            break;
-                        case 6:
-                            // Fetch Hi BG
-                            int tableAddr2 = ((ctrl & 0x10) != 0) ? 0x1000 : 0x0000;
-                            bgNextTileMsb = readVram(tableAddr2 + (bgNextTileId * 16) + ((v >> 12) & 0x07) + 8);
-                            break;
-                        case 7:
-                            incrementScrollX();
-                            break;
-                    }
+                    fetchBackground(cycle);
                 }
 
                 // Vertical Increment
@@ -243,37 +964,371 @@ public class PPU {
 
         // VBlank
         if (scanline == 241 && cycle == 1) {
-            status |= 0x80;
-            if ((ctrl & 0x80) != 0)
-                nmiOccurred = true;
-            display.refresh();
+            enterVBlank();
         }
 
         // Pre-render clear flags
         if (scanline == 261 && cycle == 1) {
-            status &= ~(0x80 | 0x40 | 0x20); // Clear VBlank, Sprite 0, Overflow
-            nmiOccurred = false;
+            clearFlags();
+        }
+
+        // Odd frame dot skip
+        if (scanline == 261 && cycle == 339 && oddFrame && oddFrameSkip && (mask & 0x18) != 0) {
+            cycle = 340;
         }
 
         // Pixel Output (Visible Area)
         if (scanline < 240 && cycle > 0 && cycle <= 256) {
-            renderPixel();
+            outputPixel();
+            if (cycle == 256)
+                finishScanline();
         }
+    }
 
-        // --- End of Cycle ---
-        cycle++;
-        if (cycle >= 341) {
-            cycle = 0;
-            scanline++;
-            if (scanline >= 262) {
-                scanline = 0;
-                frameComplete = true; // Signal Main Loop
+    // Background fetch for one dot of the 8-dot tile pattern (rendering enabled only)
+    private void fetchBackground(int cycle) {
+        switch ((cycle - 1) % 8) {
+            case 0:
+                fetchNametable();
+                break;
+            case 2:
+                fetchAttribute();
+                break;
+            case 4:
+                fetchPatternLo();
+                break;
+            case 6:
+                fetchPatternHi();
+                break;
+            case 7:
+                incrementScrollX();
+                break;
+        }
+    }
+
+    private void fetchNametable() {
+        loadBackgroundShifters();
+        // Fetch NT Byte
+        bgNextTileId = readVram(0x2000 | (v & 0x0FFF));
+    }
+
+    private void fetchAttribute() {
+        // Fetch Attribute Byte
+        // Complex address calc: 0x23C0 + (v.nt << 10) + ((v.y >> 5) << 3) + (v.x >> 5)
+        // But v has specific layout: yyy NN YYYYY XXXXX
+        int addr = 0x23C0 | (v & 0x0C00) | ((v >> 4) & 0x38) | ((v >> 2) & 0x07);
+        bgNextTileAttrib = readVram(addr);
+        // Process Quad
+        if ((v & 0x0040) != 0)
+            bgNextTileAttrib >>= 4; // Top/Bottom
+        if ((v & 0x0002) != 0)
+            bgNextTileAttrib >>= 2; // Left/Right
+        bgNextTileAttrib &= 0x03;
+    }
+
+    private void fetchPatternLo() {
+        // Fetch Lo BG
+        int tableAddr = ((ctrl & 0x10) != 0) ? 0x1000 : 0x0000;
+        bgNextTileLsb = readVram(tableAddr + (bgNextTileId * 16) + ((v >> 12) & 0x07));
+    }
+
+    private void fetchPatternHi() {
+        // Fetch Hi BG
+        int tableAddr = ((ctrl & 0x10) != 0) ? 0x1000 : 0x0000;
+        bgNextTileMsb = readVram(tableAddr + (bgNextTileId * 16) + ((v >> 12) & 0x07) + 8);
+    }
+
+    // === Scanline Renderer ===
+    // Dots 1-256 of visible lines. Nothing is fetched or drawn per dot; the
+    // whole line is produced at dot 256 from the v/t/x, shifter and OAM state
+    // latched at that point. Sprite 0 hit is predicted at dot 1 and raised on
+    // the dot the accurate pipeline would raise it. Mid-line register writes
+    // only take effect from the next line.
+
+    private void tickScanlineRenderer() {
+        if (cycle == 1)
+            sprite0HitCycle = predictSprite0HitCycle();
+
+        if (cycle == sprite0HitCycle)
+            status |= 0x40;
+
+        if (cycle == 256) {
+            if (skipFrame) {
+                fetchScanline();
+            } else {
+                renderScanline();
+                frameSink.scanlineComplete(scanline, frameBuffer);
             }
+            incrementScrollY();
+        }
+    }
+
+    // Fetch pipeline of dots 2-256 without composing pixels (skipped frames)
+    private void fetchScanline() {
+        if ((mask & 0x18) == 0)
+            return;
+        for (int dot = 2; dot <= 256; dot++) {
+            updateShifters();
+            fetchBackground(dot);
         }
     }
 
+    private void renderScanline() {
+        int rowOffset = scanline * FrameSink.WIDTH;
+        boolean renderingEnabled = (mask & 0x18) != 0;
+
+        // Resolve the 32 palette entries once per line
+        for (int i = 0; i < 32; i++) {
+            lineColors[i] = PALETTE_LOOKUP[readVram(0x3F00 + i) & 0x3F];
+        }
+
+        if (!renderingEnabled) {
+            java.util.Arrays.fill(frameBuffer, rowOffset, rowOffset + FrameSink.WIDTH, lineColors[0]);
+            return;
+        }
+
+        evaluateLineSprites();
+
+        boolean bgEnabled = (mask & 0x08) != 0;
+        int bitMux = 0x8000 >> x;
+
+        for (int dot = 1; dot <= 256; dot++) {
+            if (dot >= 2) {
+                updateShifters();
+                fetchBackground(dot);
+            }
+
+            int bgPixel = 0;
+            int bgPalette = 0;
+            if (bgEnabled) {
+                bgPixel = ((bgShifterPatternLo & bitMux) != 0 ? 1 : 0) | ((bgShifterPatternHi & bitMux) != 0 ? 2 : 0);
+                bgPalette = ((bgShifterAttribLo & bitMux) != 0 ? 1 : 0) | ((bgShifterAttribHi & bitMux) != 0 ? 2 : 0);
+            }
+
+            int spr = lineSprites[dot - 1];
+            int sprPixel = spr & 0x03;
+
+            int colorSlot;
+            if (sprPixel != 0 && (bgPixel == 0 || (spr & LINE_SPRITE_FRONT) != 0)) {
+                colorSlot = (((spr >> 2) & 0x03) + 4) << 2 | sprPixel;
+            } else if (bgPixel != 0) {
+                colorSlot = (bgPalette << 2) | bgPixel;
+            } else {
+                colorSlot = 0;
+            }
+            frameBuffer[rowOffset + dot - 1] = lineColors[colorSlot];
+        }
+    }
+
+    private void evaluateLineSprites() {
+        evaluateSprites(lineSprites, 0, FrameSink.WIDTH);
+    }
+
+    // Fills out[0..width) with the winning sprite pixel for screen x = xStart + i:
+    // bits 0-1 pixel, 2-3 palette, LINE_SPRITE_FRONT if in front of the background,
+    // LINE_SPRITE_ZERO if sprite 0 is opaque there.
+    // Walks OAM backwards so the lowest-index opaque sprite wins, as in renderPixel().
+    private void evaluateSprites(int[] out, int xStart, int width) {
+        java.util.Arrays.fill(out, 0, width, 0);
+        if ((mask & 0x10) == 0)
+            return;
+
+        int height = ((ctrl & 0x20) != 0) ? 16 : 8;
+        int xEnd = xStart + width;
+        for (int i = 63; i >= 0; i--) {
+            int index = i * 4;
+            int diffY = scanline - (oam[index] & 0xFF) - 1; // 1 scanline delay
+            if (diffY < 0 || diffY >= height)
+                continue;
+
+            int sx = oam[index + 3] & 0xFF;
+            if (sx >= xEnd || sx + 8 <= xStart)
+                continue;
+
+            int id = oam[index + 1] & 0xFF;
+            int attr = oam[index + 2] & 0xFF;
+
+            int tileRow = ((attr & 0x80) != 0) ? height - 1 - diffY : diffY;
+            int patternAddr = spritePatternAddress(id, tileRow, height);
+            int lo = readVram(patternAddr);
+            int hi = readVram(patternAddr + 8);
+            boolean flipH = (attr & 0x40) != 0;
+            int flags = ((attr & 0x03) << 2) | ((attr & 0x20) == 0 ? LINE_SPRITE_FRONT : 0)
+                    | (i == 0 ? LINE_SPRITE_ZERO : 0);
+
+            for (int dx = 0; dx < 8; dx++) {
+                int px = sx + dx;
+                if (px < xStart || px >= xEnd)
+                    continue;
+                int bit = flipH ? dx : (7 - dx);
+                int val = ((lo >> bit) & 1) | (((hi >> bit) & 1) << 1);
+                if (val != 0)
+                    out[px - xStart] = flags | val;
+            }
+        }
+    }
+
+    // Returns the dot (1-256) on which sprite 0 hits the background on the
+    // current line, or -1. Uses the state at dot 1: shifters hold the first two
+    // tiles, later tiles are read from the nametable at v + (tile - 2).
+    private int predictSprite0HitCycle() {
+        if ((mask & 0x18) != 0x18)
+            return -1;
+
+        int height = ((ctrl & 0x20) != 0) ? 16 : 8;
+        int diffY = scanline - (oam[0] & 0xFF) - 1;
+        if (diffY < 0 || diffY >= height)
+            return -1;
+
+        int id = oam[1] & 0xFF;
+        int attr = oam[2] & 0xFF;
+        int sx = oam[3] & 0xFF;
+        int tileRow = ((attr & 0x80) != 0) ? height - 1 - diffY : diffY;
+        int patternAddr = spritePatternAddress(id, tileRow, height);
+        int lo = readVram(patternAddr);
+        int hi = readVram(patternAddr + 8);
+        boolean flipH = (attr & 0x40) != 0;
+
+        for (int dx = 0; dx < 8; dx++) {
+            int px = sx + dx;
+            if (px >= 255)
+                break; // No hit at x=255
+            int bit = flipH ? dx : (7 - dx);
+            if ((((lo | hi) >> bit) & 1) != 0 && backgroundPixelAt(px) != 0)
+                return px + 1;
+        }
+        return -1;
+    }
+
+    // Background pattern value (0-3) at screen x of the current line, from dot 1 state
+    private int backgroundPixelAt(int screenX) {
+        int p = screenX + x;
+        int slot = p >> 3;
+        int bit = 7 - (p & 7);
+
+        if (slot < 2) {
+            int shift = 8 + bit - (slot * 8);
+            return ((bgShifterPatternLo >> shift) & 1) | (((bgShifterPatternHi >> shift) & 1) << 1);
+        }
+
+        int addr = v;
+        for (int i = 2; i < slot; i++) {
+            if ((addr & 0x001F) == 31) {
+                addr &= ~0x001F;
+                addr ^= 0x0400;
+            } else {
+                addr++;
+            }
+        }
+        int tileId = (slot == 2) ? bgNextTileId : readVram(0x2000 | (addr & 0x0FFF));
+        int tableAddr = ((ctrl & 0x10) != 0) ? 0x1000 : 0x0000;
+        int rowAddr = tableAddr + (tileId * 16) + ((addr >> 12) & 0x07);
+        int tileLo = readVram(rowAddr);
+        int tileHi = readVram(rowAddr + 8);
+        return ((tileLo >> bit) & 1) | (((tileHi >> bit) & 1) << 1);
+    }
+
     // === Logic Helpers ===
 
+    // Copies everything that affects future pixels and timing (used at a frame
+    // wrap to seed the render thread's replica)
+    void copyStateFrom(PPU source) {
+        ctrl = source.ctrl;
+        mask = source.mask;
+        status = source.status;
+        oamAddr = source.oamAddr;
+        v = source.v;
+        t = source.t;
+        x = source.x;
+        w = source.w;
+        bufferData = source.bufferData;
+        ioBus = source.ioBus;
+        cycle = source.cycle;
+        scanline = source.scanline;
+        dotClock = source.dotClock;
+        oddFrame = source.oddFrame;
+        oddFrameSkip = source.oddFrameSkip;
+        renderer = source.renderer;
+        requestedRenderer = source.renderer;
+        bgNextTileId = source.bgNextTileId;
+        bgNextTileAttrib = source.bgNextTileAttrib;
+        bgNextTileLsb = source.bgNextTileLsb;
+        bgNextTileMsb = source.bgNextTileMsb;
+        bgShifterPatternLo = source.bgShifterPatternLo;
+        bgShifterPatternHi = source.bgShifterPatternHi;
+        bgShifterAttribLo = source.bgShifterAttribLo;
+        bgShifterAttribHi = source.bgShifterAttribHi;
+        System.arraycopy(source.nametables, 0, nametables, 0, nametables.length);
+        System.arraycopy(source.paletteRam, 0, paletteRam, 0, paletteRam.length);
+        System.arraycopy(source.oam, 0, oam, 0, oam.length);
+        setMirroring(source.mirroring);
+        markChrBanksChanged();
+        java.util.Arrays.fill(paletteStamps, debugStamp);
+    }
+
+    private void beginFrame() {
+        frameNumber++;
+        if (pipeline != null)
+            pipeline.endSegment(dotClock, renderer);
+        if (requestedPipelined != (pipeline != null) && memory != null) {
+            if (pipeline == null) {
+                pipeline = new RenderPipeline(this, memory, frameSink);
+            } else {
+                pipeline.close();
+                framesRendered += pipeline.getFramesRendered();
+                pipeline = null;
+            }
+        }
+        if (pipeline != null) {
+            skipFrame = true; // Timing only, no composition
+            consecutiveSkips = 0;
+            return;
+        }
+
+        boolean skip;
+        if (maxAdaptiveSkip > 0) {
+            long now = System.nanoTime();
+            if (lastFrameStart != 0) {
+                frameLag += (now - lastFrameStart) - FRAME_NANOS;
+                // Never owe more than a few frames; a long stall shouldn't cause a skip burst
+                frameLag = Math.max(0, Math.min(frameLag, 4 * FRAME_NANOS));
+            }
+            lastFrameStart = now;
+            skip = frameLag > FRAME_NANOS && consecutiveSkips < maxAdaptiveSkip;
+        } else {
+            lastFrameStart = 0;
+            frameLag = 0;
+            skip = consecutiveSkips < frameSkip;
+        }
+        consecutiveSkips = skip ? consecutiveSkips + 1 : 0;
+        skipFrame = skip;
+    }
+
+    // Skipped frames: renderPixel() without composition. Only sprite 0 can
+    // raise the hit flag and it is always evaluated first, so the other 63
+    // sprites don't need to be looked at.
+    private void detectSprite0Hit() {
+        if ((mask & 0x18) != 0x18 || (status & 0x40) != 0 || (cycle - 1) == 255)
+            return;
+
+        int bitMux = 0x8000 >> x;
+        if (((bgShifterPatternLo | bgShifterPatternHi) & bitMux) == 0)
+            return; // Transparent background
+
+        int height = ((ctrl & 0x20) != 0) ? 16 : 8;
+        int diffY = scanline - (oam[0] & 0xFF) - 1;
+        int diffX = (cycle - 1) - (oam[3] & 0xFF);
+        if (diffY < 0 || diffY >= height || diffX < 0 || diffX >= 8)
+            return;
+
+        int attr = oam[2] & 0xFF;
+        int tileRow = ((attr & 0x80) != 0) ? height - 1 - diffY : diffY;
+        int patternAddr = spritePatternAddress(oam[1] & 0xFF, tileRow, height);
+        int bit = ((attr & 0x40) != 0) ? diffX : (7 - diffX);
+        if ((((readVram(patternAddr) | readVram(patternAddr + 8)) >> bit) & 1) != 0)
+            status |= 0x40;
+    }
+
     private void renderPixel() {
         int bgPixel = 0;
         int bgPalette = 0;
@@ -328,16 +1383,7 @@ public class PPU {
                             tileRow = height - 1 - tileRow;
 
                         // Pattern Address
-                        int patternAddr;
-                        if (height == 8) {
-                            patternAddr = ((ctrl & 0x08) != 0 ? 0x1000 : 0x0000) + id * 16 + tileRow;
-                        } else {
-                            // 8x16
-                            patternAddr = ((id & 0x01) * 0x1000) + ((id & 0xFE) * 16) + tileRow;
-                            if (tileRow >= 8)
-                                patternAddr += 8; // Fix: Jump 8 bytes to get to bottom tile (since tileRow is already
-                                                  // +8)
-                        }
+                        int patternAddr = spritePatternAddress(id, tileRow, height);
 
                         // Optimize: Don't read VRAM inside loop if avoidable, but for now simple
                         int lo = readVram(patternAddr);
@@ -396,7 +1442,19 @@ public class PPU {
         }
 
         int colorIndex = readVram(0x3F00 + (finalPalette << 2) + finalPixel);
-        display.setPixel(cycle - 1, scanline, PALETTE_LOOKUP[colorIndex & 0x3F]);
+        frameBuffer[scanline * FrameSink.WIDTH + (cycle - 1)] = PALETTE_LOOKUP[colorIndex & 0x3F];
+    }
+
+    // Pattern address of the given row (already flipped) of sprite tile id
+    private int spritePatternAddress(int id, int tileRow, int height) {
+        if (height == 8) {
+            return ((ctrl & 0x08) != 0 ? 0x1000 : 0x0000) + id * 16 + tileRow;
+        }
+        // 8x16
+        int patternAddr = ((id & 0x01) * 0x1000) + ((id & 0xFE) * 16) + tileRow;
+        if (tileRow >= 8)
+            patternAddr += 8; // Fix: Jump 8 bytes to get to bottom tile (since tileRow is already +8)
+        return patternAddr;
     }
 
     // === Shifters & Scrolling ===
@@ -431,25 +1489,32 @@ public class PPU {
     }
 
     private void incrementScrollY() {
-        if ((mask & 0x18) != 0) {
-            int fineY = (v & 0x7000) >> 12;
-            if (fineY < 7) {
-                fineY++;
-                v = (v & ~0x7000) | (fineY << 12);
-            } else {
-                v &= ~0x7000; // Reset fine Y
-                int y = (v & 0x03E0) >> 5;
-                if (y == 29) {
-                    y = 0;
-                    v ^= 0x0800; // Switch Vertical Nametable
-                } else if (y == 31) {
-                    y = 0;
-                } else {
-                    y++;
-                }
-                v = (v & ~0x03E0) | (y << 5);
-            }
+        if ((mask & 0x18) != 0)
+            v = nextRowAddress(v);
+    }
+
+    // Address after moving down one pixel row: fine Y, then coarse Y
+    private static int nextRowAddress(int addr) {
+        int fineY = (addr & 0x7000) >> 12;
+        if (fineY < 7)
+            return (addr & ~0x7000) | ((fineY + 1) << 12);
+
+        addr &= ~0x7000; // Reset fine Y
+        int y = (addr & 0x03E0) >> 5;
+        if (y == 29) {
+            y = 0;
+            addr ^= 0x0800; // Switch Vertical Nametable
+        } else if (y == 31) {
+            y = 0;
+        } else {
+            y++;
         }
+        return (addr & ~0x03E0) | (y << 5);
+    }
+
+    // Coarse X plus the horizontal nametable bit as one 6-bit counter
+    private static int horizontalPosition(int addr) {
+        return ((addr >> 5) & 0x20) | (addr & 0x1F);
     }
 
     private void transferAddressX() {
@@ -481,6 +1546,8 @@ public class PPU {
 
     public void setMirroring(int mode) {
         this.mirroring = mode;
+        predictionVersion++;
+        mirroringStamp = ++debugStamp;
     }
 
     public int readVram(int addr) {
@@ -514,9 +1581,11 @@ public class PPU {
             // Pattern Tables
             if (memory != null)
                 memory.writeChr(address, val);
+            chrStamps[address >> 4] = ++debugStamp;
         } else if (address < 0x3F00) {
             int index = getMirroredAddress(address) & 0x07FF;
             nametables[index] = (byte) val;
+            nametableStamps[index] = ++debugStamp;
         } else if (address < 0x4000) {
             address &= 0x001F;
             if (address == 0x10)
@@ -528,6 +1597,7 @@ public class PPU {
             if (address == 0x1C)
                 address = 0x0C;
             paletteRam[address] = (byte) val;
+            paletteStamps[address >> 2] = ++debugStamp;
         }
     }
 
@@ -574,39 +1644,109 @@ public class PPU {
 
     public int[] getPatternTable(int i, int palette) {
         // i: 0 or 1 (Left or Right Pattern Table)
-        // Returns 128x128 pixel array (4096 tiles * 8x8 pixels? No, 256 tiles * 8x8 =
-        // 128x128)
-        // 16x16 tiles = 256 tiles per table.
-        // Each tile is 8x8 pixels.
-        // Image size: 128 x 128.
-
+        // Returns 128x128 pixels: 16x16 tiles of 8x8
         int[] pixels = new int[128 * 128];
+        for (int tile = 0; tile < 256; tile++) {
+            drawPatternTile(i * 256 + tile, palette, pixels, (tile >> 4) * 8 * 128 + (tile & 0x0F) * 8, 128);
+        }
+        return pixels;
+    }
 
-        for (int tileY = 0; tileY < 16; tileY++) {
-            for (int tileX = 0; tileX < 16; tileX++) {
-                int offset = tileY * 256 + tileX * 16; // Tile Index * 16 bytes
-                int tableOffset = i * 4096;
+    // Decodes one tile (0-511 across both tables) into dst at offset, with
+    // the given row stride
+    public void drawPatternTile(int tile, int palette, int[] dst, int offset, int stride) {
+        drawTile(tile, palette, palette, dst, offset, stride);
+    }
 
-                for (int row = 0; row < 8; row++) {
-                    int tileLsb = readVram(tableOffset + offset + row);
-                    int tileMsb = readVram(tableOffset + offset + row + 8);
+    // As drawPatternTile, but pixel 0 shows the backdrop ($3F00) like the
+    // background renderer does
+    public void drawBackgroundTile(int tile, int palette, int[] dst, int offset, int stride) {
+        drawTile(tile, palette, 0, dst, offset, stride);
+    }
 
-                    for (int col = 0; col < 8; col++) {
-                        int pixel = ((tileLsb & 0x01) << 0) | ((tileMsb & 0x01) << 1);
-                        tileLsb >>= 1;
-                        tileMsb >>= 1;
+    private void drawTile(int tile, int palette, int zeroPalette, int[] dst, int offset, int stride) {
+        int base = (tile & 0x1FF) * 16;
+        for (int row = 0; row < 8; row++) {
+            int tileLsb = readVram(base + row);
+            int tileMsb = readVram(base + row + 8);
+            int rowStart = offset + row * stride;
+            for (int col = 0; col < 8; col++) {
+                int pixel = ((tileLsb >> (7 - col)) & 0x01) | (((tileMsb >> (7 - col)) & 0x01) << 1);
+                dst[rowStart + col] = getColorFromPaletteRam(pixel == 0 ? zeroPalette : palette, pixel);
+            }
+        }
+    }
 
-                        int c = getColorFromPaletteRam(palette, pixel);
+    public int getControl() {
+        return ctrl;
+    }
 
-                        // Calculate pixel pos in final image
-                        int px = tileX * 8 + (7 - col);
-                        int py = tileY * 8 + row;
+    // === Event Log ===
+    // Both are shared with the EDT: the event viewer attaches the log, the
+    // debugger reads the frame number. Only the emulation thread counts frames.
+    volatile PPUEventLog eventLog; // Null while the event viewer is closed; Memory checks it too
+    private volatile long frameNumber = 0; // Frame wraps since power-on
 
-                        pixels[py * 128 + px] = c;
-                    }
-                }
-            }
-        }
-        return pixels;
+    // Attach a log to record register, OAM DMA and mapper writes; null detaches
+    public void setEventLog(PPUEventLog log) {
+        this.eventLog = log;
+    }
+
+    public PPUEventLog getEventLog() {
+        return eventLog;
+    }
+
+    public long getFrameNumber() {
+        return frameNumber;
+    }
+
+    // Stamps a write with the frame, scanline and dot the PPU is at
+    void recordEvent(int address, int value) {
+        PPUEventLog log = eventLog;
+        if (log != null)
+            log.record(frameNumber, scanline, cycle, address, value);
+    }
+
+    // === Debugger Change Stamps ===
+    // Every write that can change what a debugger view shows stores the next
+    // value of a running counter against what it touched. A view remembers the
+    // counter at its last refresh and redraws only what carries a newer stamp.
+    // Written on the emulation thread and read on the EDT without locking: a
+    // stale read only delays a redraw to the next refresh. Compare stamps with
+    // isNewer(), which survives the counter wrapping.
+    private int debugStamp = 0;
+    private final int[] chrStamps = new int[512]; // Per 16-byte tile
+    private final int[] nametableStamps = new int[2048]; // Per byte of nametable RAM
+    private final int[] paletteStamps = new int[8]; // Per 4-entry palette
+    private int chrBankStamp = 0; // A bank switch remaps every tile
+    private int mirroringStamp = 0;
+
+    public static boolean isNewer(int stamp, int since) {
+        return stamp - since > 0;
+    }
+
+    public int getDebugStamp() {
+        return debugStamp;
+    }
+
+    // tile: 0-511 across both pattern tables
+    public int getChrStamp(int tile) {
+        int stamp = chrStamps[tile & 0x1FF];
+        return isNewer(chrBankStamp, stamp) ? chrBankStamp : stamp;
+    }
+
+    public int getPaletteStamp(int palette) {
+        return paletteStamps[palette & 0x07];
+    }
+
+    // addr: $2000-$2FFF, resolved through the current mirroring
+    public int getNametableStamp(int addr) {
+        int stamp = nametableStamps[getMirroredAddress(addr) & 0x07FF];
+        return isNewer(mirroringStamp, stamp) ? mirroringStamp : stamp;
+    }
+
+    // Called by the mapper when CHR banking changes
+    void markChrBanksChanged() {
+        chrBankStamp = ++debugStamp;
     }
 }
@@ -0,0 +1,103 @@
+package nes;
+
+// Ring buffer of PPU-visible writes for the debugger's event viewer: every
+// $2000-$2007 write, $4014 OAM DMA and mapper register write, with the frame,
+// scanline and dot where the PPU saw it. Attach with PPU.setEventLog(); while
+// detached the only cost is one null check per write. record() stores into
+// preallocated primitive arrays and never allocates.
+//
+// Written by the emulation thread, read by the debugger. copyFrame() re-reads
+// the write counter after copying and drops anything that may have been
+// overwritten meanwhile.
+public class PPUEventLog {
+    public static final int DEFAULT_CAPACITY = 8192; // Power of two
+
+    private final int mask;
+    private final long[] frames;
+    private final int[] positions; // scanline << 16 | dot
+    private final int[] writes; // address << 8 | value
+    private volatile long count = 0; // Events ever recorded
+
+    public PPUEventLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PPUEventLog(int capacity) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        mask = capacity - 1;
+        frames = new long[capacity];
+        positions = new int[capacity];
+        writes = new int[capacity];
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    void record(long frame, int scanline, int dot, int address, int value) {
+        long n = count;
+        int i = (int) n & mask;
+        frames[i] = frame;
+        positions[i] = (scanline << 16) | dot;
+        writes[i] = ((address & 0xFFFF) << 8) | (value & 0xFF);
+        count = n + 1;
+    }
+
+    // Copies the events of one frame, oldest first, into the caller's arrays
+    // (packed as above) and returns how many there were. Events that have
+    // already left the ring are missing.
+    public int copyFrame(long frame, int[] outPositions, int[] outWrites) {
+        long end = count;
+        long start = Math.max(0, end - frames.length);
+        // Newest first to find the frame, then copy forwards
+        long first = end;
+        for (long n = end - 1; n >= start; n--) {
+            long f = frames[(int) n & mask];
+            if (f == frame)
+                first = n;
+            else if (f < frame)
+                break;
+        }
+
+        int copied = 0;
+        for (long n = first; n < end && copied < outPositions.length; n++) {
+            int i = (int) n & mask;
+            if (frames[i] != frame)
+                break;
+            outPositions[copied] = positions[i];
+            outWrites[copied] = writes[i];
+            copied++;
+        }
+
+        // Anything the writer lapped while we copied is unreliable
+        long overwritten = count - frames.length;
+        if (overwritten > first) {
+            int lost = (int) Math.min(copied, overwritten - first);
+            System.arraycopy(outPositions, lost, outPositions, 0, copied - lost);
+            System.arraycopy(outWrites, lost, outWrites, 0, copied - lost);
+            copied -= lost;
+        }
+        return copied;
+    }
+
+    public static int scanlineOf(int position) {
+        return position >>> 16;
+    }
+
+    public static int dotOf(int position) {
+        return position & 0xFFFF;
+    }
+
+    public static int addressOf(int write) {
+        return write >>> 8;
+    }
+
+    public static int valueOf(int write) {
+        return write & 0xFF;
+    }
+}
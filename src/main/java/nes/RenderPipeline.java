@@ -0,0 +1,153 @@
+package nes;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import nes.video.FrameSink;
+
+// Pipelined rendering. The emulation thread's PPU keeps doing everything the
+// CPU can observe (status flags, NMI, sprite 0 hit, scroll counters) but
+// composes no pixels. Instead it logs every PPU register access and mapper
+// write with its dot clock timestamp. At each frame wrap the log is handed to
+// a render thread, which replays it on a replica PPU with its own copy of CHR
+// and mapper state and delivers the pixels to the frame sink. The replica
+// trails the emulation by about one frame.
+class RenderPipeline {
+    static final int LOG_WRITE = 0; // PPU register write
+    static final int LOG_READ = 1; // $2002 / $2007 read (write latch, read buffer, v)
+    static final int LOG_MAPPER = 2; // Mapper register write ($8000-$FFFF)
+    static final int LOG_ODD_FRAME_SKIP = 3; // Changes frame length, so it must land on the same dot
+
+    // Segments in flight: one being recorded, one being replayed, one queued.
+    // The emulation thread blocks at the frame wrap if the renderer falls
+    // further behind than that.
+    private static final int POOL_SIZE = 3;
+
+    private final PPU replica;
+    private final Memory shadowMemory;
+    private final BlockingQueue<Segment> free = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final BlockingQueue<Segment> ready = new ArrayBlockingQueue<>(POOL_SIZE);
+    private Segment current = new Segment();
+    private final Thread thread;
+
+    // One frame of log in primitive arrays. Grows on the rare frame with a
+    // large CHR upload and is reused from then on.
+    private static final class Segment {
+        long[] dots = new long[1024];
+        int[] entries = new int[1024]; // kind << 24 | address << 8 | value
+        int size;
+        long endDot;
+        int renderer;
+    }
+
+    // Must be created at a frame wrap, with the source PPU at dot 0 of line 0
+    RenderPipeline(PPU source, Memory memory, FrameSink frameSink) {
+        shadowMemory = memory.copyForRendering();
+        replica = new PPU(frameSink);
+        replica.setMemory(shadowMemory);
+        shadowMemory.setPPU(replica);
+        replica.copyStateFrom(source);
+
+        for (int i = 0; i < POOL_SIZE - 1; i++) {
+            free.add(new Segment());
+        }
+
+        thread = new Thread(this::renderLoop, "RenderThread");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void record(long dot, int kind, int address, int value) {
+        Segment segment = current;
+        if (segment.size == segment.dots.length) {
+            segment.dots = java.util.Arrays.copyOf(segment.dots, segment.size * 2);
+            segment.entries = java.util.Arrays.copyOf(segment.entries, segment.size * 2);
+        }
+        segment.dots[segment.size] = dot;
+        segment.entries[segment.size] = (kind << 24) | ((address & 0xFFFF) << 8) | (value & 0xFF);
+        segment.size++;
+    }
+
+    // Hands everything logged up to the given dot to the render thread
+    void endSegment(long dot, int renderer) {
+        current.endDot = dot;
+        current.renderer = renderer;
+        try {
+            ready.put(current);
+            current = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            current = new Segment(); // The old one may be replaying
+        }
+        current.size = 0;
+    }
+
+    // Blocks until every handed-off segment has been replayed
+    void drain() {
+        while (free.size() < POOL_SIZE - 1 && thread.isAlive()) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    void close() {
+        drain();
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void setFrameSink(FrameSink frameSink) {
+        replica.setFrameSink(frameSink);
+    }
+
+    long getFramesRendered() {
+        return replica.getFramesRendered();
+    }
+
+    private void renderLoop() {
+        try {
+            while (true) {
+                Segment segment = ready.take();
+                replay(segment);
+                free.put(segment);
+            }
+        } catch (InterruptedException e) {
+            // close()
+        }
+    }
+
+    private void replay(Segment segment) {
+        replica.setRenderer(segment.renderer);
+        for (int i = 0; i < segment.size; i++) {
+            replica.runToDot(segment.dots[i]);
+
+            int entry = segment.entries[i];
+            int address = (entry >> 8) & 0xFFFF;
+            int value = entry & 0xFF;
+            switch (entry >>> 24) {
+                case LOG_WRITE:
+                    replica.writeRegister(address, value);
+                    break;
+                case LOG_READ:
+                    replica.readRegister(address, 0);
+                    break;
+                case LOG_MAPPER:
+                    shadowMemory.write(address, value);
+                    break;
+                case LOG_ODD_FRAME_SKIP:
+                    replica.setOddFrameSkip(value != 0);
+                    break;
+            }
+        }
+        replica.runToDot(segment.endDot);
+        replica.frameComplete = false;
+    }
+}
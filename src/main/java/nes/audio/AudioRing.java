@@ -0,0 +1,52 @@
+package nes.audio;
+
+// Lock-free single-producer/single-consumer ring of 16-bit samples. One
+// thread may write() and one other thread may read(); neither ever blocks
+// or allocates. Each side only moves its own counter, and the volatile write
+// of that counter publishes the samples copied before it.
+public class AudioRing {
+    private final short[] data;
+    private final int mask;
+    private volatile long written = 0; // Samples ever written (producer)
+    private volatile long read = 0; // Samples ever read (consumer)
+
+    public AudioRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        data = new short[capacity];
+        mask = capacity - 1;
+    }
+
+    public int getCapacity() {
+        return data.length;
+    }
+
+    // Samples waiting to be read; exact on either side, a snapshot elsewhere
+    public int size() {
+        return (int) (written - read);
+    }
+
+    // Copies as many samples as fit and returns how many that was
+    public int write(short[] src, int offset, int length) {
+        long w = written;
+        int n = Math.min(length, data.length - (int) (w - read));
+        int start = (int) w & mask;
+        int first = Math.min(n, data.length - start);
+        System.arraycopy(src, offset, data, start, first);
+        System.arraycopy(src, offset + first, data, 0, n - first);
+        written = w + n;
+        return n;
+    }
+
+    // Copies up to length samples out and returns how many there were
+    public int read(short[] dst, int offset, int length) {
+        long r = read;
+        int n = Math.min(length, (int) (written - r));
+        int start = (int) r & mask;
+        int first = Math.min(n, data.length - start);
+        System.arraycopy(data, start, dst, offset, first);
+        System.arraycopy(data, 0, dst, offset + first, n - first);
+        read = r + n;
+        return n;
+    }
+}
@@ -0,0 +1,23 @@
+package nes.audio;
+
+// Destination for the APU's audio output, chosen when the NES is built.
+// The APU hands over one batch of signed 16-bit mono samples per frame; the
+// array is reused for the next batch, so implementations must copy anything
+// they want to keep before returning.
+public interface AudioSink {
+    int DEFAULT_SAMPLE_RATE = 44100;
+
+    // Called on the emulation thread with samples[0] .. samples[count - 1].
+    void write(short[] samples, int count);
+
+    // Output rate in Hz; the APU synthesizes straight at this rate.
+    default int getSampleRate() {
+        return DEFAULT_SAMPLE_RATE;
+    }
+
+    // Factor applied to the APU's sample rate for the next batch. Sinks played
+    // against a real clock use it to correct drift; everything else keeps 1.
+    default double rateAdjustment() {
+        return 1.0;
+    }
+}
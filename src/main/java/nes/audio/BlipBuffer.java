@@ -0,0 +1,177 @@
+package nes.audio;
+
+import java.util.Arrays;
+
+// Band-limited step synthesis. Instead of being sampled, a signal is
+// described by its amplitude changes: addDelta(time, delta) at clock-rate
+// timestamps. Each change is spread over a few output samples by a windowed
+// sinc step, picked from a polyphase table of precomputed sub-sample offsets,
+// so square waves come out without the aliasing of point or box sampling.
+// Cost is per change, not per clock, and any output rate works; the Quality
+// presets trade kernel length (aliasing rejection) for time per change.
+//
+// Time runs in frames: addDelta() takes clocks since the frame start,
+// endFrame(clocks) closes the frame and makes its samples readable.
+// The buffer holds differences; readSamples() integrates them, so output is
+// in the same units as the deltas. Kernels sum exactly to UNIT, so the running
+// sum never drifts.
+public class BlipBuffer {
+    // Taps per step and sub-sample phase resolution; longer kernels reject
+    // more aliasing but cost more per amplitude change
+    public enum Quality {
+        FAST(8, 5), STANDARD(16, 6), HIGH(32, 7);
+
+        private final int width;
+        private final int phaseBits;
+        private final int[] kernel;
+
+        Quality(int width, int phaseBits) {
+            this.width = width;
+            this.phaseBits = phaseBits;
+            this.kernel = buildKernel(width, 1 << phaseBits);
+        }
+
+        public int getWidth() {
+            return width;
+        }
+    }
+
+    private static final int KERNEL_BITS = 14;
+    private static final int UNIT = 1 << KERNEL_BITS;
+    private static final double CUTOFF = 0.45; // Fraction of the output rate; Nyquist is 0.5
+
+    private static final int TIME_BITS = 32; // Fractional bits of sample positions
+
+    private final double clockRate;
+    private final int width;
+    private final int phaseShift; // Position bits below the phase index
+    private final int phaseMask;
+    private final int[] kernel;
+    private long factor; // Output samples per clock, 32.32 fixed point
+    private final int[] buffer;
+    private long offset = 0; // Position of the frame start, in samples (32.32)
+    private int integrator = 0;
+
+    public BlipBuffer(double clockRate, int sampleRate, int maxSamples) {
+        this(clockRate, sampleRate, maxSamples, Quality.STANDARD);
+    }
+
+    // maxSamples bounds how many samples may be left unread at a frame end
+    public BlipBuffer(double clockRate, int sampleRate, int maxSamples, Quality quality) {
+        this.clockRate = clockRate;
+        this.width = quality.width;
+        this.phaseShift = TIME_BITS - quality.phaseBits;
+        this.phaseMask = (1 << quality.phaseBits) - 1;
+        this.kernel = quality.kernel;
+        setSampleRate(sampleRate);
+        buffer = new int[maxSamples + width + 1];
+    }
+
+    // May change between frames, e.g. to nudge the rate for drift correction
+    public void setSampleRate(double sampleRate) {
+        factor = Math.round(sampleRate / clockRate * (1L << TIME_BITS));
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    // Adds an amplitude step at the given clock within the current frame
+    public void addDelta(int time, int delta) {
+        long position = offset + time * factor;
+        int index = (int) (position >>> TIME_BITS);
+        int phase = (int) (position >>> phaseShift) & phaseMask;
+        // Straight multiply-add over consecutive ints: the JIT vectorises it
+        int[] buf = buffer;
+        int[] taps = kernel;
+        int k = phase * width;
+        for (int i = 0; i < width; i++) {
+            buf[index + i] += taps[k + i] * delta;
+        }
+    }
+
+    public void endFrame(int clocks) {
+        offset += clocks * factor;
+    }
+
+    // Complete samples waiting to be read
+    public int samplesAvailable() {
+        return (int) (offset >>> TIME_BITS);
+    }
+
+    // Integrates up to out.length available samples into out and removes them
+    public int readSamples(int[] out) {
+        int count = Math.min(out.length, samplesAvailable());
+        int sum = integrator;
+        int[] buf = buffer;
+        for (int i = 0; i < count; i++) {
+            sum += buf[i];
+            out[i] = sum >> KERNEL_BITS;
+        }
+        integrator = sum;
+
+        // Slide the unread samples and the pending kernel tails to the start
+        int remaining = samplesAvailable() - count + width;
+        System.arraycopy(buf, count, buf, 0, remaining);
+        Arrays.fill(buf, remaining, remaining + count, 0);
+        offset -= (long) count << TIME_BITS;
+        return count;
+    }
+
+    public void clear() {
+        Arrays.fill(buffer, 0);
+        offset = 0;
+        integrator = 0;
+    }
+
+    // === Kernel ===
+
+    // For each phase p (step at p / phases of a sample), tap i holds how much of
+    // a unit step lands between output samples i-1 and i: the integral of a
+    // Blackman-windowed sinc over that interval, delayed by width/2 samples.
+    private static int[] buildKernel(int width, int phases) {
+        int half = width / 2;
+        int[] kernel = new int[phases * width];
+        double[] taps = new double[width];
+        for (int p = 0; p < phases; p++) {
+            double frac = (double) p / phases;
+            double total = 0;
+            for (int i = 0; i < width; i++) {
+                double from = i - half - frac;
+                taps[i] = integrate(from, from + 1, half);
+                total += taps[i];
+            }
+            int sum = 0;
+            int peak = 0;
+            for (int i = 0; i < width; i++) {
+                int tap = (int) Math.round(taps[i] / total * UNIT);
+                kernel[p * width + i] = tap;
+                sum += tap;
+                if (tap > kernel[p * width + peak])
+                    peak = i;
+            }
+            kernel[p * width + peak] += UNIT - sum; // Rounding error into the largest tap
+        }
+        return kernel;
+    }
+
+    private static double integrate(double from, double to, int half) {
+        final int steps = 32;
+        double width = (to - from) / steps;
+        double sum = 0;
+        for (int s = 0; s < steps; s++) {
+            sum += impulse(from + (s + 0.5) * width, half);
+        }
+        return sum * width;
+    }
+
+    private static double impulse(double t, int half) {
+        if (Math.abs(t) >= half)
+            return 0;
+        double x = 2 * CUTOFF * t;
+        double sinc = x == 0 ? 1 : Math.sin(Math.PI * x) / (Math.PI * x);
+        double w = t / half; // -1..1
+        double window = 0.42 + 0.5 * Math.cos(Math.PI * w) + 0.08 * Math.cos(2 * Math.PI * w);
+        return sinc * window;
+    }
+}
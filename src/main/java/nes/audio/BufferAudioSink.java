@@ -0,0 +1,43 @@
+package nes.audio;
+
+import java.util.Arrays;
+
+// Keeps every sample in memory, growing as needed (tests, analysis jobs).
+public class BufferAudioSink implements AudioSink {
+    private short[] samples = new short[1 << 16];
+    private int count = 0;
+    private final int sampleRate;
+
+    public BufferAudioSink() {
+        this(DEFAULT_SAMPLE_RATE);
+    }
+
+    public BufferAudioSink(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public synchronized void write(short[] src, int length) {
+        if (count + length > samples.length)
+            samples = Arrays.copyOf(samples, Math.max(samples.length * 2, count + length));
+        System.arraycopy(src, 0, samples, count, length);
+        count += length;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+    public synchronized short[] copySamples() {
+        return Arrays.copyOf(samples, count);
+    }
+
+    public synchronized void clear() {
+        count = 0;
+    }
+}
@@ -0,0 +1,62 @@
+package nes.audio;
+
+// The NES's analogue output stage: a 90 Hz high-pass, a 440 Hz high-pass and
+// a 14 kHz low-pass, all first order. Runs in integer arithmetic over a whole
+// batch of samples; coefficients are 16-bit fractions and the state carries
+// STATE_BITS extra bits so rounding doesn't build up into a DC offset.
+public class FilterChain {
+    private static final int COEFF_BITS = 16;
+    private static final int STATE_BITS = 8;
+
+    private final int hp90;
+    private final int hp440;
+    private final int lp14k;
+
+    private long hp90Out = 0;
+    private long hp90In = 0;
+    private long hp440Out = 0;
+    private long hp440In = 0;
+    private long lpOut = 0;
+
+    public FilterChain(double sampleRate) {
+        hp90 = highPass(90, sampleRate);
+        hp440 = highPass(440, sampleRate);
+        lp14k = lowPass(Math.min(14000, sampleRate * 0.45), sampleRate);
+    }
+
+    // y[n] = a * (y[n-1] + x[n] - x[n-1]), a = RC / (RC + dt)
+    private static int highPass(double cutoff, double sampleRate) {
+        double rc = 1 / (2 * Math.PI * cutoff);
+        double dt = 1 / sampleRate;
+        return (int) Math.round(rc / (rc + dt) * (1 << COEFF_BITS));
+    }
+
+    // y[n] = y[n-1] + b * (x[n] - y[n-1]), b = dt / (RC + dt)
+    private static int lowPass(double cutoff, double sampleRate) {
+        double rc = 1 / (2 * Math.PI * cutoff);
+        double dt = 1 / sampleRate;
+        return (int) Math.round(dt / (rc + dt) * (1 << COEFF_BITS));
+    }
+
+    // Filters in[0..count) into out, clamped to 16 bits
+    public void process(int[] in, short[] out, int count) {
+        long a90 = hp90, a440 = hp440, b = lp14k;
+        long y90 = hp90Out, x90 = hp90In, y440 = hp440Out, x440 = hp440In, y = lpOut;
+        for (int i = 0; i < count; i++) {
+            long x = (long) in[i] << STATE_BITS;
+            y90 = (a90 * (y90 + x - x90)) >> COEFF_BITS;
+            x90 = x;
+            y440 = (a440 * (y440 + y90 - x440)) >> COEFF_BITS;
+            x440 = y90;
+            y += (b * (y440 - y)) >> COEFF_BITS;
+
+            long sample = y >> STATE_BITS;
+            out[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+        }
+        hp90Out = y90;
+        hp90In = x90;
+        hp440Out = y440;
+        hp440In = x440;
+        lpOut = y;
+    }
+}
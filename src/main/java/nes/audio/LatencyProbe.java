@@ -0,0 +1,99 @@
+package nes.audio;
+
+// Measures audio latency end to end. The APU stamps a write to the watched
+// register with System.nanoTime() and the index of the sample it affects;
+// LineAudioSink's thread reports each chunk it hands to the line, and once
+// the stamped sample has gone, the difference is one measurement. On top of
+// that, whatever the line still had queued at that moment is added as an
+// estimate of when the sample reaches the speaker.
+//
+// One measurement is in flight at a time; writes in between are ignored.
+// Emulation thread and audio thread each only write their own fields, so
+// neither side locks.
+public class LatencyProbe {
+    private final int address;
+
+    // Emulation thread: the write being tracked (pendingSample publishes it)
+    private long writeNanos;
+    private volatile long pendingSample = -1;
+
+    // Audio thread: results
+    private volatile long count = 0;
+    private volatile long lastNanos = 0;
+    private volatile long minNanos = Long.MAX_VALUE;
+    private volatile long maxNanos = 0;
+    private volatile long totalNanos = 0;
+    private volatile long lastOutputNanos = 0;
+
+    public LatencyProbe(int address) {
+        this.address = address;
+    }
+
+    public int getAddress() {
+        return address;
+    }
+
+    // === Emulation thread ===
+
+    public void onWrite(long sampleIndex) {
+        if (pendingSample >= 0)
+            return;
+        writeNanos = System.nanoTime();
+        pendingSample = sampleIndex;
+    }
+
+    // === Audio thread ===
+
+    // samplesPassed: samples the sink has consumed (played or dropped) so far;
+    // lineQueuedNanos: audio still waiting in the device buffer
+    public void onHandoff(long samplesPassed, long lineQueuedNanos) {
+        long pending = pendingSample;
+        if (pending < 0 || samplesPassed <= pending)
+            return;
+        long latency = System.nanoTime() - writeNanos;
+        lastNanos = latency;
+        minNanos = Math.min(minNanos, latency);
+        maxNanos = Math.max(maxNanos, latency);
+        totalNanos += latency;
+        lastOutputNanos = latency + lineQueuedNanos;
+        count++;
+        pendingSample = -1;
+    }
+
+    // === Results (any thread; a snapshot) ===
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    public long getMinNanos() {
+        return minNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public double getMeanNanos() {
+        long n = count;
+        return n == 0 ? 0 : totalNanos / (double) n;
+    }
+
+    // Last measurement plus the line's queue: write to (estimated) output
+    public long getLastOutputNanos() {
+        return lastOutputNanos;
+    }
+
+    @Override
+    public String toString() {
+        if (count == 0)
+            return String.format("$%04X -> line: no measurements yet", address);
+        return String.format("$%04X -> line: last %.1f ms, min %.1f, mean %.1f, max %.1f (%d); -> output ~%.1f ms",
+                address, lastNanos / 1e6, minNanos / 1e6, getMeanNanos() / 1e6, maxNanos / 1e6, count,
+                lastOutputNanos / 1e6);
+    }
+}
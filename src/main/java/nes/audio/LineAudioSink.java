@@ -0,0 +1,161 @@
+package nes.audio;
+
+import java.io.Closeable;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+// Plays audio on the sound card from its own thread. The emulation thread
+// write()s into an AudioRing and never waits; the audio thread drains the
+// ring into the SourceDataLine, whose blocking write paces it.
+//
+// Emulation is paced by the frame clock instead of the sound card, so the
+// two drift apart slowly. rateAdjustment() closes the loop: it asks for up
+// to 0.5% more samples while the ring is below half full and fewer while it
+// is above, which keeps the fill level centred without audible pitch change.
+//
+// Latency is mostly that half-full ring plus the line's own buffer; both are
+// set when opening. The ring has to absorb a whole frame's batch (the APU
+// delivers ~735 samples at once at 44.1 kHz), so it can't go below two
+// frames' worth. A LatencyProbe measures what a setting actually achieves.
+public class LineAudioSink implements AudioSink, Closeable {
+    public static final double MAX_RATE_ADJUSTMENT = 0.005;
+    public static final int DEFAULT_RING_SAMPLES = 4096; // ~93 ms at 44.1 kHz, centred at half
+    public static final int DEFAULT_LINE_SAMPLES = 2048;
+    public static final int DEFAULT_CHUNK_SAMPLES = 256;
+
+    private final SourceDataLine line;
+    private final int sampleRate;
+    private final AudioRing ring;
+    private final int chunkSamples;
+    private volatile LatencyProbe probe;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile long samplesDropped = 0; // Written while the ring was full
+    private volatile long underruns = 0; // Times the audio thread found the ring empty
+
+    private LineAudioSink(SourceDataLine line, int sampleRate, int ringSamples, int chunkSamples) {
+        this.line = line;
+        this.sampleRate = sampleRate;
+        this.ring = new AudioRing(ringSamples);
+        this.chunkSamples = chunkSamples;
+        thread = new Thread(this::drain, "AudioThread");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    // Opens the default device for 16-bit mono, or returns null if there is
+    // none (headless hosts): emulation carries on without sound
+    public static LineAudioSink open(int sampleRate) {
+        return open(sampleRate, DEFAULT_RING_SAMPLES, DEFAULT_LINE_SAMPLES, DEFAULT_CHUNK_SAMPLES);
+    }
+
+    // ringSamples is rounded up to a power of two; chunkSamples is how much
+    // the audio thread moves into the line at a time
+    public static LineAudioSink open(int sampleRate, int ringSamples, int lineSamples, int chunkSamples) {
+        int minRing = 2 * (int) Math.ceil(sampleRate / 60.0);
+        if (ringSamples < minRing)
+            throw new IllegalArgumentException("Ring must hold at least two frames (" + minRing + " samples)");
+        if (chunkSamples <= 0 || chunkSamples > lineSamples)
+            throw new IllegalArgumentException("Chunk must be 1.." + lineSamples + " samples: " + chunkSamples);
+        int ring = Integer.highestOneBit(ringSamples - 1) << 1;
+        try {
+            AudioFormat format = new AudioFormat(sampleRate, 16, 1, true, false);
+            SourceDataLine line = AudioSystem.getSourceDataLine(format);
+            line.open(format, lineSamples * 2);
+            line.start();
+            return new LineAudioSink(line, sampleRate, ring, chunkSamples);
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            System.err.println("Audio output unavailable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Emulation thread: queues samples without blocking. Whatever does not fit
+    // is dropped and counted.
+    @Override
+    public void write(short[] samples, int count) {
+        int written = ring.write(samples, 0, count);
+        if (written < count)
+            samplesDropped += count - written;
+    }
+
+    // Factor for the producer's sample rate, 1 +- MAX_RATE_ADJUSTMENT,
+    // steering the ring towards half full
+    @Override
+    public double rateAdjustment() {
+        int target = ring.getCapacity() / 2;
+        double error = (target - ring.size()) / (double) target;
+        return 1.0 + MAX_RATE_ADJUSTMENT * Math.max(-1.0, Math.min(1.0, error));
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    // Latency from the ring's target fill and the line's actual buffer size
+    public double getNominalLatencyMillis() {
+        return (ring.getCapacity() / 2 + line.getBufferSize() / 2) * 1000.0 / sampleRate;
+    }
+
+    // Reports on every chunk handed to the line; null stops measuring
+    public void setLatencyProbe(LatencyProbe probe) {
+        this.probe = probe;
+    }
+
+    public long getSamplesDropped() {
+        return samplesDropped;
+    }
+
+    public long getUnderruns() {
+        return underruns;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        line.drain();
+        line.close();
+    }
+
+    private void drain() {
+        short[] samples = new short[chunkSamples];
+        byte[] bytes = new byte[chunkSamples * 2];
+        long handed = 0;
+        boolean starved = true; // Nothing to play before the first write
+        while (running) {
+            int n = ring.read(samples, 0, samples.length);
+            if (n == 0) {
+                if (!starved)
+                    underruns++;
+                starved = true;
+                LockSupport.parkNanos(1_000_000);
+                continue;
+            }
+            starved = false;
+            for (int i = 0; i < n; i++) {
+                bytes[i * 2] = (byte) samples[i];
+                bytes[i * 2 + 1] = (byte) (samples[i] >> 8);
+            }
+            line.write(bytes, 0, n * 2); // Blocks at the device's pace
+            handed += n;
+
+            LatencyProbe p = probe;
+            if (p != null) {
+                long queued = (line.getBufferSize() - line.available()) / 2;
+                p.onHandoff(handed + samplesDropped, queued * 1_000_000_000L / sampleRate);
+            }
+        }
+    }
+}
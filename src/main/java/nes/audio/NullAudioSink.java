@@ -0,0 +1,22 @@
+package nes.audio;
+
+// Discards all audio output (batch runs, tests, video-only jobs).
+public class NullAudioSink implements AudioSink {
+    public static final NullAudioSink INSTANCE = new NullAudioSink(DEFAULT_SAMPLE_RATE);
+
+    private final int sampleRate;
+
+    // The rate still sets how much the APU synthesizes (benchmarks)
+    public NullAudioSink(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public void write(short[] samples, int count) {
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+}
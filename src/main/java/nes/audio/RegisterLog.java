@@ -0,0 +1,64 @@
+package nes.audio;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// Fixed-capacity log of APU register writes: CPU cycle, address and value in
+// parallel arrays allocated up front, so logging never allocates on the
+// emulation thread. Writes past capacity are counted and dropped.
+public class RegisterLog {
+    private final long[] cycles;
+    private final short[] addresses;
+    private final byte[] values;
+    private int size = 0;
+    private long dropped = 0;
+
+    public RegisterLog(int capacity) {
+        cycles = new long[capacity];
+        addresses = new short[capacity];
+        values = new byte[capacity];
+    }
+
+    public void add(long cycle, int address, int value) {
+        if (size == cycles.length) {
+            dropped++;
+            return;
+        }
+        cycles[size] = cycle;
+        addresses[size] = (short) address;
+        values[size] = (byte) value;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getCycle(int index) {
+        return cycles[index];
+    }
+
+    public int getAddress(int index) {
+        return addresses[index] & 0xFFFF;
+    }
+
+    public int getValue(int index) {
+        return values[index] & 0xFF;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public void clear() {
+        size = 0;
+        dropped = 0;
+    }
+
+    // One "cycle $addr $value" line per write
+    public void writeTo(Writer out) throws IOException {
+        for (int i = 0; i < size; i++) {
+            out.write(String.format("%d $%04X $%02X%n", cycles[i], getAddress(i), getValue(i)));
+        }
+    }
+}
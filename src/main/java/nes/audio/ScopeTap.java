@@ -0,0 +1,74 @@
+package nes.audio;
+
+// Feeds the debugger's oscilloscope and spectrum view. While attached
+// (APU.setScopeTap()), the APU reports each channel's raw output (0-15, DMC
+// 0-127) whenever it changes; the tap samples those levels every DECIMATION
+// CPU cycles and publishes one frame's worth at a time into an AudioRing of
+// interleaved CHANNELS-sample ticks, which the EDT polls.
+//
+// The emulation thread only fills a preallocated batch and copies it into
+// the ring: no locks, no allocation. A batch that doesn't fit whole (nobody
+// reading) is dropped whole, so the interleaving never slips.
+public class ScopeTap {
+    public static final int CHANNELS = StemCapture.CHANNELS;
+    public static final int DECIMATION = 81; // CPU cycles per tick
+    public static final double TICK_RATE = 1789773.0 / DECIMATION; // ~22.1 kHz
+
+    private static final int MAX_FRAME_TICKS = 29781 / DECIMATION + 2;
+
+    private final AudioRing ring;
+    private final short[] batch = new short[MAX_FRAME_TICKS * CHANNELS];
+    private final int[] levels = new int[CHANNELS];
+    private int batchLength = 0;
+    private int nextTick = 0; // Frame time of the next tick
+    private volatile long batchesDropped = 0;
+
+    // Holds at least ticks ticks (rounded up to fill a power-of-two ring)
+    public ScopeTap(int ticks) {
+        ring = new AudioRing(Integer.highestOneBit(Math.max(ticks, MAX_FRAME_TICKS) * CHANNELS - 1) << 1);
+    }
+
+    // === Emulation thread ===
+
+    // Levels from the given clock within the current frame
+    public void update(int time, int pulse1, int pulse2, int triangle, int noise, int dmc) {
+        fill(time);
+        levels[0] = pulse1;
+        levels[1] = pulse2;
+        levels[2] = triangle;
+        levels[3] = noise;
+        levels[4] = dmc;
+    }
+
+    public void endFrame(int clocks) {
+        fill(clocks);
+        if (ring.getCapacity() - ring.size() >= batchLength)
+            ring.write(batch, 0, batchLength);
+        else
+            batchesDropped++;
+        batchLength = 0;
+        nextTick -= clocks;
+    }
+
+    // Ticks before time see the levels from before it
+    private void fill(int time) {
+        while (nextTick < time && batchLength < batch.length) {
+            for (int c = 0; c < CHANNELS; c++) {
+                batch[batchLength + c] = (short) levels[c];
+            }
+            batchLength += CHANNELS;
+            nextTick += DECIMATION;
+        }
+    }
+
+    // === Reader (EDT) ===
+
+    // Copies up to maxTicks ticks into dst (interleaved) and returns how many
+    public int read(short[] dst, int maxTicks) {
+        return ring.read(dst, 0, maxTicks * CHANNELS) / CHANNELS;
+    }
+
+    public long getBatchesDropped() {
+        return batchesDropped;
+    }
+}
@@ -0,0 +1,90 @@
+package nes.audio;
+
+// Per-channel capture for music ripping and audio regression tests. Started
+// from APU.startStemCapture(): the APU then hands every channel's pre-mix
+// level (each channel alone through the nonlinear mixer, so in the same units
+// as the mix) to its own BlipBuffer, and the batches go to a StemSink once per
+// frame, unfiltered. Register writes are logged per channel; $4015 and $4017
+// touch every channel and go to a separate control log.
+//
+// Everything is allocated here, up front; the per-write and per-change paths
+// only touch preallocated arrays, so capture keeps up with faster than
+// realtime emulation.
+public class StemCapture {
+    public static final int PULSE1 = 0;
+    public static final int PULSE2 = 1;
+    public static final int TRIANGLE = 2;
+    public static final int NOISE = 3;
+    public static final int DMC = 4;
+    public static final int CHANNELS = 5;
+    public static final String[] NAMES = { "pulse1", "pulse2", "triangle", "noise", "dmc" };
+
+    private final StemSink sink;
+    private final BlipBuffer[] blips = new BlipBuffer[CHANNELS];
+    private final int[] levels = new int[CHANNELS];
+    private final int[] samples;
+    private final short[][] stems;
+    private final RegisterLog[] logs = new RegisterLog[CHANNELS];
+    private final RegisterLog controlLog;
+
+    public StemCapture(StemSink sink, double clockRate, int sampleRate, int maxSamples,
+            BlipBuffer.Quality quality, int logCapacity) {
+        this.sink = sink;
+        samples = new int[maxSamples];
+        stems = new short[CHANNELS][maxSamples];
+        for (int c = 0; c < CHANNELS; c++) {
+            blips[c] = new BlipBuffer(clockRate, sampleRate, maxSamples, quality);
+            logs[c] = new RegisterLog(logCapacity);
+        }
+        controlLog = new RegisterLog(logCapacity);
+    }
+
+    public RegisterLog getLog(int channel) {
+        return logs[channel];
+    }
+
+    public RegisterLog getControlLog() {
+        return controlLog;
+    }
+
+    // === APU side ===
+
+    // Channel levels at the given clock within the current frame
+    public void update(int time, int pulse1, int pulse2, int triangle, int noise, int dmc) {
+        updateChannel(PULSE1, time, pulse1);
+        updateChannel(PULSE2, time, pulse2);
+        updateChannel(TRIANGLE, time, triangle);
+        updateChannel(NOISE, time, noise);
+        updateChannel(DMC, time, dmc);
+    }
+
+    private void updateChannel(int channel, int time, int level) {
+        if (level != levels[channel]) {
+            blips[channel].addDelta(time, level - levels[channel]);
+            levels[channel] = level;
+        }
+    }
+
+    public void logWrite(long cycle, int address, int value) {
+        if (address < 0x4014)
+            logs[(address - 0x4000) >> 2].add(cycle, address, value);
+        else
+            controlLog.add(cycle, address, value);
+    }
+
+    // Same framing and rate as the APU's main buffer, so stems line up with the mix
+    public void endFrame(int clocks, double sampleRate) {
+        int count = 0;
+        for (int c = 0; c < CHANNELS; c++) {
+            BlipBuffer blip = blips[c];
+            blip.endFrame(clocks);
+            count = blip.readSamples(samples);
+            short[] out = stems[c];
+            for (int i = 0; i < count; i++) {
+                out[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, samples[i]));
+            }
+            blip.setSampleRate(sampleRate);
+        }
+        sink.write(stems, count);
+    }
+}
@@ -0,0 +1,21 @@
+package nes.audio;
+
+// Destination for per-channel stems (StemCapture). Gets one batch per frame:
+// stems[channel][0 .. count - 1] for each of StemCapture.CHANNELS channels,
+// at the APU's sample rate. The arrays are reused, so copy what you keep.
+public interface StemSink {
+
+    void write(short[][] stems, int count);
+
+    // Sends each channel to its own mono sink (null skips the channel)
+    static StemSink split(AudioSink... sinks) {
+        if (sinks.length != StemCapture.CHANNELS)
+            throw new IllegalArgumentException("Need one sink per channel: " + sinks.length);
+        return (stems, count) -> {
+            for (int c = 0; c < sinks.length; c++) {
+                if (sinks[c] != null)
+                    sinks[c].write(stems[c], count);
+            }
+        };
+    }
+}
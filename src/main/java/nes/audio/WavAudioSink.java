@@ -0,0 +1,29 @@
+package nes.audio;
+
+import java.io.IOException;
+
+// Streams audio to a 16-bit mono WAV file
+public class WavAudioSink extends WavWriter implements AudioSink {
+    private final byte[] bytes = new byte[4096];
+
+    public WavAudioSink(String path, int sampleRate) throws IOException {
+        super(path, sampleRate, 1);
+    }
+
+    @Override
+    public void write(short[] samples, int count) {
+        for (int start = 0; start < count && isWritable(); start += bytes.length / 2) {
+            int n = Math.min(count - start, bytes.length / 2);
+            for (int i = 0; i < n; i++) {
+                short sample = samples[start + i];
+                bytes[i * 2] = (byte) sample;
+                bytes[i * 2 + 1] = (byte) (sample >> 8);
+            }
+            writeBytes(bytes, n * 2);
+        }
+    }
+
+    public long getSamplesWritten() {
+        return getDataLength() / 2;
+    }
+}
@@ -0,0 +1,30 @@
+package nes.audio;
+
+import java.io.IOException;
+
+// Streams the stems to one 16-bit WAV file with a channel per APU channel,
+// interleaved in StemCapture order
+public class WavStemSink extends WavWriter implements StemSink {
+    private static final int FRAME_BYTES = StemCapture.CHANNELS * 2;
+
+    private final byte[] bytes = new byte[FRAME_BYTES * 1024];
+
+    public WavStemSink(String path, int sampleRate) throws IOException {
+        super(path, sampleRate, StemCapture.CHANNELS);
+    }
+
+    @Override
+    public void write(short[][] stems, int count) {
+        for (int start = 0; start < count && isWritable(); start += bytes.length / FRAME_BYTES) {
+            int n = Math.min(count - start, bytes.length / FRAME_BYTES);
+            for (int i = 0; i < n; i++) {
+                for (int c = 0; c < StemCapture.CHANNELS; c++) {
+                    short sample = stems[c][start + i];
+                    bytes[i * FRAME_BYTES + c * 2] = (byte) sample;
+                    bytes[i * FRAME_BYTES + c * 2 + 1] = (byte) (sample >> 8);
+                }
+            }
+            writeBytes(bytes, n * FRAME_BYTES);
+        }
+    }
+}
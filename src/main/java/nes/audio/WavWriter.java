@@ -0,0 +1,102 @@
+package nes.audio;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+// Streams 16-bit PCM to a WAV file. The header's lengths are only known at
+// the end, so close() writes them over a placeholder. Subclasses pack their
+// samples into little-endian bytes and hand them to writeBytes().
+public abstract class WavWriter implements Closeable {
+    public static final int HEADER_SIZE = 44;
+
+    private final String path;
+    private final int sampleRate;
+    private final int channels;
+    private final OutputStream out;
+    private long dataLength = 0;
+    private IOException error;
+
+    protected WavWriter(String path, int sampleRate, int channels) throws IOException {
+        this.path = path;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.out = new BufferedOutputStream(new FileOutputStream(path), 1 << 16);
+        out.write(new byte[HEADER_SIZE]);
+    }
+
+    // False after the first failed write; the error is reported on close()
+    protected boolean isWritable() {
+        return error == null;
+    }
+
+    protected void writeBytes(byte[] data, int length) {
+        if (error != null)
+            return;
+        try {
+            out.write(data, 0, length);
+            dataLength += length;
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    protected long getDataLength() {
+        return dataLength;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+        if (error != null)
+            throw error;
+        writeHeader(path, sampleRate, channels, 16, dataLength);
+    }
+
+    // Canonical 44-byte PCM header, written over the placeholder at the start of the file
+    public static void writeHeader(String path, int sampleRate, int channels, int bits, long dataLength)
+            throws IOException {
+        int blockAlign = channels * bits / 8;
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            byte[] header = new byte[HEADER_SIZE];
+            putAscii(header, 0, "RIFF");
+            putInt(header, 4, (int) (36 + dataLength));
+            putAscii(header, 8, "WAVE");
+            putAscii(header, 12, "fmt ");
+            putInt(header, 16, 16);
+            putShort(header, 20, 1); // PCM
+            putShort(header, 22, channels);
+            putInt(header, 24, sampleRate);
+            putInt(header, 28, sampleRate * blockAlign);
+            putShort(header, 32, blockAlign);
+            putShort(header, 34, bits);
+            putAscii(header, 36, "data");
+            putInt(header, 40, (int) dataLength);
+            file.write(header);
+        }
+    }
+
+    private static void putAscii(byte[] dst, int offset, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            dst[offset + i] = (byte) text.charAt(i);
+        }
+    }
+
+    // WAV fields are little-endian
+    private static void putInt(byte[] dst, int offset, int value) {
+        putShort(dst, offset, value);
+        putShort(dst, offset + 2, value >>> 16);
+    }
+
+    private static void putShort(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) value;
+        dst[offset + 1] = (byte) (value >>> 8);
+    }
+}
@@ -0,0 +1,237 @@
+package nes.gui;
+
+import nes.APU;
+import nes.audio.ScopeTap;
+import nes.audio.StemCapture;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.HierarchyEvent;
+
+// Per-channel oscilloscope and spectrum. The APU feeds a ScopeTap only while
+// this panel is on screen (attached and detached as it is shown and hidden),
+// so with the tab or the debugger closed the emulation thread does nothing
+// extra. refresh() drains the tap on the EDT into a history of the last
+// HISTORY ticks per channel; each trace starts on a rising edge so steady
+// tones stand still. The spectrum overlays every channel's Hann-windowed FFT.
+public class AudioScopePanel extends JPanel {
+    private static final int CHANNELS = ScopeTap.CHANNELS;
+    private static final int HISTORY = 4096; // Ticks kept per channel
+    private static final int FFT_SIZE = 1024;
+    private static final int SCOPE_TICKS = 512; // ~23 ms on screen
+    private static final double MIN_DB = -60;
+
+    private static final Color[] COLOURS = {
+            new Color(0xFF6060), new Color(0xFFB040), new Color(0x60C0FF), new Color(0xC0C0C0), new Color(0x80E080) };
+    private static final int[] MAX_LEVEL = { 15, 15, 15, 15, 127 };
+
+    private final APU apu;
+    private final ScopeTap tap = new ScopeTap(HISTORY);
+    private final short[] incoming = new short[HISTORY * CHANNELS];
+    private final short[][] history = new short[CHANNELS][HISTORY];
+    private int written = 0; // Ticks ever added to history (wraps the index)
+
+    private final double[] re = new double[FFT_SIZE];
+    private final double[] im = new double[FFT_SIZE];
+    private final double[] window = new double[FFT_SIZE];
+    private final double[][] spectrum = new double[CHANNELS][FFT_SIZE / 2];
+    private final JLabel status = new JLabel(" ");
+
+    public AudioScopePanel(APU apu) {
+        super(new BorderLayout());
+        this.apu = apu;
+        for (int i = 0; i < FFT_SIZE; i++) {
+            window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / (FFT_SIZE - 1));
+        }
+
+        addHierarchyListener(e -> {
+            if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0)
+                apu.setScopeTap(isShowing() ? tap : null);
+        });
+
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        top.add(status);
+        add(top, BorderLayout.NORTH);
+
+        JPanel scopes = new JPanel() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                paintScopes((Graphics2D) g, getWidth(), getHeight());
+            }
+        };
+        scopes.setBackground(Color.BLACK);
+        scopes.setPreferredSize(new Dimension(800, 400));
+
+        JPanel spectra = new JPanel() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                paintSpectrum((Graphics2D) g, getWidth(), getHeight());
+            }
+        };
+        spectra.setBackground(Color.BLACK);
+        spectra.setPreferredSize(new Dimension(800, 200));
+
+        JPanel views = new JPanel(new GridLayout(2, 1, 0, 4));
+        views.add(scopes);
+        views.add(spectra);
+        add(views, BorderLayout.CENTER);
+    }
+
+    // Call from the debugger's refresh timer while the panel is showing
+    public void refresh() {
+        int ticks = tap.read(incoming, HISTORY);
+        if (ticks == 0)
+            return;
+        for (int t = 0; t < ticks; t++) {
+            int index = (written + t) & (HISTORY - 1);
+            for (int c = 0; c < CHANNELS; c++) {
+                history[c][index] = incoming[t * CHANNELS + c];
+            }
+        }
+        written += ticks;
+
+        for (int c = 0; c < CHANNELS; c++) {
+            computeSpectrum(c);
+        }
+        status.setText(String.format("%.1f kHz per channel, %d frames dropped", ScopeTap.TICK_RATE / 1000,
+                tap.getBatchesDropped()));
+        repaint();
+    }
+
+    private int sampleAt(int channel, int tick) {
+        return history[channel][tick & (HISTORY - 1)];
+    }
+
+    // === Oscilloscope ===
+
+    private void paintScopes(Graphics2D g, int width, int height) {
+        int rowHeight = height / CHANNELS;
+        int available = Math.min(written, HISTORY);
+        for (int c = 0; c < CHANNELS; c++) {
+            int top = c * rowHeight;
+            g.setColor(Color.DARK_GRAY);
+            g.drawLine(0, top + rowHeight - 1, width, top + rowHeight - 1);
+            g.setColor(COLOURS[c]);
+            g.drawString(StemCapture.NAMES[c], 4, top + 12);
+            if (available < SCOPE_TICKS * 2)
+                continue;
+
+            int start = findTrigger(c, written - SCOPE_TICKS * 2, written - SCOPE_TICKS);
+            int previousX = 0, previousY = 0;
+            for (int i = 0; i < SCOPE_TICKS; i++) {
+                int x = i * width / SCOPE_TICKS;
+                int y = top + rowHeight - 2 - sampleAt(c, start + i) * (rowHeight - 16) / MAX_LEVEL[c];
+                if (i > 0)
+                    g.drawLine(previousX, previousY, x, y);
+                previousX = x;
+                previousY = y;
+            }
+        }
+    }
+
+    // First rise through the channel's mid level in [from, to), else to
+    private int findTrigger(int channel, int from, int to) {
+        int mid = (MAX_LEVEL[channel] + 1) / 2;
+        for (int t = from + 1; t < to; t++) {
+            if (sampleAt(channel, t - 1) < mid && sampleAt(channel, t) >= mid)
+                return t;
+        }
+        return to;
+    }
+
+    // === Spectrum ===
+
+    private void computeSpectrum(int channel) {
+        if (written < FFT_SIZE)
+            return;
+        int start = written - FFT_SIZE;
+        double mean = 0;
+        for (int i = 0; i < FFT_SIZE; i++) {
+            mean += sampleAt(channel, start + i);
+        }
+        mean /= FFT_SIZE;
+        for (int i = 0; i < FFT_SIZE; i++) {
+            re[i] = (sampleAt(channel, start + i) - mean) / MAX_LEVEL[channel] * window[i];
+            im[i] = 0;
+        }
+        fft(re, im);
+        double[] out = spectrum[channel];
+        for (int k = 0; k < out.length; k++) {
+            double magnitude = Math.hypot(re[k], im[k]) / (FFT_SIZE / 4.0); // Full-scale square ~ 0 dB
+            out[k] = Math.max(MIN_DB, 20 * Math.log10(magnitude + 1e-9));
+        }
+    }
+
+    private void paintSpectrum(Graphics2D g, int width, int height) {
+        g.setColor(Color.DARK_GRAY);
+        double nyquist = ScopeTap.TICK_RATE / 2;
+        for (int hz = 100; hz < nyquist; hz *= 10) {
+            int x = frequencyToX(hz, width);
+            g.drawLine(x, 0, x, height);
+            g.drawString(hz >= 1000 ? hz / 1000 + "k" : String.valueOf(hz), x + 2, height - 4);
+        }
+        if (written < FFT_SIZE)
+            return;
+
+        for (int c = 0; c < CHANNELS; c++) {
+            g.setColor(COLOURS[c]);
+            double[] bins = spectrum[c];
+            int previousX = -1, previousY = 0;
+            for (int k = 1; k < bins.length; k++) {
+                int x = frequencyToX(k * ScopeTap.TICK_RATE / FFT_SIZE, width);
+                int y = (int) (bins[k] / MIN_DB * (height - 16));
+                if (previousX >= 0)
+                    g.drawLine(previousX, previousY, x, y);
+                previousX = x;
+                previousY = y;
+            }
+        }
+    }
+
+    // Log frequency axis from 20 Hz to the tick rate's Nyquist frequency
+    private static int frequencyToX(double hz, int width) {
+        double low = Math.log(20), high = Math.log(ScopeTap.TICK_RATE / 2);
+        return (int) ((Math.log(Math.max(hz, 20)) - low) / (high - low) * width);
+    }
+
+    // In-place iterative radix-2 FFT; length must be a power of two
+    public static void fft(double[] re, double[] im) {
+        int n = re.length;
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        for (int length = 2; length <= n; length <<= 1) {
+            double angle = -2 * Math.PI / length;
+            double stepRe = Math.cos(angle), stepIm = Math.sin(angle);
+            for (int i = 0; i < n; i += length) {
+                double wRe = 1, wIm = 0;
+                for (int k = 0; k < length / 2; k++) {
+                    int a = i + k, b = i + k + length / 2;
+                    double tRe = re[b] * wRe - im[b] * wIm;
+                    double tIm = re[b] * wIm + im[b] * wRe;
+                    re[b] = re[a] - tRe;
+                    im[b] = im[a] - tIm;
+                    re[a] += tRe;
+                    im[a] += tIm;
+                    double nextRe = wRe * stepRe - wIm * stepIm;
+                    wIm = wRe * stepIm + wIm * stepRe;
+                    wRe = nextRe;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package nes.gui;
+
+import nes.Controller;
+import nes.video.FrameSink;
+import nes.video.ScaledFrameSink;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+// Active-rendering display. Display queues repaint() on the EDT, where Swing
+// may merge or delay requests behind the debugger's timers. This one presents
+// from the thread that completes the frame, exactly once per frame, through a
+// page-flipped BufferStrategy. The frame is scaled by pixel replication into
+// an image already at window size, so the blit itself is 1:1. Frames from a
+// PostProcessor arrive at the filter chain's size and are stretched to the
+// window only if that size differs.
+public class CanvasDisplay extends Canvas implements FrameSink, ScaledFrameSink {
+    private static final int SCALE = 3;
+    private static final int SCALED_WIDTH = FrameSink.WIDTH * SCALE;
+    private static final int SCALED_HEIGHT = FrameSink.HEIGHT * SCALE;
+
+    private final BufferedImage image;
+    private final int[] pixels;
+    private final KeyboardInput input;
+    private final BufferStrategy strategy;
+    private final JFrame window;
+    private BufferedImage filteredImage; // Sized to the filter chain output on first use
+    private int[] filteredPixels;
+
+    // Present latency: frameComplete() entry to show() returning
+    private volatile long lastPresentNanos = 0;
+    private volatile long maxPresentNanos = 0;
+    private long totalPresentNanos = 0;
+    private volatile long framesPresented = 0;
+
+    public CanvasDisplay() {
+        this(new KeyboardInput());
+    }
+
+    public CanvasDisplay(KeyboardInput input) {
+        this.input = input;
+        setIgnoreRepaint(true); // All drawing happens in frameComplete()
+        setPreferredSize(new Dimension(SCALED_WIDTH, SCALED_HEIGHT));
+        setBackground(Color.BLACK);
+
+        // Create a Window
+        window = new JFrame("Java NES Emulator");
+        window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        window.setResizable(false);
+        window.setIgnoreRepaint(true);
+        window.setLayout(new BorderLayout());
+        window.add(this, BorderLayout.CENTER);
+        window.pack();
+        window.setLocationRelativeTo(null);
+        window.setVisible(true);
+
+        // Page flipping needs a displayable component
+        createBufferStrategy(2);
+        strategy = getBufferStrategy();
+
+        // Same format as the PPU frame, already at window size
+        image = new BufferedImage(SCALED_WIDTH, SCALED_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        // Input Handling
+        setFocusable(true);
+        requestFocus();
+        addKeyListener(input);
+    }
+
+    public void setController(Controller controller) {
+        input.setController(controller);
+    }
+
+    public long getLastPresentNanos() {
+        return lastPresentNanos;
+    }
+
+    public long getMaxPresentNanos() {
+        return maxPresentNanos;
+    }
+
+    public long getAveragePresentNanos() {
+        long frames = framesPresented;
+        return frames == 0 ? 0 : totalPresentNanos / frames;
+    }
+
+    public long getFramesPresented() {
+        return framesPresented;
+    }
+
+    @Override
+    public void frameComplete(int[] frame) {
+        long start = System.nanoTime();
+        scale(frame);
+        present(image);
+        recordPresent(start);
+    }
+
+    @Override
+    public void scaledFrameComplete(int[] frame, int width, int height) {
+        long start = System.nanoTime();
+        if (width == SCALED_WIDTH && height == SCALED_HEIGHT) {
+            System.arraycopy(frame, 0, pixels, 0, pixels.length);
+            present(image);
+        } else {
+            if (filteredImage == null || filteredImage.getWidth() != width || filteredImage.getHeight() != height) {
+                filteredImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                filteredPixels = ((DataBufferInt) filteredImage.getRaster().getDataBuffer()).getData();
+            }
+            System.arraycopy(frame, 0, filteredPixels, 0, filteredPixels.length);
+            present(filteredImage);
+        }
+        recordPresent(start);
+    }
+
+    private void recordPresent(long start) {
+        long elapsed = System.nanoTime() - start;
+        lastPresentNanos = elapsed;
+        if (elapsed > maxPresentNanos)
+            maxPresentNanos = elapsed;
+        totalPresentNanos += elapsed;
+        framesPresented++;
+
+        // Report once a second in the title bar
+        if (framesPresented % 60 == 0) {
+            String title = String.format("Java NES Emulator - present %.2f ms avg, %.2f ms max",
+                    getAveragePresentNanos() / 1e6, maxPresentNanos / 1e6);
+            SwingUtilities.invokeLater(() -> window.setTitle(title));
+        }
+    }
+
+    // Nearest-neighbour integer scale: replicate each pixel across a row, then
+    // copy the row down SCALE - 1 times
+    private void scale(int[] frame) {
+        for (int y = 0; y < FrameSink.HEIGHT; y++) {
+            int src = y * FrameSink.WIDTH;
+            int dst = y * SCALE * SCALED_WIDTH;
+            int d = dst;
+            for (int x = 0; x < FrameSink.WIDTH; x++) {
+                int rgb = frame[src + x];
+                for (int i = 0; i < SCALE; i++) {
+                    pixels[d++] = rgb;
+                }
+            }
+            for (int i = 1; i < SCALE; i++) {
+                System.arraycopy(pixels, dst, pixels, dst + i * SCALED_WIDTH, SCALED_WIDTH);
+            }
+        }
+    }
+
+    private void present(BufferedImage source) {
+        // Contents can be lost (display mode change, minimise); redraw until they stick
+        do {
+            do {
+                Graphics g = strategy.getDrawGraphics();
+                try {
+                    g.drawImage(source, 0, 0, SCALED_WIDTH, SCALED_HEIGHT, null);
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync(); // Flush the pipeline on X11
+    }
+}
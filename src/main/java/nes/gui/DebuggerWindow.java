@@ -10,8 +10,6 @@ import javax.swing.*;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableCellRenderer;
 import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferInt;
 
 public class DebuggerWindow extends JFrame {
     private final NES nes;
@@ -24,7 +22,11 @@ public class DebuggerWindow extends JFrame {
     private MemoryTableModel memoryModel;
     private JTextArea disassemblyArea;
     private JPanel chrPanel;
-    private BufferedImage[] chrImages;
+    private final PatternTableView patternView = new PatternTableView();
+    private JPanel nametablePanel;
+    private final NametableView nametableView = new NametableView();
+    private EventViewerPanel eventPanel;
+    private AudioScopePanel audioPanel;
     private int selectedPalette = 0;
 
     public DebuggerWindow(NES nes, EmulatorRunner runner) {
@@ -42,6 +44,11 @@ public class DebuggerWindow extends JFrame {
         tabs.addTab("Disassembly", createDisassemblyPanel());
         tabs.addTab("Memory", createMemoryPanel());
         tabs.addTab("CHR-ROM", createChrPanel());
+        tabs.addTab("Nametables", createNametablePanel());
+        eventPanel = new EventViewerPanel(nes.getPpu());
+        tabs.addTab("Events", eventPanel);
+        audioPanel = new AudioScopePanel(nes.getApu());
+        tabs.addTab("Audio", audioPanel);
 
         add(tabs, BorderLayout.CENTER);
 
@@ -64,9 +71,15 @@ public class DebuggerWindow extends JFrame {
         JButton stepBtn = new JButton("Step");
         stepBtn.addActionListener(e -> runner.step());
 
+        JCheckBox fastRenderer = new JCheckBox("Scanline Renderer");
+        fastRenderer.setSelected(nes.getPpu().getRenderer() == PPU.RENDERER_SCANLINE);
+        fastRenderer.addActionListener(e -> nes.getPpu().setRenderer(
+                fastRenderer.isSelected() ? PPU.RENDERER_SCANLINE : PPU.RENDERER_ACCURATE));
+
         buttons.add(playBtn);
         buttons.add(pauseBtn);
         buttons.add(stepBtn);
+        buttons.add(fastRenderer);
 
         panel.add(buttons, BorderLayout.NORTH);
 
@@ -111,10 +124,9 @@ public class DebuggerWindow extends JFrame {
             @Override
             protected void paintComponent(Graphics g) {
                 super.paintComponent(g);
-                if (chrImages != null) {
-                    g.drawImage(chrImages[0], 10, 10, 256, 256, null); // Scale 2x
-                    g.drawImage(chrImages[1], 280, 10, 256, 256, null); // Scale 2x
-                }
+                // Scale 2x, left and right tables 14px apart
+                g.drawImage(patternView.getImage(), 10, 10, 138, 266, 0, 0, 128, 128, null);
+                g.drawImage(patternView.getImage(), 280, 10, 536, 266, 128, 0, 256, 128, null);
             }
         };
         chrPanel.setPreferredSize(new Dimension(550, 300));
@@ -131,6 +143,18 @@ public class DebuggerWindow extends JFrame {
         return container;
     }
 
+    private JPanel createNametablePanel() {
+        nametablePanel = new JPanel() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                g.drawImage(nametableView.getImage(), 10, 10, null);
+            }
+        };
+        nametablePanel.setPreferredSize(new Dimension(NametableView.WIDTH + 20, NametableView.HEIGHT + 20));
+        return nametablePanel;
+    }
+
     private void refreshUI() {
         if (!isVisible())
             return;
@@ -146,14 +170,17 @@ public class DebuggerWindow extends JFrame {
                             "SP:  $%02X\n" +
                             "NV-BDIZC\n" +
                             "%8s\n" +
-                            "Cycles: %d",
+                            "Cycles: %d\n\n" +
+                            "Frames: %d drawn, %d skipped",
                     cpu.getPC(),
                     cpu.getReg(2), // A
                     cpu.getReg(0), // X
                     cpu.getReg(1), // Y
                     cpu.getSP(),
                     Integer.toBinaryString(cpu.getFlags() | 0x100).substring(1),
-                    cpu.getTotalCycles());
+                    cpu.getTotalCycles(),
+                    nes.getPpu().getFramesRendered(),
+                    nes.getPpu().getFramesSkipped());
             cpuStateArea.setText(state);
 
             // Disassembly
@@ -172,19 +199,18 @@ public class DebuggerWindow extends JFrame {
         memoryModel.updateSnapshot();
         memoryTable.repaint();
 
-        // PPU CHR
+        // PPU views: cached, only changed tiles are redrawn, and only while on screen
         PPU ppu = nes.getPpu();
         if (ppu != null) {
-            chrImages = new BufferedImage[2];
-            for (int i = 0; i < 2; i++) {
-                int[] pixels = ppu.getPatternTable(i, selectedPalette);
-                BufferedImage img = new BufferedImage(128, 128, BufferedImage.TYPE_INT_RGB);
-                int[] buffer = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
-                System.arraycopy(pixels, 0, buffer, 0, pixels.length);
-                chrImages[i] = img;
-            }
-            chrPanel.repaint();
+            if (chrPanel.isShowing() && patternView.refresh(ppu, selectedPalette))
+                chrPanel.repaint();
+            if (nametablePanel.isShowing() && nametableView.refresh(ppu))
+                nametablePanel.repaint();
+            if (eventPanel.isShowing())
+                eventPanel.refresh();
         }
+        if (audioPanel.isShowing())
+            audioPanel.refresh();
     }
 
     // Resume helper
@@ -1,24 +1,25 @@
 package nes.gui;
 
 import nes.Controller;
+import nes.video.FrameSink;
 
 import javax.swing.*;
 import java.awt.*;
-import java.awt.event.KeyAdapter;
-import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 
-public class Display extends JPanel {
-    public static final int WIDTH = 256;
-    public static final int HEIGHT = 240;
+public class Display extends JPanel implements FrameSink {
     private static final int SCALE = 3;
 
     private final BufferedImage image;
     private final int[] pixels;
-    private Controller controller;
+    private final KeyboardInput input;
 
     public Display() {
+        this(new KeyboardInput());
+    }
+
+    public Display(KeyboardInput input) {
         // Create a Window
         JFrame frame = new JFrame("Java NES Emulator");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -30,65 +31,23 @@ public class Display extends JPanel {
         frame.setVisible(true);
 
         // Initialize Image Buffer
-        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        image = new BufferedImage(FrameSink.WIDTH, FrameSink.HEIGHT, BufferedImage.TYPE_INT_RGB);
         pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
 
         // Input Handling
+        this.input = input;
         this.setFocusable(true);
         this.requestFocusInWindow();
-        this.addKeyListener(new KeyAdapter() {
-            @Override
-            public void keyPressed(KeyEvent e) {
-                if (controller == null)
-                    return;
-                updateController(e.getKeyCode(), true);
-            }
-
-            @Override
-            public void keyReleased(KeyEvent e) {
-                if (controller == null)
-                    return;
-                updateController(e.getKeyCode(), false);
-            }
-        });
+        this.addKeyListener(input);
     }
 
     public void setController(Controller controller) {
-        this.controller = controller;
-    }
-
-    private void updateController(int keyCode, boolean pressed) {
-        switch (keyCode) {
-            case KeyEvent.VK_Z:
-                controller.setButtonPressed(0, pressed);
-                break; // A
-            case KeyEvent.VK_X:
-                controller.setButtonPressed(1, pressed);
-                break; // B
-            case KeyEvent.VK_SHIFT:
-                controller.setButtonPressed(2, pressed);
-                break; // Select
-            case KeyEvent.VK_ENTER:
-                controller.setButtonPressed(3, pressed);
-                break; // Start
-            case KeyEvent.VK_UP:
-                controller.setButtonPressed(4, pressed);
-                break; // Up
-            case KeyEvent.VK_DOWN:
-                controller.setButtonPressed(5, pressed);
-                break; // Down
-            case KeyEvent.VK_LEFT:
-                controller.setButtonPressed(6, pressed);
-                break; // Left
-            case KeyEvent.VK_RIGHT:
-                controller.setButtonPressed(7, pressed);
-                break; // Right
-        }
+        input.setController(controller);
     }
 
     @Override
     public Dimension getPreferredSize() {
-        return new Dimension(WIDTH * SCALE, HEIGHT * SCALE);
+        return new Dimension(FrameSink.WIDTH * SCALE, FrameSink.HEIGHT * SCALE);
     }
 
     @Override
@@ -97,13 +56,9 @@ public class Display extends JPanel {
         g.drawImage(image, 0, 0, getWidth(), getHeight(), null);
     }
 
-    public void setPixel(int x, int y, int color) {
-        if (x >= 0 && x < WIDTH && y >= 0 && y < HEIGHT) {
-            pixels[y * WIDTH + x] = color;
-        }
-    }
-
-    public void refresh() {
+    @Override
+    public void frameComplete(int[] frame) {
+        System.arraycopy(frame, 0, pixels, 0, pixels.length);
         repaint();
     }
 }
@@ -0,0 +1,145 @@
+package nes.gui;
+
+import nes.PPU;
+import nes.PPUEventLog;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+// Plots the last complete frame's PPU register, OAM DMA and mapper writes on
+// a 341 x 262 dot grid (scanline down, dot across), so mid-frame scroll
+// splits and bank switches show where they land. Recording runs only while
+// the checkbox is ticked. Hover over a mark to see the write.
+public class EventViewerPanel extends JPanel {
+    private static final int DOTS = 341;
+    private static final int LINES = 262;
+    private static final int SCALE = 2;
+
+    // Colour per register $2000-$2007, then $4014, then mapper
+    private static final int[] COLOURS = {
+            0xFF4040, 0xFF9020, 0x808080, 0xE0E040, 0xA0E040, 0x40E040, 0x40E0E0, 0x4080FF,
+            0xE040E0, 0xFFFFFF };
+    private static final String[] LABELS = {
+            "$2000", "$2001", "$2002", "$2003", "$2004", "$2005", "$2006", "$2007", "$4014", "Mapper" };
+
+    private final PPU ppu;
+    private final PPUEventLog log = new PPUEventLog();
+    private final JCheckBox recordBox = new JCheckBox("Record");
+    private final JLabel summary = new JLabel(" ");
+    private final BufferedImage image = new BufferedImage(DOTS, LINES, BufferedImage.TYPE_INT_RGB);
+    private final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    private final int[] background = new int[DOTS * LINES];
+    private final int[] positions = new int[log.getCapacity()];
+    private final int[] writes = new int[log.getCapacity()];
+    private int eventCount = 0;
+    private long shownFrame = -1;
+
+    public EventViewerPanel(PPU ppu) {
+        super(new BorderLayout());
+        this.ppu = ppu;
+        buildBackground();
+
+        recordBox.addActionListener(e -> {
+            ppu.setEventLog(recordBox.isSelected() ? log : null);
+            shownFrame = -1;
+        });
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        top.add(recordBox);
+        top.add(summary);
+        add(top, BorderLayout.NORTH);
+
+        JPanel grid = new JPanel() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                g.drawImage(image, 10, 10, DOTS * SCALE, LINES * SCALE, null);
+                paintLegend(g, 10, LINES * SCALE + 30);
+            }
+
+            @Override
+            public String getToolTipText(MouseEvent e) {
+                return describeEventAt((e.getX() - 10) / SCALE, (e.getY() - 10) / SCALE);
+            }
+        };
+        grid.setPreferredSize(new Dimension(DOTS * SCALE + 20, LINES * SCALE + 50));
+        ToolTipManager.sharedInstance().registerComponent(grid);
+        add(grid, BorderLayout.CENTER);
+    }
+
+    // Call from the debugger's refresh timer; redraws once per new frame
+    public void refresh() {
+        if (!recordBox.isSelected())
+            return;
+        long frame = ppu.getFrameNumber() - 1; // Last complete frame
+        if (frame == shownFrame)
+            return;
+        shownFrame = frame;
+
+        eventCount = log.copyFrame(frame, positions, writes);
+        System.arraycopy(background, 0, pixels, 0, pixels.length);
+        for (int i = 0; i < eventCount; i++) {
+            int line = PPUEventLog.scanlineOf(positions[i]);
+            int dot = PPUEventLog.dotOf(positions[i]);
+            if (line < LINES && dot < DOTS)
+                pixels[line * DOTS + dot] = COLOURS[kindOf(PPUEventLog.addressOf(writes[i]))];
+        }
+        summary.setText("Frame " + frame + ": " + eventCount + " writes");
+        repaint();
+    }
+
+    private static int kindOf(int address) {
+        if (address >= 0x2000 && address < 0x4000)
+            return address & 0x07;
+        return address == 0x4014 ? 8 : 9;
+    }
+
+    // Visible area, HBlank and VBlank in different greys
+    private void buildBackground() {
+        for (int line = 0; line < LINES; line++) {
+            for (int dot = 0; dot < DOTS; dot++) {
+                int rgb;
+                if (line >= 241 && line <= 260)
+                    rgb = 0x101018; // VBlank
+                else if (line < 240 && dot >= 1 && dot <= 256)
+                    rgb = 0x303030; // Visible pixels
+                else
+                    rgb = 0x202020; // HBlank, post-render, pre-render
+                background[line * DOTS + dot] = rgb;
+            }
+        }
+        System.arraycopy(background, 0, pixels, 0, pixels.length);
+    }
+
+    private void paintLegend(Graphics g, int x, int y) {
+        FontMetrics metrics = g.getFontMetrics();
+        for (int i = 0; i < LABELS.length; i++) {
+            g.setColor(new Color(COLOURS[i]));
+            g.fillRect(x, y - 8, 8, 8);
+            g.setColor(getForeground());
+            g.drawString(LABELS[i], x + 12, y);
+            x += 20 + metrics.stringWidth(LABELS[i]);
+        }
+    }
+
+    // Nearest write within a few dots of the pointer
+    private String describeEventAt(int dot, int line) {
+        int best = -1;
+        int bestDistance = 5;
+        for (int i = 0; i < eventCount; i++) {
+            int distance = Math.abs(PPUEventLog.dotOf(positions[i]) - dot)
+                    + Math.abs(PPUEventLog.scanlineOf(positions[i]) - line);
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        if (best == -1)
+            return null;
+        return String.format("$%04X = $%02X at line %d, dot %d", PPUEventLog.addressOf(writes[best]),
+                PPUEventLog.valueOf(writes[best]), PPUEventLog.scanlineOf(positions[best]),
+                PPUEventLog.dotOf(positions[best]));
+    }
+}
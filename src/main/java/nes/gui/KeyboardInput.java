@@ -0,0 +1,69 @@
+package nes.gui;
+
+import nes.Controller;
+
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+
+// Keyboard to controller 1 mapping, shared by the display windows.
+// F12 runs the screenshot action, if one is set.
+public class KeyboardInput extends KeyAdapter {
+    private volatile Controller controller;
+    private volatile Runnable screenshotAction;
+
+    public void setController(Controller controller) {
+        this.controller = controller;
+    }
+
+    public void setScreenshotAction(Runnable action) {
+        this.screenshotAction = action;
+    }
+
+    @Override
+    public void keyPressed(KeyEvent e) {
+        Runnable action = screenshotAction;
+        if (e.getKeyCode() == KeyEvent.VK_F12 && action != null) {
+            action.run();
+            return;
+        }
+        updateController(e.getKeyCode(), true);
+    }
+
+    @Override
+    public void keyReleased(KeyEvent e) {
+        updateController(e.getKeyCode(), false);
+    }
+
+    private void updateController(int keyCode, boolean pressed) {
+        Controller controller = this.controller;
+        if (controller == null)
+            return;
+
+        switch (keyCode) {
+            case KeyEvent.VK_Z:
+                controller.setButtonPressed(0, pressed);
+                break; // A
+            case KeyEvent.VK_X:
+                controller.setButtonPressed(1, pressed);
+                break; // B
+            case KeyEvent.VK_SHIFT:
+                controller.setButtonPressed(2, pressed);
+                break; // Select
+            case KeyEvent.VK_ENTER:
+                controller.setButtonPressed(3, pressed);
+                break; // Start
+            case KeyEvent.VK_UP:
+                controller.setButtonPressed(4, pressed);
+                break; // Up
+            case KeyEvent.VK_DOWN:
+                controller.setButtonPressed(5, pressed);
+                break; // Down
+            case KeyEvent.VK_LEFT:
+                controller.setButtonPressed(6, pressed);
+                break; // Left
+            case KeyEvent.VK_RIGHT:
+                controller.setButtonPressed(7, pressed);
+                break; // Right
+        }
+    }
+}
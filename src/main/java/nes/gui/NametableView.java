@@ -0,0 +1,83 @@
+package nes.gui;
+
+import nes.PPU;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+// The four logical nametables ($2000, $2400 / $2800, $2C00) as a 512x480
+// image, through the current mirroring and background pattern table. A cell
+// is redrawn only if its tile byte, its attribute byte, the CHR of its tile
+// or its palette changed since the last refresh. As on screen, pixel 0 of
+// every cell is the backdrop colour ($3F00). Nothing is allocated per
+// refresh.
+public class NametableView {
+    public static final int WIDTH = 512;
+    public static final int HEIGHT = 480;
+
+    private final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+    private final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    private boolean valid = false;
+    private int seenStamp;
+    private int seenTable;
+    private int tilesRedrawn = 0;
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    // Cells drawn by the last refresh()
+    public int getTilesRedrawn() {
+        return tilesRedrawn;
+    }
+
+    // Returns true if the image changed
+    public boolean refresh(PPU ppu) {
+        int stamp = ppu.getDebugStamp(); // Before reading anything, see PatternTableView
+        int table = (ppu.getControl() >> 4) & 1;
+        boolean all = !valid || table != seenTable;
+
+        // Palettes are shared by many cells: check the four once
+        int dirtyPalettes = 0;
+        for (int p = 0; p < 4; p++) {
+            if (PPU.isNewer(ppu.getPaletteStamp(p), seenStamp))
+                dirtyPalettes |= 1 << p;
+        }
+        if ((dirtyPalettes & 1) != 0)
+            dirtyPalettes = 0x0F; // The backdrop is in palette 0 but shown by all
+
+        tilesRedrawn = 0;
+        for (int nt = 0; nt < 4; nt++) {
+            int base = 0x2000 + nt * 0x400;
+            int originX = (nt & 1) * 256;
+            int originY = (nt >> 1) * 240;
+            for (int row = 0; row < 30; row++) {
+                for (int col = 0; col < 32; col++) {
+                    int nameAddr = base + row * 32 + col;
+                    int attrAddr = base + 0x3C0 + (row >> 2) * 8 + (col >> 2);
+                    int tile = table * 256 + ppu.readVram(nameAddr);
+                    int shift = ((row & 2) << 1) | (col & 2);
+                    int palette = (ppu.readVram(attrAddr) >> shift) & 0x03;
+
+                    if (all || (dirtyPalettes & (1 << palette)) != 0
+                            || PPU.isNewer(ppu.getNametableStamp(nameAddr), seenStamp)
+                            || PPU.isNewer(ppu.getNametableStamp(attrAddr), seenStamp)
+                            || PPU.isNewer(ppu.getChrStamp(tile), seenStamp)) {
+                        int offset = (originY + row * 8) * WIDTH + originX + col * 8;
+                        ppu.drawBackgroundTile(tile, palette, pixels, offset, WIDTH);
+                        tilesRedrawn++;
+                    }
+                }
+            }
+        }
+
+        valid = true;
+        seenStamp = stamp;
+        seenTable = table;
+        return tilesRedrawn > 0;
+    }
+}
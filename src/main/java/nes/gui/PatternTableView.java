@@ -0,0 +1,57 @@
+package nes.gui;
+
+import nes.PPU;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+// Both pattern tables side by side (256x128), cached between refreshes. Only
+// tiles whose CHR changed are decoded again, unless the selected palette
+// changed, which recolours everything. Nothing is allocated per refresh.
+public class PatternTableView {
+    public static final int WIDTH = 256;
+    public static final int HEIGHT = 128;
+
+    private final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+    private final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    private boolean valid = false;
+    private int seenStamp;
+    private int seenPalette;
+    private int tilesRedrawn = 0;
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    // Tiles decoded by the last refresh()
+    public int getTilesRedrawn() {
+        return tilesRedrawn;
+    }
+
+    // Returns true if the image changed
+    public boolean refresh(PPU ppu, int palette) {
+        // Read the counter first: writes landing while we draw get a newer stamp
+        int stamp = ppu.getDebugStamp();
+        boolean all = !valid || palette != seenPalette || PPU.isNewer(ppu.getPaletteStamp(palette), seenStamp);
+
+        tilesRedrawn = 0;
+        for (int tile = 0; tile < 512; tile++) {
+            if (all || PPU.isNewer(ppu.getChrStamp(tile), seenStamp)) {
+                // Table 0 on the left, table 1 on the right, 16x16 tiles each
+                int x = (tile >> 8) * 128 + (tile & 0x0F) * 8;
+                int y = ((tile >> 4) & 0x0F) * 8;
+                ppu.drawPatternTile(tile, palette, pixels, y * WIDTH + x, WIDTH);
+                tilesRedrawn++;
+            }
+        }
+
+        valid = true;
+        seenStamp = stamp;
+        seenPalette = palette;
+        return tilesRedrawn > 0;
+    }
+}
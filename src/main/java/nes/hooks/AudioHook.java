@@ -0,0 +1,8 @@
+package nes.hooks;
+
+public interface AudioHook {
+    // Called on the emulation thread each time the APU fills its output block.
+    // pcm holds signed 16-bit little-endian mono samples at APU.getSampleRate();
+    // the array is reused, so copy what you need before returning.
+    void onSamples(byte[] pcm, int offset, int length);
+}
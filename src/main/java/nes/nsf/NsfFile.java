@@ -0,0 +1,144 @@
+package nes.nsf;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+// NES Sound Format: a 128-byte header followed by the music code and data.
+// Only the 2A03's own channels are emulated; expansion audio is ignored and
+// PAL-only tunes play at NTSC speed.
+//
+// The data is laid out as an image of 4KB banks for Memory's NSF mode. Files
+// with any nonzero bankswitch byte start their data at (load & $FFF) in
+// bank 0 and map banks through $5FF8-$5FFF; the rest sit at their load
+// address in a flat 32KB image.
+public class NsfFile {
+    public static final int HEADER_SIZE = 0x80;
+    public static final int BANK_SIZE = 4096;
+
+    private final int songCount;
+    private final int startingSong; // 1-based
+    private final int loadAddress;
+    private final int initAddress;
+    private final int playAddress;
+    private final String title;
+    private final String artist;
+    private final String copyright;
+    private final int playSpeed; // Microseconds between PLAY calls (NTSC)
+    private final int expansionChips;
+    private final boolean bankswitched;
+    private final int[] initialBanks = new int[8];
+    private final byte[] prgImage;
+
+    public NsfFile(byte[] data) throws IOException {
+        if (data.length < HEADER_SIZE || data[0] != 'N' || data[1] != 'E' || data[2] != 'S' || data[3] != 'M'
+                || data[4] != 0x1A) {
+            throw new IOException("Invalid NSF file");
+        }
+
+        songCount = data[6] & 0xFF;
+        startingSong = Math.max(1, data[7] & 0xFF);
+        loadAddress = word(data, 0x08);
+        initAddress = word(data, 0x0A);
+        playAddress = word(data, 0x0C);
+        title = text(data, 0x0E);
+        artist = text(data, 0x2E);
+        copyright = text(data, 0x4E);
+        int speed = word(data, 0x6E);
+        playSpeed = speed != 0 ? speed : 16639; // Some rips leave it blank; 60.1 Hz
+        expansionChips = data[0x7B] & 0xFF;
+        if (loadAddress < 0x8000)
+            throw new IOException(String.format("Unsupported NSF load address $%04X", loadAddress));
+
+        boolean anyBank = false;
+        for (int i = 0; i < 8; i++) {
+            initialBanks[i] = data[0x70 + i] & 0xFF;
+            anyBank |= initialBanks[i] != 0;
+        }
+        bankswitched = anyBank;
+
+        int length = data.length - HEADER_SIZE;
+        int padding;
+        if (bankswitched) {
+            padding = loadAddress & 0x0FFF;
+        } else {
+            padding = loadAddress - 0x8000;
+            length = Math.min(length, 0x10000 - loadAddress); // Anything past $FFFF is unreachable
+            for (int i = 0; i < 8; i++) {
+                initialBanks[i] = i;
+            }
+        }
+        int size = Math.max(BANK_SIZE, (padding + length + BANK_SIZE - 1) / BANK_SIZE * BANK_SIZE);
+        prgImage = new byte[bankswitched ? size : 0x8000];
+        System.arraycopy(data, HEADER_SIZE, prgImage, padding, length);
+    }
+
+    public static NsfFile load(String path) throws IOException {
+        return new NsfFile(Files.readAllBytes(Paths.get(path)));
+    }
+
+    private static int word(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8);
+    }
+
+    // 32-byte NUL-padded field
+    private static String text(byte[] data, int offset) {
+        int end = offset;
+        while (end < offset + 32 && data[end] != 0)
+            end++;
+        return new String(data, offset, end - offset, StandardCharsets.ISO_8859_1);
+    }
+
+    public int getSongCount() {
+        return songCount;
+    }
+
+    public int getStartingSong() {
+        return startingSong;
+    }
+
+    public int getLoadAddress() {
+        return loadAddress;
+    }
+
+    public int getInitAddress() {
+        return initAddress;
+    }
+
+    public int getPlayAddress() {
+        return playAddress;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getArtist() {
+        return artist;
+    }
+
+    public String getCopyright() {
+        return copyright;
+    }
+
+    public int getPlaySpeed() {
+        return playSpeed;
+    }
+
+    public int getExpansionChips() {
+        return expansionChips;
+    }
+
+    public boolean isBankswitched() {
+        return bankswitched;
+    }
+
+    public int[] getInitialBanks() {
+        return initialBanks.clone();
+    }
+
+    public byte[] getPrgImage() {
+        return prgImage;
+    }
+}
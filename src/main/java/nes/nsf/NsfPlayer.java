@@ -0,0 +1,315 @@
+package nes.nsf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import nes.APU;
+import nes.CPU;
+import nes.Memory;
+import nes.audio.AudioSink;
+import nes.audio.WavAudioSink;
+
+// Renders NSF songs without a PPU, display or real-time pacing: only the CPU
+// and APU run, so a song renders as fast as the host allows.
+//
+// INIT and PLAY are called like subroutines: the stack holds a return address
+// that lands RTS on RETURN_TRAP, where the call ends. Between PLAY calls the
+// CPU idles (its cycles are burnt, not executed) to keep the tune's rate.
+// A song ends when it falls silent after having made sound, when it loops
+// (the program's writable state after PLAY repeats an earlier frame's; the
+// loop then plays loops times and fades out) or at the time limit.
+//
+// Usage: NsfPlayer [--song=N] [--sample-rate=N] [--max-seconds=N] [--loops=N] file.nsf out-prefix
+//   writes out-prefix-NN.wav for the chosen song or every song in the file
+public class NsfPlayer {
+    private static final double CPU_CLOCK = 1789773.0;
+    private static final int RETURN_TRAP = 0x4100; // Unmapped, never executed
+    private static final int SILENCE_LEVEL = 64; // Peak below this counts as silent
+
+    public enum EndReason {
+        SILENCE, LOOP, TIME_LIMIT
+    }
+
+    public static final class Result {
+        public final int song;
+        public final EndReason reason;
+        public final int frames; // PLAY calls
+        public final long samples;
+        public final int loopStart; // Frame the loop returns to, -1 without one
+        public final int loopLength;
+
+        Result(int song, EndReason reason, int frames, long samples, int loopStart, int loopLength) {
+            this.song = song;
+            this.reason = reason;
+            this.frames = frames;
+            this.samples = samples;
+            this.loopStart = loopStart;
+            this.loopLength = loopLength;
+        }
+
+        @Override
+        public String toString() {
+            String loop = loopStart >= 0 ? String.format(", loops %d+%d frames", loopStart, loopLength) : "";
+            return String.format("song %d: %s after %d frames%s", song, reason, frames, loop);
+        }
+    }
+
+    private final NsfFile nsf;
+    private double silenceSeconds = 2.0;
+    private double maxSeconds = 600.0;
+    private double fadeSeconds = 3.0;
+    private int loops = 2;
+
+    public NsfPlayer(NsfFile nsf) {
+        this.nsf = nsf;
+    }
+
+    public void setSilenceSeconds(double seconds) {
+        this.silenceSeconds = seconds;
+    }
+
+    public void setMaxSeconds(double seconds) {
+        this.maxSeconds = seconds;
+    }
+
+    public void setFadeSeconds(double seconds) {
+        this.fadeSeconds = seconds;
+    }
+
+    // Times the looping part plays in total before the fade
+    public void setLoops(int loops) {
+        this.loops = Math.max(1, loops);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int song = 0;
+        int sampleRate = APU.SAMPLE_RATE;
+        double maxSeconds = -1;
+        int loops = -1;
+        List<String> paths = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--song="))
+                song = Integer.parseInt(arg.substring(7));
+            else if (arg.startsWith("--sample-rate="))
+                sampleRate = Integer.parseInt(arg.substring(14));
+            else if (arg.startsWith("--max-seconds="))
+                maxSeconds = Double.parseDouble(arg.substring(14));
+            else if (arg.startsWith("--loops="))
+                loops = Integer.parseInt(arg.substring(8));
+            else
+                paths.add(arg);
+        }
+        if (paths.size() != 2) {
+            System.err.println(
+                    "Usage: NsfPlayer [--song=N] [--sample-rate=N] [--max-seconds=N] [--loops=N] file.nsf out-prefix");
+            System.exit(1);
+        }
+
+        NsfFile nsf = NsfFile.load(paths.get(0));
+        System.out.printf("%s - %s (%s), %d song(s)%n", nsf.getTitle(), nsf.getArtist(), nsf.getCopyright(),
+                nsf.getSongCount());
+        if (nsf.getExpansionChips() != 0)
+            System.out.println("Expansion audio is not emulated; those channels will be missing");
+
+        NsfPlayer player = new NsfPlayer(nsf);
+        if (maxSeconds > 0)
+            player.setMaxSeconds(maxSeconds);
+        if (loops > 0)
+            player.setLoops(loops);
+
+        List<Integer> songs = new ArrayList<>();
+        for (int i = 1; i <= nsf.getSongCount(); i++) {
+            if (song == 0 || song == i)
+                songs.add(i);
+        }
+
+        // Songs are independent machines, so render them in parallel
+        long start = System.nanoTime();
+        String prefix = paths.get(1);
+        int rate = sampleRate;
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(songs.size(), Runtime.getRuntime().availableProcessors())));
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (int s : songs) {
+                futures.add(pool.submit(() -> {
+                    try (WavAudioSink wav = new WavAudioSink(String.format("%s-%02d.wav", prefix, s), rate)) {
+                        return player.render(s, wav);
+                    }
+                }));
+            }
+            for (Future<Result> future : futures) {
+                try {
+                    System.out.println(future.get());
+                } catch (ExecutionException e) {
+                    System.err.println("Render failed: " + e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        System.out.printf("%d song(s) in %.2f s%n", songs.size(), (System.nanoTime() - start) / 1e9);
+    }
+
+    // Renders one song (1-based) into sink. Safe to call from several
+    // threads at once: each call builds its own machine.
+    public Result render(int song, AudioSink sink) {
+        Monitor monitor = new Monitor(sink);
+        APU apu = new APU(monitor);
+        Memory memory = new Memory(nsf.getPrgImage(), nsf.getInitialBanks());
+        CPU cpu = new CPU(memory);
+        memory.setAPU(apu);
+        memory.setCPU(cpu);
+        apu.setMemory(memory);
+        apu.setCpu(cpu);
+        apu.setClock(cpu.getTotalCycles());
+
+        // Power-up state the NSF spec guarantees INIT
+        for (int address = 0x0000; address < 0x0800; address++) {
+            memory.write(address, 0);
+        }
+        for (int address = 0x6000; address < 0x8000; address++) {
+            memory.write(address, 0);
+        }
+        for (int address = 0x4000; address < 0x4014; address++) {
+            memory.write(address, 0);
+        }
+        memory.write(0x4015, 0x00);
+        memory.write(0x4015, 0x0F);
+        memory.write(0x4017, 0x40);
+
+        int rate = monitor.getSampleRate();
+        long silenceSamples = (long) (silenceSeconds * rate);
+        long maxSamples = (long) (maxSeconds * rate);
+        double cyclesPerPlay = nsf.getPlaySpeed() * CPU_CLOCK / 1e6;
+
+        call(cpu, memory, nsf.getInitAddress(), song - 1, 0, (long) CPU_CLOCK); // X = 0: NTSC
+        double nextPlay = cpu.getTotalCycles();
+
+        Map<Long, Integer> seen = new HashMap<>();
+        EndReason reason = null;
+        int loopStart = -1;
+        int loopLength = 0;
+        int endFrame = -1; // Frame the loop repeats end on
+        int frame = 0;
+        while (true) {
+            nextPlay += cyclesPerPlay;
+            call(cpu, memory, nsf.getPlayAddress(), 0, 0, (long) cyclesPerPlay);
+
+            if (reason == null) {
+                Integer first = seen.putIfAbsent(memory.stateHash(), frame);
+                if (first != null) {
+                    reason = EndReason.LOOP;
+                    loopStart = first;
+                    loopLength = frame - first;
+                    endFrame = frame + (loops - 1) * loopLength;
+                }
+            }
+
+            long target = (long) nextPlay;
+            if (cpu.getTotalCycles() < target)
+                cpu.burnCycles((int) (target - cpu.getTotalCycles()));
+            apu.syncTo(cpu.getTotalCycles());
+            frame++;
+
+            if (monitor.isFading()) {
+                if (monitor.isFadeDone())
+                    break;
+            } else if (monitor.heardSound && monitor.silentSamples >= silenceSamples) {
+                reason = EndReason.SILENCE;
+                break;
+            } else if (reason == EndReason.LOOP && frame >= endFrame) {
+                monitor.startFade((long) (fadeSeconds * rate));
+            } else if (monitor.samples >= maxSamples) {
+                reason = EndReason.TIME_LIMIT;
+                monitor.startFade((long) (fadeSeconds * rate));
+            }
+        }
+        return new Result(song, reason, frame, monitor.samples, loopStart, loopLength);
+    }
+
+    // JSR without the JSR: runs from address until RTS reaches RETURN_TRAP or
+    // the cycle budget runs out (tunes that never return from INIT or PLAY)
+    private static void call(CPU cpu, Memory memory, int address, int a, int x, long budget) {
+        cpu.setReg(CPU.Register.A, a);
+        cpu.setReg(CPU.Register.X, x);
+        cpu.setReg(CPU.Register.Y, 0);
+        cpu.setReg(CPU.Register.SP, 0xFD);
+        memory.write(0x01FF, (RETURN_TRAP - 1) >> 8); // RTS adds one
+        memory.write(0x01FE, (RETURN_TRAP - 1) & 0xFF);
+        cpu.PC = address;
+
+        long end = cpu.getTotalCycles() + budget;
+        while (cpu.PC != RETURN_TRAP && cpu.getTotalCycles() < end) {
+            cpu.executeNextInstruction();
+        }
+    }
+
+    // Passes samples on while watching for silence, and fades them out on request
+    private static class Monitor implements AudioSink {
+        private final AudioSink sink;
+        private short[] faded = new short[0];
+        long samples = 0;
+        long silentSamples = 0; // Consecutive, up to the latest sample
+        boolean heardSound = false;
+        private long fadeLength = -1; // -1 until fading
+        private long fadeRemaining = 0;
+
+        Monitor(AudioSink sink) {
+            this.sink = sink;
+        }
+
+        void startFade(long length) {
+            fadeLength = Math.max(1, length);
+            fadeRemaining = fadeLength;
+        }
+
+        boolean isFading() {
+            return fadeLength >= 0;
+        }
+
+        boolean isFadeDone() {
+            return fadeRemaining == 0;
+        }
+
+        @Override
+        public void write(short[] pcm, int count) {
+            for (int i = 0; i < count; i++) {
+                if (Math.abs(pcm[i]) < SILENCE_LEVEL) {
+                    silentSamples++;
+                } else {
+                    silentSamples = 0;
+                    heardSound = true;
+                }
+            }
+
+            if (isFading()) {
+                if (faded.length < count)
+                    faded = new short[count];
+                for (int i = 0; i < count; i++) {
+                    faded[i] = (short) (pcm[i] * fadeRemaining / fadeLength);
+                    if (fadeRemaining > 0)
+                        fadeRemaining--;
+                }
+                pcm = faded;
+            }
+            sink.write(pcm, count);
+            samples += count;
+        }
+
+        @Override
+        public int getSampleRate() {
+            return sink.getSampleRate();
+        }
+    }
+}
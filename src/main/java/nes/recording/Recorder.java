@@ -0,0 +1,281 @@
+package nes.recording;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+import nes.APU;
+import nes.PPU;
+import nes.hooks.AudioHook;
+import nes.video.FrameSink;
+import nes.video.PaletteIndexer;
+
+// Lossless gameplay recorder. Attach it as a frame sink and as an APU audio
+// hook. Both callbacks only copy into a pooled packet and queue it; they never
+// block. If the pool is empty because the encoder thread is behind, the
+// frame or block is dropped and a marker records how much was lost, so the
+// decoder keeps audio and video aligned.
+//
+// The encoder thread turns each frame into palette indices, XORs them with
+// the previous frame (static areas become runs of zeros) and deflates the
+// result. Audio is stored as raw PCM between the frames.
+public class Recorder implements FrameSink, AudioHook, Closeable {
+    private static final int DEFAULT_VIDEO_PACKETS = 8; // About 130 ms of video
+    private static final int PIXELS = WIDTH * HEIGHT;
+
+    private static final int KIND_VIDEO = 0;
+    private static final int KIND_AUDIO = 1;
+    private static final int KIND_END = 2;
+
+    private final DataOutputStream out;
+    private final BlockingQueue<Packet> freeVideo;
+    private final BlockingQueue<Packet> freeAudio;
+    private final BlockingQueue<Packet> ready;
+    private final Thread thread;
+    private IOException error;
+    private boolean closed = false;
+
+    // Written by the producing thread only, attached to its next queued packet
+    // (or to the end marker, so the encoder never reads them directly)
+    private int pendingDroppedFrames = 0;
+    private int pendingDroppedAudio = 0;
+
+    private volatile long framesRecorded = 0;
+    private volatile long framesDropped = 0;
+    private volatile long audioBytesDropped = 0;
+
+    // Encoder state, owned by the encoder thread
+    private final PaletteIndexer indexer = new PaletteIndexer(PPU.getSystemPalette());
+    private final byte[] indices = new byte[PIXELS];
+    private final byte[] previous = new byte[PIXELS];
+    private final byte[] delta = new byte[PIXELS];
+    private final byte[] rgbBytes = new byte[PIXELS * 3];
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] compressed = new byte[1 << 16];
+
+    private static final class Packet {
+        final int kind;
+        int[] pixels;
+        byte[] pcm;
+        int length; // End marker: PCM bytes lost after the last audio packet
+        int droppedBefore; // Frames or PCM bytes lost just before this packet
+
+        Packet(int kind) {
+            this.kind = kind;
+            if (kind == KIND_VIDEO)
+                pixels = new int[PIXELS];
+            else if (kind == KIND_AUDIO)
+                pcm = new byte[4096];
+        }
+    }
+
+    public Recorder(String path) throws IOException {
+        this(path, APU.SAMPLE_RATE);
+    }
+
+    // sampleRate must match the APU's (its sink's) rate
+    public Recorder(String path, int sampleRate) throws IOException {
+        this(new FileOutputStream(path), DEFAULT_VIDEO_PACKETS, sampleRate);
+    }
+
+    public Recorder(OutputStream stream, int videoPackets) throws IOException {
+        this(stream, videoPackets, APU.SAMPLE_RATE);
+    }
+
+    public Recorder(OutputStream stream, int videoPackets, int sampleRate) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+        writeHeader(sampleRate);
+
+        freeVideo = new ArrayBlockingQueue<>(videoPackets);
+        int audioPackets = videoPackets * 2; // The APU flushes a block a little more often than once per frame
+        freeAudio = new ArrayBlockingQueue<>(audioPackets);
+        for (int i = 0; i < videoPackets; i++) {
+            freeVideo.add(new Packet(KIND_VIDEO));
+        }
+        for (int i = 0; i < audioPackets; i++) {
+            freeAudio.add(new Packet(KIND_AUDIO));
+        }
+        // Room for every packet plus the end marker, so offer() never fails
+        ready = new ArrayBlockingQueue<>(videoPackets + audioPackets + 1);
+
+        thread = new Thread(this::encodeLoop, "RecorderThread");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public long getFramesRecorded() {
+        return framesRecorded;
+    }
+
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    public long getAudioBytesDropped() {
+        return audioBytesDropped;
+    }
+
+    // === Producer side (emulation or render thread) ===
+
+    @Override
+    public void frameComplete(int[] frame) {
+        Packet packet = freeVideo.poll();
+        if (packet == null) {
+            pendingDroppedFrames++;
+            framesDropped++;
+            return;
+        }
+        System.arraycopy(frame, 0, packet.pixels, 0, PIXELS);
+        packet.droppedBefore = pendingDroppedFrames;
+        pendingDroppedFrames = 0;
+        ready.offer(packet);
+    }
+
+    @Override
+    public void onSamples(byte[] pcm, int offset, int length) {
+        Packet packet = freeAudio.poll();
+        if (packet == null) {
+            pendingDroppedAudio += length;
+            audioBytesDropped += length;
+            return;
+        }
+        if (packet.pcm.length < length)
+            packet.pcm = new byte[length];
+        System.arraycopy(pcm, offset, packet.pcm, 0, length);
+        packet.length = length;
+        packet.droppedBefore = pendingDroppedAudio;
+        pendingDroppedAudio = 0;
+        ready.offer(packet);
+    }
+
+    // Blocks until every queued packet has been encoded. For offline tools
+    // that must not lose a frame; the emulation thread never calls this.
+    public void awaitEncoded() throws InterruptedException {
+        while ((freeVideo.remainingCapacity() > 0 || freeAudio.remainingCapacity() > 0) && thread.isAlive()) {
+            Thread.sleep(1);
+        }
+    }
+
+    // Waits for the queued packets to be written, then closes the file. Call it
+    // once the producing threads have stopped (or from one of them).
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        Packet end = new Packet(KIND_END);
+        end.droppedBefore = pendingDroppedFrames;
+        end.length = pendingDroppedAudio;
+        try {
+            ready.put(end);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        deflater.end();
+        out.close();
+        if (error != null)
+            throw error;
+    }
+
+    // === Encoder thread ===
+
+    private void encodeLoop() {
+        try {
+            Packet packet;
+            while ((packet = ready.take()).kind != KIND_END) {
+                if (error == null) {
+                    try {
+                        encode(packet);
+                    } catch (IOException e) {
+                        error = e; // Keep draining so producers never starve, report on close()
+                    }
+                }
+                (packet.kind == KIND_VIDEO ? freeVideo : freeAudio).offer(packet);
+            }
+            // Tail markers for anything lost after the last queued packet
+            if (error == null) {
+                if (packet.droppedBefore > 0)
+                    writeCount(RecordingFormat.DROPPED_FRAMES, packet.droppedBefore);
+                if (packet.length > 0)
+                    writeCount(RecordingFormat.DROPPED_AUDIO, packet.length);
+            }
+        } catch (InterruptedException e) {
+            // Thread stopped without close()
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    private void encode(Packet packet) throws IOException {
+        if (packet.kind == KIND_AUDIO) {
+            if (packet.droppedBefore > 0)
+                writeCount(RecordingFormat.DROPPED_AUDIO, packet.droppedBefore);
+            out.writeByte(RecordingFormat.AUDIO);
+            out.writeInt(packet.length);
+            out.write(packet.pcm, 0, packet.length);
+            return;
+        }
+
+        if (packet.droppedBefore > 0)
+            writeCount(RecordingFormat.DROPPED_FRAMES, packet.droppedBefore);
+        if (indexer.toIndices(packet.pixels, indices)) {
+            for (int i = 0; i < PIXELS; i++) {
+                delta[i] = (byte) (indices[i] ^ previous[i]);
+            }
+            System.arraycopy(indices, 0, previous, 0, PIXELS);
+            writeDeflated(RecordingFormat.VIDEO, delta);
+        } else {
+            // A colour outside the palette: store this frame as RGB instead
+            for (int i = 0, j = 0; i < PIXELS; i++) {
+                int rgb = packet.pixels[i];
+                rgbBytes[j++] = (byte) (rgb >> 16);
+                rgbBytes[j++] = (byte) (rgb >> 8);
+                rgbBytes[j++] = (byte) rgb;
+            }
+            java.util.Arrays.fill(previous, (byte) 0);
+            writeDeflated(RecordingFormat.VIDEO_RGB, rgbBytes);
+        }
+        framesRecorded++;
+    }
+
+    private void writeHeader(int sampleRate) throws IOException {
+        out.writeInt(RecordingFormat.MAGIC);
+        out.writeShort(RecordingFormat.VERSION);
+        out.writeShort(WIDTH);
+        out.writeShort(HEIGHT);
+        out.writeInt(sampleRate);
+        out.writeByte(1); // Mono
+        out.writeByte(16);
+        for (int rgb : PPU.getSystemPalette()) {
+            out.writeInt(rgb);
+        }
+    }
+
+    private void writeCount(int type, int count) throws IOException {
+        out.writeByte(type);
+        out.writeInt(4);
+        out.writeInt(count);
+    }
+
+    private void writeDeflated(int type, byte[] data) throws IOException {
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length)
+                compressed = java.util.Arrays.copyOf(compressed, length * 2);
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        out.writeByte(type);
+        out.writeInt(length);
+        out.write(compressed, 0, length);
+    }
+}
@@ -0,0 +1,89 @@
+package nes.recording;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import nes.audio.WavWriter;
+
+// Exports a recording to raw 24-bit RGB video (same layout as FileFrameSink)
+// and a WAV file. Dropped frames repeat the previous frame and dropped audio
+// becomes silence, so both streams keep the original timing.
+//
+// Usage: RecordingExporter <recording> <video.rgb> <audio.wav>
+public class RecordingExporter {
+    private long framesWritten = 0;
+    private long audioBytesWritten = 0;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: RecordingExporter <recording> <video.rgb> <audio.wav>");
+            System.exit(1);
+        }
+        RecordingExporter exporter = new RecordingExporter();
+        exporter.export(args[0], args[1], args[2]);
+        System.out.printf("Exported %d frames, %d audio bytes%n", exporter.getFramesWritten(),
+                exporter.getAudioBytesWritten());
+    }
+
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    public long getAudioBytesWritten() {
+        return audioBytesWritten;
+    }
+
+    // Either output path may be null to skip that stream
+    public void export(String recordingPath, String videoPath, String wavPath) throws IOException {
+        try (RecordingReader reader = new RecordingReader(recordingPath);
+                OutputStream video = videoPath == null ? OutputStream.nullOutputStream()
+                        : new BufferedOutputStream(new FileOutputStream(videoPath), 1 << 16);
+                OutputStream audio = wavPath == null ? OutputStream.nullOutputStream()
+                        : new BufferedOutputStream(new FileOutputStream(wavPath), 1 << 16)) {
+            byte[] rgb = new byte[reader.getWidth() * reader.getHeight() * 3];
+            byte[] silence = new byte[4096];
+
+            audio.write(new byte[WavWriter.HEADER_SIZE]); // Filled in once the length is known
+            int type;
+            while ((type = reader.next()) != RecordingReader.END) {
+                switch (type) {
+                    case RecordingFormat.VIDEO:
+                    case RecordingFormat.VIDEO_RGB:
+                        int[] frame = reader.getFrame();
+                        for (int i = 0, j = 0; i < frame.length; i++) {
+                            rgb[j++] = (byte) (frame[i] >> 16);
+                            rgb[j++] = (byte) (frame[i] >> 8);
+                            rgb[j++] = (byte) frame[i];
+                        }
+                        video.write(rgb);
+                        framesWritten++;
+                        break;
+                    case RecordingFormat.DROPPED_FRAMES:
+                        // Before the first frame there is nothing to repeat; rgb is still black
+                        for (int i = 0; i < reader.getDroppedCount(); i++) {
+                            video.write(rgb);
+                            framesWritten++;
+                        }
+                        break;
+                    case RecordingFormat.AUDIO:
+                        audio.write(reader.getAudio(), 0, reader.getAudioLength());
+                        audioBytesWritten += reader.getAudioLength();
+                        break;
+                    case RecordingFormat.DROPPED_AUDIO:
+                        for (int left = reader.getDroppedCount(); left > 0; left -= silence.length) {
+                            audio.write(silence, 0, Math.min(left, silence.length));
+                        }
+                        audioBytesWritten += reader.getDroppedCount();
+                        break;
+                }
+            }
+            if (wavPath != null) {
+                audio.flush();
+                WavWriter.writeHeader(wavPath, reader.getSampleRate(), reader.getChannels(),
+                        reader.getBitsPerSample(), audioBytesWritten);
+            }
+        }
+    }
+}
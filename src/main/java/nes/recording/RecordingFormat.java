@@ -0,0 +1,34 @@
+package nes.recording;
+
+// Layout of a gameplay recording (.nesr). All values big-endian.
+//
+// Header:
+//   int    MAGIC
+//   short  VERSION
+//   short  width, short height
+//   int    sample rate, byte channels, byte bits per sample
+//   int[64] system palette (0xRRGGBB)
+//
+// Then chunks until end of file: byte type, int payload length, payload.
+//   VIDEO          Deflated frame of palette indices (one byte per pixel),
+//                  XORed with the previous frame's indices
+//   VIDEO_RGB      Deflated 24-bit RGB frame, for a frame with a colour that
+//                  is not in the palette. The next VIDEO frame is XORed with zeros.
+//   AUDIO          Signed 16-bit little-endian PCM, as the APU produced it
+//   DROPPED_FRAMES int count of frames lost while the encoder was behind
+//   DROPPED_AUDIO  int count of PCM bytes lost while the encoder was behind
+public final class RecordingFormat {
+    public static final int MAGIC = 0x4E455352; // "NESR"
+    public static final int VERSION = 1;
+
+    public static final int VIDEO = 1;
+    public static final int VIDEO_RGB = 2;
+    public static final int AUDIO = 3;
+    public static final int DROPPED_FRAMES = 4;
+    public static final int DROPPED_AUDIO = 5;
+
+    public static final int PALETTE_SIZE = 64;
+
+    private RecordingFormat() {
+    }
+}
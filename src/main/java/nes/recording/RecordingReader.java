@@ -0,0 +1,170 @@
+package nes.recording;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Decodes a recording chunk by chunk. After next() returns VIDEO or VIDEO_RGB
+// the decoded frame is in getFrame(); after AUDIO the PCM is in getAudio().
+// The arrays are reused by the following call.
+public class RecordingReader implements Closeable {
+    public static final int END = -1;
+
+    private final DataInputStream in;
+    private final int width;
+    private final int height;
+    private final int sampleRate;
+    private final int channels;
+    private final int bitsPerSample;
+    private final int[] palette = new int[RecordingFormat.PALETTE_SIZE];
+
+    private final byte[] indices;
+    private final int[] frame;
+    private final Inflater inflater = new Inflater();
+    private byte[] payload = new byte[1 << 16];
+    private byte[] audio = new byte[4096];
+    private int audioLength = 0;
+    private int droppedCount = 0;
+
+    public RecordingReader(String path) throws IOException {
+        this(new FileInputStream(path));
+    }
+
+    public RecordingReader(InputStream stream) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        if (in.readInt() != RecordingFormat.MAGIC)
+            throw new IOException("Not a recording");
+        int version = in.readUnsignedShort();
+        if (version != RecordingFormat.VERSION)
+            throw new IOException("Unsupported recording version: " + version);
+        width = in.readUnsignedShort();
+        height = in.readUnsignedShort();
+        sampleRate = in.readInt();
+        channels = in.readUnsignedByte();
+        bitsPerSample = in.readUnsignedByte();
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = in.readInt();
+        }
+
+        indices = new byte[width * height];
+        frame = new int[width * height];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
+    // Most recent frame as 0xRRGGBB
+    public int[] getFrame() {
+        return frame;
+    }
+
+    public byte[] getAudio() {
+        return audio;
+    }
+
+    public int getAudioLength() {
+        return audioLength;
+    }
+
+    // Payload of the last DROPPED_FRAMES / DROPPED_AUDIO chunk
+    public int getDroppedCount() {
+        return droppedCount;
+    }
+
+    // Reads and decodes the next chunk, returning its type or END
+    public int next() throws IOException {
+        int type = in.read();
+        if (type == -1)
+            return END;
+        int length = in.readInt();
+        if (length < 0)
+            throw new IOException("Corrupt chunk length: " + length);
+
+        switch (type) {
+            case RecordingFormat.VIDEO:
+                inflate(length, frame.length);
+                // XOR against the previous indices, which are still in place
+                for (int i = 0; i < frame.length; i++) {
+                    indices[i] ^= payload[i + length];
+                    frame[i] = palette[indices[i] & 0x3F];
+                }
+                break;
+            case RecordingFormat.VIDEO_RGB:
+                inflate(length, frame.length * 3);
+                for (int i = 0, j = length; i < frame.length; i++, j += 3) {
+                    frame[i] = ((payload[j] & 0xFF) << 16) | ((payload[j + 1] & 0xFF) << 8) | (payload[j + 2] & 0xFF);
+                }
+                java.util.Arrays.fill(indices, (byte) 0);
+                break;
+            case RecordingFormat.AUDIO:
+                if (audio.length < length)
+                    audio = new byte[length];
+                in.readFully(audio, 0, length);
+                audioLength = length;
+                break;
+            case RecordingFormat.DROPPED_FRAMES:
+            case RecordingFormat.DROPPED_AUDIO:
+                droppedCount = in.readInt();
+                in.skipBytes(length - 4);
+                break;
+            default:
+                // Unknown chunk from a newer writer: skip it
+                if (in.skipBytes(length) != length)
+                    throw new EOFException();
+                break;
+        }
+        return type;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    // Reads a deflated payload and inflates it into payload[length ..
+    // length + size), after the compressed bytes
+    private void inflate(int length, int size) throws IOException {
+        if (payload.length < length + size)
+            payload = new byte[length + size];
+        in.readFully(payload, 0, length);
+        inflater.reset();
+        inflater.setInput(payload, 0, length);
+        try {
+            int total = 0;
+            while (total < size) {
+                int n = inflater.inflate(payload, length + total, size - total);
+                if (n == 0 && (inflater.finished() || inflater.needsInput()))
+                    break;
+                total += n;
+            }
+            if (total != size)
+                throw new IOException("Truncated frame");
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt frame", e);
+        }
+    }
+}
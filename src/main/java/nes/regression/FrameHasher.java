@@ -0,0 +1,59 @@
+package nes.regression;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import nes.PPU;
+import nes.video.FrameSink;
+import nes.video.PaletteIndexer;
+
+// Hashes every completed frame. The hash covers the palette-index buffer, so
+// it is independent of the RGB palette table; a frame with a colour outside
+// the system palette is hashed as RGB instead. Keeps a copy of the most
+// recent frame for diff images.
+public class FrameHasher implements FrameSink {
+    private final PaletteIndexer indexer = new PaletteIndexer(PPU.getSystemPalette());
+    private final byte[] indices = new byte[WIDTH * HEIGHT];
+    private final byte[] rgbBytes = new byte[WIDTH * HEIGHT * 4];
+    private final int[] lastFrame = new int[WIDTH * HEIGHT];
+    private final CRC32 crc = new CRC32();
+    private long[] hashes = new long[256];
+    private int frameCount = 0;
+
+    @Override
+    public void frameComplete(int[] frame) {
+        crc.reset();
+        if (indexer.toIndices(frame, indices)) {
+            crc.update(indices);
+        } else {
+            for (int i = 0, j = 0; i < frame.length; i++) {
+                rgbBytes[j++] = (byte) (frame[i] >> 24);
+                rgbBytes[j++] = (byte) (frame[i] >> 16);
+                rgbBytes[j++] = (byte) (frame[i] >> 8);
+                rgbBytes[j++] = (byte) frame[i];
+            }
+            crc.update(rgbBytes);
+        }
+        if (frameCount == hashes.length)
+            hashes = Arrays.copyOf(hashes, frameCount * 2);
+        hashes[frameCount++] = crc.getValue();
+        System.arraycopy(frame, 0, lastFrame, 0, lastFrame.length);
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public long getHash(int frame) {
+        return hashes[frame];
+    }
+
+    public long[] getHashes() {
+        return Arrays.copyOf(hashes, frameCount);
+    }
+
+    // Live buffer, overwritten by the next frame
+    public int[] getLastFrame() {
+        return lastFrame;
+    }
+}
@@ -0,0 +1,91 @@
+package nes.regression;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import nes.Controller;
+
+// Scripted controller input. Each line gives a frame number and the buttons
+// held from that frame until the next line, joined with '+', or '-' for none:
+//
+//   # frame  buttons
+//   20       START
+//   26       -
+//   40       DOWN+A
+//
+// Blank lines and lines starting with '#' are ignored.
+public class InputScript {
+    public static final InputScript NONE = new InputScript(new int[0], new int[0]);
+
+    // Bit order matches Controller
+    private static final String[] BUTTONS = { "A", "B", "SELECT", "START", "UP", "DOWN", "LEFT", "RIGHT" };
+
+    private final int[] frames; // Ascending
+    private final int[] states;
+
+    private InputScript(int[] frames, int[] states) {
+        this.frames = frames;
+        this.states = states;
+    }
+
+    public static InputScript load(String path) throws IOException {
+        List<int[]> entries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] parts = line.split("\\s+");
+                if (parts.length != 2)
+                    throw new IOException(path + ":" + lineNumber + ": expected \"frame buttons\"");
+                int frame = Integer.parseInt(parts[0]);
+                if (!entries.isEmpty() && frame <= entries.get(entries.size() - 1)[0])
+                    throw new IOException(path + ":" + lineNumber + ": frames must increase");
+                entries.add(new int[] { frame, parseButtons(parts[1], path + ":" + lineNumber) });
+            }
+        }
+
+        int[] frames = new int[entries.size()];
+        int[] states = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            frames[i] = entries.get(i)[0];
+            states[i] = entries.get(i)[1];
+        }
+        return new InputScript(frames, states);
+    }
+
+    // Button bits held during the given frame
+    public int buttonsAt(int frame) {
+        int state = 0;
+        for (int i = 0; i < frames.length && frames[i] <= frame; i++) {
+            state = states[i];
+        }
+        return state;
+    }
+
+    public void apply(int frame, Controller controller) {
+        int state = buttonsAt(frame);
+        for (int bit = 0; bit < BUTTONS.length; bit++) {
+            controller.setButtonPressed(bit, (state & (1 << bit)) != 0);
+        }
+    }
+
+    private static int parseButtons(String spec, String where) throws IOException {
+        if (spec.equals("-"))
+            return 0;
+        int state = 0;
+        for (String name : spec.split("\\+")) {
+            int bit = java.util.Arrays.asList(BUTTONS).indexOf(name.toUpperCase());
+            if (bit == -1)
+                throw new IOException(where + ": unknown button " + name);
+            state |= 1 << bit;
+        }
+        return state;
+    }
+}
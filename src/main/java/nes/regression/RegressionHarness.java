@@ -0,0 +1,279 @@
+package nes.regression;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import nes.EmulatorRunner;
+import nes.NES;
+import nes.recording.Recorder;
+import nes.recording.RecordingFormat;
+import nes.recording.RecordingReader;
+import nes.video.FanOutFrameSink;
+import nes.video.FrameSink;
+
+// Rendering regression harness. Runs each ROM headless (no display, no audio
+// line, so not paced to real time) with scripted input and compares the
+// CRC32 of every frame's palette-index buffer with a golden file. The first
+// frame that differs is written out as a PNG: expected | actual | differences.
+//
+// Golden files live in one directory, named after the ROM without extension:
+//   name.crc    One "frame hash" line per frame (hex CRC32)
+//   name.nesr   Reference recording of the same frames, for the diff image
+//   name.input  Optional InputScript
+//
+// Usage: RegressionHarness [--update] [--frames=N] [--golden=DIR] [--out=DIR] ROM...
+public class RegressionHarness {
+    public static final int DEFAULT_FRAMES = 120;
+
+    private final File goldenDir;
+    private final File outputDir;
+
+    public static final class Result {
+        public final String name;
+        public final int framesRun;
+        public final int firstDivergence; // -1 if every frame matched
+        public final File diffImage; // Null when passed
+        public final Exception error; // ROM failed to load or run
+
+        Result(String name, int framesRun, int firstDivergence, File diffImage, Exception error) {
+            this.name = name;
+            this.framesRun = framesRun;
+            this.firstDivergence = firstDivergence;
+            this.diffImage = diffImage;
+            this.error = error;
+        }
+
+        public boolean passed() {
+            return error == null && firstDivergence == -1;
+        }
+
+        @Override
+        public String toString() {
+            if (error != null)
+                return name + ": ERROR " + error;
+            if (firstDivergence != -1)
+                return name + ": FAIL at frame " + firstDivergence + " (" + diffImage + ")";
+            return name + ": ok (" + framesRun + " frames)";
+        }
+    }
+
+    public RegressionHarness(File goldenDir, File outputDir) {
+        this.goldenDir = goldenDir;
+        this.outputDir = outputDir;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean update = false;
+        int frames = DEFAULT_FRAMES;
+        File golden = new File("src/test/resources/regression");
+        File out = new File("target/regression");
+        List<String> roms = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--update"))
+                update = true;
+            else if (arg.startsWith("--frames="))
+                frames = Integer.parseInt(arg.substring(9));
+            else if (arg.startsWith("--golden="))
+                golden = new File(arg.substring(9));
+            else if (arg.startsWith("--out="))
+                out = new File(arg.substring(6));
+            else
+                roms.add(arg);
+        }
+
+        RegressionHarness harness = new RegressionHarness(golden, out);
+        if (update) {
+            for (String rom : roms) {
+                harness.update(rom, frames);
+                System.out.println(nameOf(rom) + ": golden written (" + frames + " frames)");
+            }
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean allPassed = true;
+        for (Result result : harness.runAll(roms)) {
+            System.out.println(result);
+            allPassed &= result.passed();
+        }
+        System.out.printf("%d ROM(s) in %.2f s%n", roms.size(), (System.nanoTime() - start) / 1e9);
+        System.exit(allPassed ? 0 : 1);
+    }
+
+    // Runs the ROMs in parallel, one emulator per task
+    public List<Result> runAll(List<String> romPaths) {
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(romPaths.size(), Runtime.getRuntime().availableProcessors())));
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (String rom : romPaths) {
+                futures.add(pool.submit(() -> run(rom)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    results.add(new Result(nameOf(romPaths.get(i)), 0, -1, null, (Exception) e.getCause()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Runs one ROM against its golden hashes, stopping at the first mismatch
+    public Result run(String romPath) {
+        String name = nameOf(romPath);
+        try {
+            long[] expected = loadHashes(new File(goldenDir, name + ".crc"));
+            InputScript script = loadScript(name);
+
+            FrameHasher hasher = new FrameHasher();
+            NES nes = new NES(hasher);
+            nes.loadROM(romPath);
+            nes.reset();
+            EmulatorRunner runner = new EmulatorRunner(nes);
+            for (int frame = 0; frame < expected.length; frame++) {
+                script.apply(frame, nes.getController());
+                runner.runFrame();
+                if (hasher.getHash(frame) != expected[frame]) {
+                    File diff = writeDiff(name, frame, hasher.getLastFrame());
+                    return new Result(name, frame + 1, frame, diff, null);
+                }
+            }
+            return new Result(name, expected.length, -1, null, null);
+        } catch (IOException | RuntimeException e) {
+            return new Result(name, 0, -1, null, e);
+        }
+    }
+
+    // Records new golden hashes and reference frames for a ROM
+    public void update(String romPath, int frames) throws IOException {
+        String name = nameOf(romPath);
+        InputScript script = loadScript(name);
+        goldenDir.mkdirs();
+
+        FrameHasher hasher = new FrameHasher();
+        Recorder reference = new Recorder(new FileOutputStream(new File(goldenDir, name + ".nesr")), 8);
+        try {
+            NES nes = new NES(new FanOutFrameSink(hasher, reference));
+            nes.loadROM(romPath);
+            nes.reset();
+            EmulatorRunner runner = new EmulatorRunner(nes);
+            for (int frame = 0; frame < frames; frame++) {
+                script.apply(frame, nes.getController());
+                runner.runFrame();
+                reference.awaitEncoded(); // The reference must not drop frames
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing reference frames", e);
+        } finally {
+            reference.close();
+        }
+
+        try (PrintWriter out = new PrintWriter(new File(goldenDir, name + ".crc"))) {
+            out.println("# " + new File(romPath).getName() + ", " + frames
+                    + " frames, CRC32 of each frame's palette-index buffer");
+            for (int frame = 0; frame < frames; frame++) {
+                out.printf("%d %08x%n", frame, hasher.getHash(frame));
+            }
+        }
+    }
+
+    private InputScript loadScript(String name) throws IOException {
+        File file = new File(goldenDir, name + ".input");
+        return file.exists() ? InputScript.load(file.getPath()) : InputScript.NONE;
+    }
+
+    private static long[] loadHashes(File file) throws IOException {
+        List<Long> hashes = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] parts = line.split("\\s+");
+                if (parts.length != 2 || Integer.parseInt(parts[0]) != hashes.size())
+                    throw new IOException(file + ": expected \"" + hashes.size() + " <crc32>\", got \"" + line + "\"");
+                hashes.add(Long.parseLong(parts[1], 16));
+            }
+        }
+        long[] result = new long[hashes.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = hashes.get(i);
+        }
+        return result;
+    }
+
+    // Expected | actual | differences (red over a dimmed copy of expected).
+    // Without a reference recording only the actual frame is written.
+    private File writeDiff(String name, int frame, int[] actual) throws IOException {
+        int[] expected = loadReferenceFrame(name, frame);
+        int w = FrameSink.WIDTH;
+        int h = FrameSink.HEIGHT;
+        BufferedImage image = new BufferedImage(expected == null ? w : w * 3, h, BufferedImage.TYPE_INT_RGB);
+        if (expected == null) {
+            image.setRGB(0, 0, w, h, actual, 0, w);
+        } else {
+            int[] diff = new int[w * h];
+            for (int i = 0; i < diff.length; i++) {
+                diff[i] = expected[i] == actual[i] ? (expected[i] >> 2) & 0x3F3F3F : 0xFF0000;
+            }
+            image.setRGB(0, 0, w, h, expected, 0, w);
+            image.setRGB(w, 0, w, h, actual, 0, w);
+            image.setRGB(w * 2, 0, w, h, diff, 0, w);
+        }
+
+        outputDir.mkdirs();
+        File file = new File(outputDir, name + "-frame" + frame + ".png");
+        ImageIO.write(image, "png", file);
+        return file;
+    }
+
+    private int[] loadReferenceFrame(String name, int frame) throws IOException {
+        File file = new File(goldenDir, name + ".nesr");
+        if (!file.exists())
+            return null;
+        try (RecordingReader reader = new RecordingReader(file.getPath())) {
+            int index = 0;
+            int type;
+            while ((type = reader.next()) != RecordingReader.END) {
+                if (type == RecordingFormat.VIDEO || type == RecordingFormat.VIDEO_RGB) {
+                    if (index++ == frame)
+                        return reader.getFrame().clone();
+                } else if (type == RecordingFormat.DROPPED_FRAMES) {
+                    index += reader.getDroppedCount();
+                    if (index > frame)
+                        return null; // Lost while recording
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String nameOf(String romPath) {
+        String file = new File(romPath).getName();
+        int dot = file.lastIndexOf('.');
+        return dot == -1 ? file : file.substring(0, dot);
+    }
+}
@@ -0,0 +1,34 @@
+package nes.video;
+
+// Keeps a copy of the most recent completed frame in memory.
+public class BufferFrameSink implements FrameSink {
+    private final int[] pixels = new int[WIDTH * HEIGHT];
+    private volatile long frameCount = 0;
+
+    @Override
+    public void frameComplete(int[] frame) {
+        synchronized (pixels) {
+            System.arraycopy(frame, 0, pixels, 0, pixels.length);
+        }
+        frameCount++;
+    }
+
+    // Returns the live buffer; use copyPixels() when reading from another thread.
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    public int[] copyPixels() {
+        synchronized (pixels) {
+            return pixels.clone();
+        }
+    }
+
+    public int getPixel(int x, int y) {
+        return pixels[y * WIDTH + x];
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+}
@@ -0,0 +1,18 @@
+package nes.video;
+
+// Delivers each frame to several sinks in order, e.g. the display and a
+// recorder. Sinks must not keep the array past frameComplete().
+public class FanOutFrameSink implements FrameSink {
+    private final FrameSink[] sinks;
+
+    public FanOutFrameSink(FrameSink... sinks) {
+        this.sinks = sinks.clone();
+    }
+
+    @Override
+    public void frameComplete(int[] frame) {
+        for (FrameSink sink : sinks) {
+            sink.frameComplete(frame);
+        }
+    }
+}
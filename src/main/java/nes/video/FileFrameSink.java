@@ -0,0 +1,53 @@
+package nes.video;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Appends every frame to a file as raw 24-bit RGB (256x240, row-major, no
+// header), e.g. for "ffmpeg -f rawvideo -pixel_format rgb24 -video_size 256x240".
+public class FileFrameSink implements FrameSink, Closeable {
+    private final OutputStream out;
+    private final byte[] rowBuffer = new byte[WIDTH * 3];
+    private IOException error;
+    private long framesWritten = 0;
+
+    public FileFrameSink(String path) throws IOException {
+        this.out = new BufferedOutputStream(new FileOutputStream(path), 1 << 16);
+    }
+
+    @Override
+    public void frameComplete(int[] frame) {
+        if (error != null)
+            return; // Stop writing after the first failure, report it on close()
+
+        try {
+            for (int y = 0; y < HEIGHT; y++) {
+                int src = y * WIDTH;
+                for (int x = 0, i = 0; x < WIDTH; x++) {
+                    int rgb = frame[src + x];
+                    rowBuffer[i++] = (byte) (rgb >> 16);
+                    rowBuffer[i++] = (byte) (rgb >> 8);
+                    rowBuffer[i++] = (byte) rgb;
+                }
+                out.write(rowBuffer);
+            }
+            framesWritten++;
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+        if (error != null)
+            throw error;
+    }
+}
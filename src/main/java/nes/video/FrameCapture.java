@@ -0,0 +1,201 @@
+package nes.video;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+
+import nes.PPU;
+
+// Screenshots and frame dumps without stalling emulation. frameComplete()
+// does nothing unless a screenshot is pending or the frame is due for a
+// dump; then it copies the frame into a pooled buffer and hands it to a
+// background executor for encoding. With every buffer busy the frame is
+// skipped and counted rather than waited for.
+//
+// Dumps write dir/frame-NNNNNN.png, or .idx: the 256x240 palette-index bytes
+// (see PaletteIndexer), a quarter of raw RGB and ready for datasets.
+public class FrameCapture implements FrameSink, Closeable {
+    public enum Format {
+        PNG, INDEX
+    }
+
+    private static final int POOL_SIZE = 8;
+
+    private final BlockingQueue<int[]> free = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final ExecutorService executor;
+    private final PaletteIndexer indexer = new PaletteIndexer(PPU.getSystemPalette());
+
+    private final AtomicReference<Screenshot> screenshot = new AtomicReference<>(); // Pending request
+    private volatile File dumpDirectory;
+    private volatile int dumpInterval;
+    private volatile Format dumpFormat = Format.PNG;
+
+    private long frameNumber = 0; // Frames seen, used in dump file names
+    private final AtomicLong framesWritten = new AtomicLong();
+    private volatile long framesDropped = 0;
+    private volatile IOException error;
+
+    private static final class Screenshot {
+        final File file;
+        final CompletableFuture<File> future = new CompletableFuture<>();
+
+        Screenshot(File file) {
+            this.file = file;
+        }
+    }
+
+    public FrameCapture() {
+        for (int i = 0; i < POOL_SIZE; i++) {
+            free.add(new int[WIDTH * HEIGHT]);
+        }
+        // Leave a core for emulation; encoders are daemons so they never hold the JVM open
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "FrameCaptureThread-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    // Saves the next completed frame as PNG. Completes with the file, or
+    // exceptionally if encoding fails; replaces a request not yet taken.
+    public CompletableFuture<File> requestScreenshot(File file) {
+        Screenshot request = new Screenshot(file);
+        Screenshot replaced = screenshot.getAndSet(request);
+        if (replaced != null)
+            replaced.future.cancel(false);
+        return request.future;
+    }
+
+    // Writes every interval-th frame (1 = all) to directory until stopDump()
+    public void startDump(File directory, int interval, Format format) throws IOException {
+        if (interval < 1)
+            throw new IllegalArgumentException("Interval must be at least 1: " + interval);
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create " + directory);
+        dumpFormat = format;
+        dumpInterval = interval;
+        dumpDirectory = directory;
+    }
+
+    public void stopDump() {
+        dumpDirectory = null;
+    }
+
+    public long getFramesWritten() {
+        return framesWritten.get();
+    }
+
+    // Frames due for capture that were skipped because every buffer was busy
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    @Override
+    public void frameComplete(int[] frame) {
+        long number = frameNumber++;
+        File directory = dumpDirectory;
+        boolean dump = directory != null && number % dumpInterval == 0;
+        if (screenshot.get() == null && !dump)
+            return;
+
+        int[] buffer = free.poll();
+        if (buffer == null) {
+            framesDropped++;
+            return; // Try the screenshot again on the next frame
+        }
+        System.arraycopy(frame, 0, buffer, 0, buffer.length);
+
+        Screenshot shot = screenshot.getAndSet(null);
+        File dumpFile = null;
+        Format format = dumpFormat;
+        if (dump) {
+            String name = String.format("frame-%06d.%s", number, format == Format.PNG ? "png" : "idx");
+            dumpFile = new File(directory, name);
+        }
+
+        File finalDumpFile = dumpFile;
+        try {
+            executor.execute(() -> encode(buffer, shot, finalDumpFile, format));
+        } catch (RejectedExecutionException e) {
+            free.offer(buffer); // Closed
+            if (shot != null)
+                shot.future.cancel(false);
+        }
+    }
+
+    // Waits for queued frames to be written, then stops the encoders
+    @Override
+    public void close() throws IOException {
+        dumpDirectory = null;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (error != null)
+            throw error;
+    }
+
+    private void encode(int[] pixels, Screenshot shot, File dumpFile, Format format) {
+        try {
+            if (shot != null) {
+                try {
+                    writePng(pixels, shot.file);
+                    shot.future.complete(shot.file);
+                } catch (IOException e) {
+                    shot.future.completeExceptionally(e);
+                }
+            }
+            if (dumpFile != null) {
+                try {
+                    if (format == Format.PNG)
+                        writePng(pixels, dumpFile);
+                    else
+                        writeIndices(pixels, dumpFile);
+                    framesWritten.incrementAndGet();
+                } catch (IOException e) {
+                    if (error == null)
+                        error = e; // Report on close()
+                }
+            }
+        } finally {
+            free.offer(pixels);
+        }
+    }
+
+    private static void writePng(int[] pixels, File file) throws IOException {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, WIDTH, HEIGHT, pixels, 0, WIDTH);
+        if (!ImageIO.write(image, "png", file))
+            throw new IOException("No PNG writer");
+    }
+
+    private void writeIndices(int[] pixels, File file) throws IOException {
+        byte[] indices = new byte[WIDTH * HEIGHT];
+        if (!indexer.toIndices(pixels, indices)) // Lookup tables are read-only, safe to share
+            throw new IOException(file + ": frame has colours outside the system palette");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            out.write(indices);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package nes.video;
+
+// Destination for the PPU's video output.
+// The PPU composes into its own 256x240 RGB buffer and hands it over here; the
+// array is reused for the next frame, so implementations must copy anything
+// they want to keep before returning.
+public interface FrameSink {
+    int WIDTH = 256;
+    int HEIGHT = 240;
+
+    // Called after the last visible pixel of scanline y has been written.
+    // Row y occupies frame[y * WIDTH] .. frame[y * WIDTH + WIDTH - 1].
+    default void scanlineComplete(int y, int[] frame) {
+    }
+
+    // Called at the start of VBlank with the completed frame.
+    void frameComplete(int[] frame);
+}
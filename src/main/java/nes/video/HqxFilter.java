@@ -0,0 +1,85 @@
+package nes.video;
+
+// hq2x-style 2x scaler. Neighbours are compared in YUV with hqx's thresholds
+// instead of exact equality, and corners on a detected edge are blended
+// towards the edge colour instead of copied. This is the hqx idea without the
+// full 256-pattern interpolation table, which is mostly about rarer cases.
+public class HqxFilter implements VideoFilter {
+    private static final int THRESHOLD_Y = 48;
+    private static final int THRESHOLD_U = 7;
+    private static final int THRESHOLD_V = 6;
+
+    @Override
+    public int getScaleX() {
+        return 2;
+    }
+
+    @Override
+    public int getScaleY() {
+        return 2;
+    }
+
+    @Override
+    public void apply(int[] src, int width, int height, int[] dst, int rowStart, int rowEnd) {
+        int outWidth = width * 2;
+        for (int y = rowStart; y < rowEnd; y++) {
+            int row = y * width;
+            int up = Math.max(y - 1, 0) * width;
+            int down = Math.min(y + 1, height - 1) * width;
+            int out0 = (y * 2) * outWidth;
+            int out1 = out0 + outWidth;
+
+            for (int x = 0; x < width; x++) {
+                int left = Math.max(x - 1, 0);
+                int right = Math.min(x + 1, width - 1);
+                int a = src[up + left], b = src[up + x], c = src[up + right];
+                int d = src[row + left], e = src[row + x], f = src[row + right];
+                int g = src[down + left], h = src[down + x], i = src[down + right];
+
+                int e0 = e, e1 = e, e2 = e, e3 = e;
+                if (!similar(b, h) && !similar(d, f)) {
+                    e0 = corner(e, d, b, a);
+                    e1 = corner(e, b, f, c);
+                    e2 = corner(e, d, h, g);
+                    e3 = corner(e, h, f, i);
+                }
+                dst[out0 + x * 2] = e0;
+                dst[out0 + x * 2 + 1] = e1;
+                dst[out1 + x * 2] = e2;
+                dst[out1 + x * 2 + 1] = e3;
+            }
+        }
+    }
+
+    // Corner between edge neighbours p and q, with diagonal neighbour diag.
+    // A clean diagonal edge (diagonal matches the centre) gets a soft 1:3
+    // blend, a sharper corner gets an even blend.
+    private static int corner(int e, int p, int q, int diag) {
+        if (!similar(p, q))
+            return e;
+        int edge = mix(p, q, 1, 1);
+        return similar(e, diag) ? mix(e, edge, 3, 1) : mix(e, edge, 1, 1);
+    }
+
+    static boolean similar(int rgb1, int rgb2) {
+        if (rgb1 == rgb2)
+            return true;
+        int r1 = (rgb1 >> 16) & 0xFF, g1 = (rgb1 >> 8) & 0xFF, b1 = rgb1 & 0xFF;
+        int r2 = (rgb2 >> 16) & 0xFF, g2 = (rgb2 >> 8) & 0xFF, b2 = rgb2 & 0xFF;
+        int dr = r1 - r2, dg = g1 - g2, db = b1 - b2;
+        // YUV differences, coefficients scaled by 1024
+        int dy = (dr * 306 + dg * 601 + db * 117) >> 10;
+        int du = (-dr * 173 - dg * 339 + db * 512) >> 10;
+        int dv = (dr * 512 - dg * 429 - db * 83) >> 10;
+        return Math.abs(dy) <= THRESHOLD_Y && Math.abs(du) <= THRESHOLD_U && Math.abs(dv) <= THRESHOLD_V;
+    }
+
+    // Weighted average (w1 * c1 + w2 * c2) / (w1 + w2) per channel
+    private static int mix(int c1, int c2, int w1, int w2) {
+        int total = w1 + w2;
+        int r = (((c1 >> 16) & 0xFF) * w1 + ((c2 >> 16) & 0xFF) * w2) / total;
+        int g = (((c1 >> 8) & 0xFF) * w1 + ((c2 >> 8) & 0xFF) * w2) / total;
+        int b = ((c1 & 0xFF) * w1 + (c2 & 0xFF) * w2) / total;
+        return (r << 16) | (g << 8) | b;
+    }
+}
@@ -0,0 +1,71 @@
+package nes.video;
+
+// Composite-video look at 1x: each row is converted to YIQ and low-passed
+// horizontally, luma lightly (3 taps) and chroma heavily (7 taps), the way
+// composite bandwidth smears colour much more than brightness. Best applied
+// after an integer scaler so the blur spans a fraction of a source pixel.
+public class NtscFilter implements VideoFilter {
+    // Kernels, weights sum to 16
+    private static final int[] LUMA = { 4, 8, 4 };
+    private static final int[] CHROMA = { 1, 2, 3, 4, 3, 2, 1 };
+
+    @Override
+    public int getScaleX() {
+        return 1;
+    }
+
+    @Override
+    public int getScaleY() {
+        return 1;
+    }
+
+    @Override
+    public void apply(int[] src, int width, int height, int[] dst, int rowStart, int rowEnd) {
+        // Per-tile scratch rows, padded by the kernel radius on each side so
+        // the taps need no bounds checks
+        int pad = CHROMA.length / 2;
+        int[] ys = new int[width + 2 * pad];
+        int[] is = new int[width + 2 * pad];
+        int[] qs = new int[width + 2 * pad];
+
+        for (int y = rowStart; y < rowEnd; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int rgb = src[row + x];
+                int r = (rgb >> 16) & 0xFF, g = (rgb >> 8) & 0xFF, b = rgb & 0xFF;
+                // YIQ scaled by 1024
+                ys[x + pad] = 306 * r + 601 * g + 117 * b;
+                is[x + pad] = 610 * r - 281 * g - 329 * b;
+                qs[x + pad] = 216 * r - 534 * g + 318 * b;
+            }
+            for (int k = 0; k < pad; k++) {
+                ys[k] = ys[pad];
+                is[k] = is[pad];
+                qs[k] = qs[pad];
+                ys[width + pad + k] = ys[width + pad - 1];
+                is[width + pad + k] = is[width + pad - 1];
+                qs[width + pad + k] = qs[width + pad - 1];
+            }
+
+            for (int x = pad; x < width + pad; x++) {
+                int yy = LUMA[0] * (ys[x - 1] + ys[x + 1]) + LUMA[1] * ys[x];
+                int ii = CHROMA[0] * (is[x - 3] + is[x + 3]) + CHROMA[1] * (is[x - 2] + is[x + 2])
+                        + CHROMA[2] * (is[x - 1] + is[x + 1]) + CHROMA[3] * is[x];
+                int qq = CHROMA[0] * (qs[x - 3] + qs[x + 3]) + CHROMA[1] * (qs[x - 2] + qs[x + 2])
+                        + CHROMA[2] * (qs[x - 1] + qs[x + 1]) + CHROMA[3] * qs[x];
+
+                // Back to RGB (inputs scaled by 1024 * 16)
+                ii >>= 10;
+                qq >>= 10;
+                int r = (yy + 979 * ii + 636 * qq) >> 14;
+                int g = (yy - 279 * ii - 663 * qq) >> 14;
+                int b = (yy - 1133 * ii + 1744 * qq) >> 14;
+                dst[row + x - pad] = (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+            }
+        }
+    }
+
+    private static int clamp(int v) {
+        return v < 0 ? 0 : (v > 255 ? 255 : v);
+    }
+}
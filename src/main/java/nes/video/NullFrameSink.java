@@ -0,0 +1,10 @@
+package nes.video;
+
+// Discards all video output (batch runs, audio-only jobs, benchmarks).
+public class NullFrameSink implements FrameSink {
+    public static final NullFrameSink INSTANCE = new NullFrameSink();
+
+    @Override
+    public void frameComplete(int[] frame) {
+    }
+}
@@ -0,0 +1,44 @@
+package nes.video;
+
+// Maps 0xRRGGBB pixels back to indices into a 64-colour system palette. The
+// PPU hands out RGB frames; palette entries with the same RGB value (the
+// blacks) resolve to the lowest index, which is lossless for the picture.
+public class PaletteIndexer {
+    private final int[] keys = new int[256]; // Open-addressed, -1 = empty
+    private final byte[] values = new byte[256];
+
+    public PaletteIndexer(int[] palette) {
+        java.util.Arrays.fill(keys, -1);
+        for (int i = palette.length - 1; i >= 0; i--) {
+            int slot = findSlot(palette[i] & 0xFFFFFF);
+            keys[slot] = palette[i] & 0xFFFFFF;
+            values[slot] = (byte) i;
+        }
+    }
+
+    // Fills indices from an RGB frame; false if a colour is not in the palette
+    public boolean toIndices(int[] pixels, byte[] indices) {
+        int lastRgb = -1;
+        byte lastIndex = 0;
+        for (int i = 0; i < pixels.length; i++) {
+            int rgb = pixels[i] & 0xFFFFFF;
+            if (rgb != lastRgb) {
+                int slot = findSlot(rgb);
+                if (keys[slot] != rgb)
+                    return false;
+                lastRgb = rgb;
+                lastIndex = values[slot];
+            }
+            indices[i] = lastIndex;
+        }
+        return true;
+    }
+
+    private int findSlot(int rgb) {
+        int slot = (rgb * 0x9E3779B1) >>> 24;
+        while (keys[slot] != -1 && keys[slot] != rgb) {
+            slot = (slot + 1) & 0xFF;
+        }
+        return slot;
+    }
+}
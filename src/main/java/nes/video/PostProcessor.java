@@ -0,0 +1,185 @@
+package nes.video;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Post-processing stage between the PPU and the display. frameComplete() only
+// copies the frame into a free buffer, so the emulation thread never waits on
+// filtering. A worker thread takes the newest frame, runs the filter chain
+// with each pass split into row tiles on a ForkJoinPool, and hands the result
+// to the output. A frame still pending when the next one arrives is dropped.
+public class PostProcessor implements FrameSink {
+    private static final int TILE_ROWS = 16; // Source rows per task
+
+    private final VideoFilter[] filters;
+    private final ScaledFrameSink output;
+    private final ForkJoinPool pool;
+    private final int[][] stageOutputs; // Result of each pass, reused every frame
+    private final int[] stageWidths;
+    private final int[] stageHeights;
+
+    // Triple buffer: back is filled by frameComplete(), pending waits for the
+    // worker, working is being filtered. Only the swaps happen under the lock.
+    private int[] back = new int[WIDTH * HEIGHT];
+    private int[] pending = new int[WIDTH * HEIGHT];
+    private int[] working = new int[WIDTH * HEIGHT];
+    private boolean hasPending = false;
+    private final Object lock = new Object();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    private volatile long framesProcessed = 0;
+    private volatile long framesDropped = 0;
+
+    public PostProcessor(ScaledFrameSink output, VideoFilter... filters) {
+        this.output = output;
+        this.filters = filters.clone();
+        this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+        stageOutputs = new int[filters.length][];
+        stageWidths = new int[filters.length + 1];
+        stageHeights = new int[filters.length + 1];
+        stageWidths[0] = WIDTH;
+        stageHeights[0] = HEIGHT;
+        for (int i = 0; i < filters.length; i++) {
+            stageWidths[i + 1] = stageWidths[i] * filters[i].getScaleX();
+            stageHeights[i + 1] = stageHeights[i] * filters[i].getScaleY();
+            stageOutputs[i] = new int[stageWidths[i + 1] * stageHeights[i + 1]];
+        }
+
+        worker = new Thread(this::workerLoop, "PostProcessThread");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Comma-separated chain, applied left to right, e.g. "scale2x,ntsc"
+    public static VideoFilter[] parseFilters(String spec) {
+        String[] names = spec.split(",");
+        VideoFilter[] filters = new VideoFilter[names.length];
+        for (int i = 0; i < names.length; i++) {
+            switch (names[i].trim()) {
+                case "scale2x":
+                    filters[i] = new Scale2xFilter();
+                    break;
+                case "scale3x":
+                    filters[i] = new Scale3xFilter();
+                    break;
+                case "hqx":
+                    filters[i] = new HqxFilter();
+                    break;
+                case "ntsc":
+                    filters[i] = new NtscFilter();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown filter: " + names[i]);
+            }
+        }
+        return filters;
+    }
+
+    public int getOutputWidth() {
+        return stageWidths[filters.length];
+    }
+
+    public int getOutputHeight() {
+        return stageHeights[filters.length];
+    }
+
+    public long getFramesProcessed() {
+        return framesProcessed;
+    }
+
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    @Override
+    public void frameComplete(int[] frame) {
+        System.arraycopy(frame, 0, back, 0, back.length);
+        synchronized (lock) {
+            int[] swap = pending;
+            pending = back;
+            back = swap;
+            if (hasPending)
+                framesDropped++;
+            hasPending = true;
+            lock.notify();
+        }
+    }
+
+    // Runs the chain on a 256x240 frame and returns the final pass's buffer,
+    // which is overwritten by the next call. Not for concurrent use.
+    public int[] process(int[] frame) {
+        int[] src = frame;
+        for (int i = 0; i < filters.length; i++) {
+            pool.invoke(new FilterTask(filters[i], src, stageWidths[i], stageHeights[i], stageOutputs[i], 0,
+                    stageHeights[i]));
+            src = stageOutputs[i];
+        }
+        return src;
+    }
+
+    public void close() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pool.shutdown();
+    }
+
+    private void workerLoop() {
+        while (running) {
+            synchronized (lock) {
+                while (!hasPending) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return; // close()
+                    }
+                }
+                int[] swap = working;
+                working = pending;
+                pending = swap;
+                hasPending = false;
+            }
+            int[] result = process(working);
+            output.scaledFrameComplete(result, getOutputWidth(), getOutputHeight());
+            framesProcessed++;
+        }
+    }
+
+    // Splits a pass into tiles of TILE_ROWS source rows
+    private static final class FilterTask extends RecursiveAction {
+        private final VideoFilter filter;
+        private final int[] src;
+        private final int width;
+        private final int height;
+        private final int[] dst;
+        private final int rowStart;
+        private final int rowEnd;
+
+        FilterTask(VideoFilter filter, int[] src, int width, int height, int[] dst, int rowStart, int rowEnd) {
+            this.filter = filter;
+            this.src = src;
+            this.width = width;
+            this.height = height;
+            this.dst = dst;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+        }
+
+        @Override
+        protected void compute() {
+            if (rowEnd - rowStart <= TILE_ROWS) {
+                filter.apply(src, width, height, dst, rowStart, rowEnd);
+                return;
+            }
+            int mid = (rowStart + rowEnd) >>> 1;
+            invokeAll(new FilterTask(filter, src, width, height, dst, rowStart, mid),
+                    new FilterTask(filter, src, width, height, dst, mid, rowEnd));
+        }
+    }
+}
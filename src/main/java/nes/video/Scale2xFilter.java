@@ -0,0 +1,53 @@
+package nes.video;
+
+// Scale2x / AdvMAME2x: each pixel becomes a 2x2 block, corners take the
+// neighbour's colour where two neighbours meet on an edge. Keeps hard pixel
+// art edges without blending.
+public class Scale2xFilter implements VideoFilter {
+
+    @Override
+    public int getScaleX() {
+        return 2;
+    }
+
+    @Override
+    public int getScaleY() {
+        return 2;
+    }
+
+    @Override
+    public void apply(int[] src, int width, int height, int[] dst, int rowStart, int rowEnd) {
+        int outWidth = width * 2;
+        for (int y = rowStart; y < rowEnd; y++) {
+            int row = y * width;
+            int up = Math.max(y - 1, 0) * width;
+            int down = Math.min(y + 1, height - 1) * width;
+            int out0 = (y * 2) * outWidth;
+            int out1 = out0 + outWidth;
+
+            for (int x = 0; x < width; x++) {
+                int b = src[up + x];
+                int d = src[row + Math.max(x - 1, 0)];
+                int e = src[row + x];
+                int f = src[row + Math.min(x + 1, width - 1)];
+                int h = src[down + x];
+
+                int e0 = e, e1 = e, e2 = e, e3 = e;
+                if (b != h && d != f) {
+                    if (d == b)
+                        e0 = d;
+                    if (b == f)
+                        e1 = f;
+                    if (d == h)
+                        e2 = d;
+                    if (h == f)
+                        e3 = f;
+                }
+                dst[out0 + x * 2] = e0;
+                dst[out0 + x * 2 + 1] = e1;
+                dst[out1 + x * 2] = e2;
+                dst[out1 + x * 2 + 1] = e3;
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package nes.video;
+
+// Scale3x / AdvMAME3x: the 3x3 counterpart of Scale2xFilter
+public class Scale3xFilter implements VideoFilter {
+
+    @Override
+    public int getScaleX() {
+        return 3;
+    }
+
+    @Override
+    public int getScaleY() {
+        return 3;
+    }
+
+    @Override
+    public void apply(int[] src, int width, int height, int[] dst, int rowStart, int rowEnd) {
+        int outWidth = width * 3;
+        for (int y = rowStart; y < rowEnd; y++) {
+            int row = y * width;
+            int up = Math.max(y - 1, 0) * width;
+            int down = Math.min(y + 1, height - 1) * width;
+            int out0 = (y * 3) * outWidth;
+            int out1 = out0 + outWidth;
+            int out2 = out1 + outWidth;
+
+            for (int x = 0; x < width; x++) {
+                int left = Math.max(x - 1, 0);
+                int right = Math.min(x + 1, width - 1);
+                int a = src[up + left], b = src[up + x], c = src[up + right];
+                int d = src[row + left], e = src[row + x], f = src[row + right];
+                int g = src[down + left], h = src[down + x], i = src[down + right];
+
+                int e0 = e, e1 = e, e2 = e, e3 = e, e5 = e, e6 = e, e7 = e, e8 = e;
+                if (b != h && d != f) {
+                    if (d == b)
+                        e0 = d;
+                    if ((d == b && e != c) || (b == f && e != a))
+                        e1 = b;
+                    if (b == f)
+                        e2 = f;
+                    if ((d == b && e != g) || (d == h && e != a))
+                        e3 = d;
+                    if ((b == f && e != i) || (h == f && e != c))
+                        e5 = f;
+                    if (d == h)
+                        e6 = d;
+                    if ((d == h && e != i) || (h == f && e != g))
+                        e7 = h;
+                    if (h == f)
+                        e8 = f;
+                }
+                int o = x * 3;
+                dst[out0 + o] = e0;
+                dst[out0 + o + 1] = e1;
+                dst[out0 + o + 2] = e2;
+                dst[out1 + o] = e3;
+                dst[out1 + o + 1] = e;
+                dst[out1 + o + 2] = e5;
+                dst[out2 + o] = e6;
+                dst[out2 + o + 1] = e7;
+                dst[out2 + o + 2] = e8;
+            }
+        }
+    }
+}
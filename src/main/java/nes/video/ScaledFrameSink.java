@@ -0,0 +1,7 @@
+package nes.video;
+
+// Destination for post-processed frames, whose size depends on the filter
+// chain. Same ownership rule as FrameSink: the array is reused afterwards.
+public interface ScaledFrameSink {
+    void scaledFrameComplete(int[] pixels, int width, int height);
+}
@@ -0,0 +1,14 @@
+package nes.video;
+
+// One post-processing pass over an RGB image. Output is (width * scaleX) x
+// (height * scaleY). Each source row range produces its own block of output
+// rows and reads only the source, so a pass can be cut into horizontal tiles
+// and run in parallel (PostProcessor).
+public interface VideoFilter {
+    int getScaleX();
+
+    int getScaleY();
+
+    // Writes the output rows produced by source rows [rowStart, rowEnd)
+    void apply(int[] src, int width, int height, int[] dst, int rowStart, int rowEnd);
+}
@@ -0,0 +1,438 @@
+package nes;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import nes.audio.AudioRing;
+import nes.audio.BlipBuffer;
+import nes.audio.BufferAudioSink;
+import nes.audio.FilterChain;
+import nes.audio.LatencyProbe;
+import nes.audio.RegisterLog;
+import nes.audio.ScopeTap;
+import nes.audio.StemCapture;
+import nes.audio.StemSink;
+import nes.audio.WavAudioSink;
+import nes.video.NullFrameSink;
+
+import org.junit.Test;
+
+public class APUTest {
+
+    // Pulse 1 at ~440 Hz, triangle and looping noise, all at constant volume
+    private static void startTones(APU apu) {
+        apu.writeRegister(0x4015, 0x0F);
+        apu.writeRegister(0x4000, 0xBF); // Duty 50%, constant volume 15
+        apu.writeRegister(0x4002, 0xFD);
+        apu.writeRegister(0x4003, 0x00);
+        apu.writeRegister(0x4008, 0xFF);
+        apu.writeRegister(0x400A, 0x7E);
+        apu.writeRegister(0x400B, 0x00);
+        apu.writeRegister(0x400C, 0x36);
+        apu.writeRegister(0x400E, 0x05);
+        apu.writeRegister(0x400F, 0x00);
+    }
+
+    private static ByteArrayOutputStream capture(APU apu) {
+        ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+        apu.addHook((samples, offset, length) -> pcm.write(samples, offset, length));
+        return pcm;
+    }
+
+    @Test
+    public void testBlipStepSettlesExactly() {
+        for (BlipBuffer.Quality quality : BlipBuffer.Quality.values()) {
+            BlipBuffer blip = new BlipBuffer(1789773.0, 44100, 1024, quality);
+            blip.addDelta(4000, 1000);
+            blip.addDelta(20000, -250);
+            blip.endFrame(29781);
+            int[] samples = new int[1024];
+            int count = blip.readSamples(samples);
+            assertEquals(733, count);
+
+            // Silent before the first step's kernel, flat after each has passed
+            int first = (int) (4000 * 44100 / 1789773.0);
+            int second = (int) (20000 * 44100 / 1789773.0);
+            for (int i = 0; i < first; i++) {
+                assertEquals(0, samples[i]);
+            }
+            for (int i = first + blip.getWidth(); i < second; i++) {
+                assertEquals(quality.name(), 1000, samples[i]);
+            }
+            for (int i = second + blip.getWidth(); i < count; i++) {
+                assertEquals(quality.name(), 750, samples[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testBulkRunMatchesCycleByCycle() {
+        APU single = new APU();
+        APU bulk = new APU();
+        ByteArrayOutputStream singleOut = capture(single);
+        ByteArrayOutputStream bulkOut = capture(bulk);
+        startTones(single);
+        startTones(bulk);
+
+        // Uneven chunks, with a $4017 write and a retrigger part way through
+        Random random = new Random(7);
+        int cycles = 0;
+        while (cycles < 4 * 29781) {
+            int n = 1 + random.nextInt(300);
+            for (int i = 0; i < n; i++) {
+                single.run(1);
+            }
+            bulk.run(n);
+            cycles += n;
+            if (cycles > 50000 && cycles - n <= 50000) {
+                single.writeRegister(0x4017, 0x80);
+                bulk.writeRegister(0x4017, 0x80);
+                single.writeRegister(0x4003, 0x08);
+                bulk.writeRegister(0x4003, 0x08);
+            }
+        }
+        assertTrue(singleOut.size() > 0);
+        assertArrayEquals(singleOut.toByteArray(), bulkOut.toByteArray());
+    }
+
+    @Test
+    public void testSampleRateIsExact() {
+        APU apu = new APU();
+        ByteArrayOutputStream pcm = capture(apu);
+        startTones(apu);
+        int frames = 120;
+        apu.run(frames * 29781);
+        double expected = frames * 29781.0 * APU.SAMPLE_RATE / 1789773.0;
+        assertEquals(expected, pcm.size() / 2, 1.0);
+    }
+
+    @Test
+    public void testSinkSampleRateSetsOutputRate() {
+        int frames = 60;
+        for (int rate : new int[] { 16000, 48000 }) {
+            BufferAudioSink sink = new BufferAudioSink(rate);
+            APU apu = new APU(sink);
+            apu.setQuality(BlipBuffer.Quality.HIGH);
+            startTones(apu);
+            apu.run(frames * 29781);
+            assertEquals(rate, apu.getSampleRate());
+            assertEquals(frames * 29781.0 * rate / 1789773.0, sink.getSampleCount(), 1.0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedSampleRateIsRejected() {
+        new APU(new BufferAudioSink(4000));
+    }
+
+    @Test
+    public void testStemsSeparateChannelsAndLogWrites() {
+        BufferAudioSink mix = new BufferAudioSink();
+        BufferAudioSink[] channels = new BufferAudioSink[StemCapture.CHANNELS];
+        for (int c = 0; c < channels.length; c++) {
+            channels[c] = new BufferAudioSink();
+        }
+        APU apu = new APU(mix);
+        StemCapture stems = apu.startStemCapture(StemSink.split(channels), 16);
+        startTones(apu);
+        apu.run(10 * 29781);
+
+        // Every stem lines up with the mix; only the channels startTones() plays sound
+        for (int c = 0; c < channels.length; c++) {
+            assertEquals(mix.getSampleCount(), channels[c].getSampleCount());
+            short[] samples = channels[c].copySamples();
+            boolean sounding = false;
+            for (short sample : samples) {
+                sounding |= sample != 0;
+            }
+            assertEquals(StemCapture.NAMES[c], c != StemCapture.PULSE2 && c != StemCapture.DMC, sounding);
+        }
+
+        RegisterLog pulse = stems.getLog(StemCapture.PULSE1);
+        assertEquals(3, pulse.size()); // $4000, $4002, $4003
+        assertEquals(0x4000, pulse.getAddress(0));
+        assertEquals(0xBF, pulse.getValue(0));
+        assertEquals(0x4003, pulse.getAddress(2));
+        assertEquals(0, stems.getLog(StemCapture.PULSE2).size());
+        assertEquals(1, stems.getControlLog().size());
+
+        // Full logs drop instead of growing
+        for (int i = 0; i < 20; i++) {
+            apu.writeRegister(0x4006, i);
+        }
+        assertEquals(16, stems.getLog(StemCapture.PULSE2).size());
+        assertEquals(4, stems.getLog(StemCapture.PULSE2).getDropped());
+    }
+
+    @Test
+    public void testLatencyProbeTracksWrittenSample() {
+        BufferAudioSink sink = new BufferAudioSink();
+        APU apu = new APU(sink);
+        LatencyProbe probe = new LatencyProbe(0x4003);
+        startTones(apu);
+        apu.setLatencyProbe(probe);
+        apu.run(10 * 29781 + 14890); // Half way into frame 10
+        apu.writeRegister(0x4002, 0x80); // Not the watched register
+        apu.writeRegister(0x4003, 0x00);
+
+        // The write lands on sample 14890 * 44100 / 1789773 = 366.9 of the open frame
+        long landed = sink.getSampleCount() + 366;
+        probe.onHandoff(landed, 0);
+        assertEquals(0, probe.getCount());
+        probe.onHandoff(landed + 1, 5_000_000);
+        assertEquals(1, probe.getCount());
+        assertTrue(probe.getLastOutputNanos() >= probe.getLastNanos() + 5_000_000);
+
+        // One measurement at a time: nothing pending until the next write
+        probe.onHandoff(Long.MAX_VALUE, 0);
+        assertEquals(1, probe.getCount());
+        apu.writeRegister(0x4003, 0x00);
+        apu.writeRegister(0x4003, 0x00);
+        probe.onHandoff(Long.MAX_VALUE, 0);
+        assertEquals(2, probe.getCount());
+    }
+
+    @Test
+    public void testScopeTapPublishesWholeFrames() {
+        APU apu = new APU();
+        ScopeTap tap = new ScopeTap(800); // Rounds up to 4096 shorts: two frames of ticks
+        startTones(apu);
+        apu.setScopeTap(tap);
+        apu.run(5 * 29781);
+
+        short[] ticks = new short[4096];
+        int count = tap.read(ticks, 4096 / ScopeTap.CHANNELS);
+        int frameTicks = 29781 / ScopeTap.DECIMATION; // 367 or 368 per frame
+        assertTrue(count >= 2 * frameTicks && count <= 2 * (frameTicks + 1));
+        assertEquals(3, tap.getBatchesDropped());
+
+        // Still interleaved: pulse 1 at 0 or 15, pulse 2 and DMC silent
+        boolean pulseHigh = false;
+        for (int t = 0; t < count; t++) {
+            int pulse = ticks[t * ScopeTap.CHANNELS + StemCapture.PULSE1];
+            assertTrue(pulse == 0 || pulse == 15);
+            pulseHigh |= pulse == 15;
+            assertEquals(0, ticks[t * ScopeTap.CHANNELS + StemCapture.PULSE2]);
+            assertTrue(ticks[t * ScopeTap.CHANNELS + StemCapture.TRIANGLE] <= 15);
+            assertEquals(0, ticks[t * ScopeTap.CHANNELS + StemCapture.DMC]);
+        }
+        assertTrue(pulseHigh);
+
+        // Detached: nothing more arrives
+        apu.setScopeTap(null);
+        apu.run(2 * 29781);
+        assertEquals(0, tap.read(ticks, 4096 / ScopeTap.CHANNELS));
+    }
+
+    @Test
+    public void testAudioRingKeepsOrderAcrossThreads() throws InterruptedException {
+        AudioRing ring = new AudioRing(64);
+        final int total = 200000;
+        int[] errors = new int[1];
+        Thread consumer = new Thread(() -> {
+            short[] chunk = new short[48];
+            int expected = 0;
+            while (expected < total) {
+                int n = ring.read(chunk, 0, chunk.length);
+                for (int i = 0; i < n; i++, expected++) {
+                    if (chunk[i] != (short) expected)
+                        errors[0]++;
+                }
+                if (n == 0)
+                    Thread.yield();
+            }
+        });
+        consumer.start();
+
+        // Odd-sized writes so both sides wrap at every offset
+        short[] chunk = new short[37];
+        int next = 0;
+        while (next < total) {
+            int n = Math.min(chunk.length, total - next);
+            for (int i = 0; i < n; i++) {
+                chunk[i] = (short) (next + i);
+            }
+            int written = 0;
+            while (written < n) {
+                written += ring.write(chunk, written, n - written);
+                assertTrue(ring.size() <= ring.getCapacity());
+                if (written < n)
+                    Thread.yield();
+            }
+            next += n;
+        }
+        consumer.join(10000);
+        assertEquals(0, errors[0]);
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void testSinksReceiveTheHookedSamples() throws IOException {
+        File file = File.createTempFile("apu", ".wav");
+        file.deleteOnExit();
+        BufferAudioSink buffer = new BufferAudioSink();
+        WavAudioSink wav = new WavAudioSink(file.getPath(), APU.SAMPLE_RATE);
+
+        // Same program into two APUs, one per sink
+        APU first = new APU(buffer);
+        APU second = new APU(wav);
+        ByteArrayOutputStream pcm = capture(first);
+        startTones(first);
+        startTones(second);
+        first.run(10 * 29781);
+        second.run(10 * 29781);
+        wav.close();
+
+        short[] samples = buffer.copySamples();
+        assertEquals(pcm.size() / 2, samples.length);
+        byte[] expected = pcm.toByteArray();
+        byte[] written = Files.readAllBytes(file.toPath());
+        assertEquals(WavAudioSink.HEADER_SIZE + expected.length, written.length);
+        assertEquals("RIFF", new String(written, 0, 4, "US-ASCII"));
+        assertArrayEquals(expected, Arrays.copyOfRange(written, WavAudioSink.HEADER_SIZE, written.length));
+        for (int i = 0; i < samples.length; i++) {
+            assertEquals((short) ((expected[i * 2] & 0xFF) | (expected[i * 2 + 1] << 8)), samples[i]);
+        }
+    }
+
+    // NROM program that keeps every APU path busy: tones, a pitch change and a
+    // $4015 read every 256 loops, frame IRQs, and DMC IRQs from a one-byte
+    // sample that the handler restarts. Between those the APU is only synced
+    // for its IRQs.
+    private static File createSoundRom() throws IOException {
+        byte[] prg = new byte[16384]; // Mapped at $C000 (and $8000)
+        int[] init = { 0x4015, 0x0F, 0x4000, 0xBF, 0x4002, 0xFD, 0x4003, 0x00, 0x4008, 0xFF, 0x400A, 0x7E,
+                0x400B, 0x00, 0x400C, 0x36, 0x400E, 0x05, 0x400F, 0x00, 0x4010, 0x80, 0x4012, 0x80, 0x4013, 0x00,
+                0x4017, 0x00, 0x4015, 0x1F };
+        int pc = 0;
+        prg[pc++] = 0x78; // SEI
+        for (int i = 0; i < init.length; i += 2) {
+            pc = storeImmediate(prg, pc, init[i + 1], init[i]);
+        }
+        prg[pc++] = 0x58; // CLI
+        int loop = pc;
+        prg[pc++] = (byte) 0xE6; // INC $00
+        prg[pc++] = 0x00;
+        prg[pc++] = (byte) 0xD0; // BNE loop: leave the APU alone for ~2000 cycles
+        prg[pc++] = (byte) 0xFC;
+        prg[pc++] = (byte) 0xE6; // INC $01
+        prg[pc++] = 0x01;
+        prg[pc++] = (byte) 0xA5; // LDA $01
+        prg[pc++] = 0x01;
+        pc = absolute(prg, pc, 0x8D, 0x4002); // STA $4002
+        pc = absolute(prg, pc, 0xAD, 0x4015); // LDA $4015
+        pc = absolute(prg, pc, 0x4C, 0xC000 + loop); // JMP loop
+
+        int irq = pc;
+        prg[pc++] = 0x48; // PHA
+        pc = absolute(prg, pc, 0xAD, 0x4015); // Acknowledge the frame IRQ
+        pc = storeImmediate(prg, pc, 0x0F, 0x4015); // Acknowledge the DMC IRQ...
+        pc = storeImmediate(prg, pc, 0x1F, 0x4015); // ...and restart the sample
+        prg[pc++] = (byte) 0xA5; // LDA $00
+        prg[pc++] = 0x00;
+        pc = absolute(prg, pc, 0x8D, 0x4011); // DMC level from the loop counter: IRQ timing is audible
+        prg[pc++] = 0x68; // PLA
+        prg[pc++] = 0x40; // RTI
+        int nmi = pc;
+        prg[pc++] = 0x40; // RTI
+
+        prg[0x2000] = (byte) 0xA5; // DMC sample at $E000
+        int[] vectors = { 0xC000 + nmi, 0xC000, 0xC000 + irq };
+        for (int i = 0; i < 3; i++) {
+            prg[0x3FFA + i * 2] = (byte) vectors[i];
+            prg[0x3FFB + i * 2] = (byte) (vectors[i] >> 8);
+        }
+
+        File file = File.createTempFile("apu-sound", ".nes");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[] { 'N', 'E', 'S', 0x1A, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 });
+            out.write(prg);
+            out.write(new byte[8192]); // CHR
+        }
+        return file;
+    }
+
+    private static int storeImmediate(byte[] prg, int pc, int value, int address) {
+        prg[pc++] = (byte) 0xA9; // LDA #value
+        prg[pc++] = (byte) value;
+        return absolute(prg, pc, 0x8D, address); // STA address
+    }
+
+    private static int absolute(byte[] prg, int pc, int opcode, int address) {
+        prg[pc++] = (byte) opcode;
+        prg[pc++] = (byte) address;
+        prg[pc++] = (byte) (address >> 8);
+        return pc;
+    }
+
+    private static short[] render(File rom, boolean catchUp, int frames) throws IOException {
+        BufferAudioSink audio = new BufferAudioSink();
+        NES nes = new NES(NullFrameSink.INSTANCE, audio);
+        nes.loadROM(rom.getPath());
+        nes.reset();
+        EmulatorRunner runner = new EmulatorRunner(nes);
+        runner.setCatchUpScheduling(catchUp);
+        for (int i = 0; i < frames; i++) {
+            runner.runFrame();
+        }
+        return audio.copySamples();
+    }
+
+    @Test
+    public void testLazyApuMatchesLockStepSampleForSample() throws IOException {
+        File rom = createSoundRom();
+        short[] lockStep = render(rom, false, 60);
+        short[] lazy = render(rom, true, 60);
+
+        assertTrue(lockStep.length > 40000);
+        int min = 0, max = 0;
+        for (short sample : lockStep) {
+            min = Math.min(min, sample);
+            max = Math.max(max, sample);
+        }
+        assertTrue(max - min > 1000); // Actually audible
+        assertArrayEquals(lockStep, lazy);
+    }
+
+    // Peak output of the filter chain for a full-scale sine after it settles
+    private static int filteredPeak(double frequency) {
+        FilterChain filters = new FilterChain(APU.SAMPLE_RATE);
+        int[] in = new int[APU.SAMPLE_RATE / 2];
+        short[] out = new short[in.length];
+        for (int i = 0; i < in.length; i++) {
+            in[i] = 16384 + (int) Math.round(16000 * Math.sin(2 * Math.PI * frequency * i / APU.SAMPLE_RATE));
+        }
+        filters.process(in, out, in.length);
+        int peak = 0;
+        for (int i = in.length / 2; i < in.length; i++) {
+            peak = Math.max(peak, Math.abs(out[i]));
+        }
+        return peak;
+    }
+
+    @Test
+    public void testFilterChainMatchesHardwareOutputStage() {
+        // DC offset removed, midrange passes, the low and high ends roll off
+        FilterChain filters = new FilterChain(APU.SAMPLE_RATE);
+        int[] constant = new int[APU.SAMPLE_RATE];
+        Arrays.fill(constant, 20000);
+        short[] out = new short[constant.length];
+        filters.process(constant, out, constant.length);
+        assertTrue(Math.abs(out[out.length - 1]) <= 1);
+
+        int mid = filteredPeak(3000);
+        assertTrue(mid > 13500 && mid < 16500);
+        assertTrue(filteredPeak(60) < 16000 * 0.3);
+        assertTrue(filteredPeak(18000) < 16000 * 0.7);
+    }
+}
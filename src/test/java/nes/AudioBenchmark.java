@@ -0,0 +1,68 @@
+package nes;
+
+import java.util.concurrent.TimeUnit;
+
+import nes.audio.BlipBuffer;
+import nes.audio.NullAudioSink;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// One frame of APU output (pulse, triangle and noise all sounding) at each
+// output rate and synthesis quality, including the filter chain.
+// Run with:
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=nes.AudioBenchmark
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AudioBenchmark {
+
+    @Param({ "16000", "44100", "48000" })
+    public int sampleRate;
+
+    @Param({ "FAST", "STANDARD", "HIGH" })
+    public BlipBuffer.Quality quality;
+
+    private APU apu;
+
+    @Setup
+    public void setup() {
+        apu = new APU(new NullAudioSink(sampleRate));
+        apu.setQuality(quality);
+        apu.writeRegister(0x4015, 0x0F);
+        apu.writeRegister(0x4000, 0xBF);
+        apu.writeRegister(0x4002, 0xFD);
+        apu.writeRegister(0x4003, 0x00);
+        apu.writeRegister(0x4008, 0xFF);
+        apu.writeRegister(0x400A, 0x7E);
+        apu.writeRegister(0x400B, 0x00);
+        apu.writeRegister(0x400C, 0x36);
+        apu.writeRegister(0x400E, 0x05);
+        apu.writeRegister(0x400F, 0x00);
+    }
+
+    @Benchmark
+    public long frame() {
+        apu.run(29781);
+        return apu.getClock();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AudioBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,185 @@
+package nes;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import nes.gui.AudioScopePanel;
+import nes.gui.NametableView;
+import nes.gui.PatternTableView;
+
+import org.junit.Test;
+
+public class DebugViewTest {
+
+    // NROM cartridge with 8KB CHR-RAM, filled with noise through the PPU
+    private static PPU createPpu(long seed) throws IOException {
+        byte[] rom = new byte[16 + 16384];
+        rom[0] = 'N';
+        rom[1] = 'E';
+        rom[2] = 'S';
+        rom[3] = 0x1A;
+        rom[4] = 1; // 16KB PRG, no CHR: CHR-RAM
+        File file = File.createTempFile("debug-view", ".nes");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(rom);
+        }
+
+        PPU ppu = new PPU();
+        ppu.setMemory(new Memory(file.getPath()));
+        ppu.setMirroring(PPU.MIRROR_VERTICAL);
+        Random random = new Random(seed);
+        for (int addr = 0; addr < 0x3000; addr++) {
+            ppu.writeVram(addr, random.nextInt(256));
+        }
+        for (int addr = 0x3F00; addr < 0x3F20; addr++) {
+            ppu.writeVram(addr, random.nextInt(64));
+        }
+        return ppu;
+    }
+
+    // Straightforward per-pixel nametable render to check the cached view
+    // against; colours are looked up like the background renderer does
+    private static int[] referenceNametables(PPU ppu) {
+        int[] pixels = new int[NametableView.WIDTH * NametableView.HEIGHT];
+        int table = (ppu.getControl() >> 4) & 1;
+        int[] systemPalette = PPU.getSystemPalette();
+        for (int y = 0; y < NametableView.HEIGHT; y++) {
+            for (int x = 0; x < NametableView.WIDTH; x++) {
+                int base = 0x2000 + (y / 240) * 0x800 + (x / 256) * 0x400;
+                int col = (x % 256) / 8;
+                int row = (y % 240) / 8;
+                int tile = ppu.readVram(base + row * 32 + col);
+                int attribute = ppu.readVram(base + 0x3C0 + (row / 4) * 8 + col / 4);
+                int palette = (attribute >> (((row % 4) / 2) * 4 + ((col % 4) / 2) * 2)) & 3;
+                int addr = table * 0x1000 + tile * 16 + (y % 8);
+                int bit = 7 - (x % 8);
+                int pixel = ((ppu.readVram(addr) >> bit) & 1) | (((ppu.readVram(addr + 8) >> bit) & 1) << 1);
+                int colorSlot = pixel == 0 ? 0 : (palette << 2) | pixel;
+                pixels[y * NametableView.WIDTH + x] = systemPalette[ppu.readVram(0x3F00 + colorSlot) & 0x3F];
+            }
+        }
+        return pixels;
+    }
+
+    private static void assertPatternTables(PPU ppu, PatternTableView view, int palette) {
+        for (int table = 0; table < 2; table++) {
+            int[] expected = ppu.getPatternTable(table, palette);
+            for (int y = 0; y < 128; y++) {
+                for (int x = 0; x < 128; x++) {
+                    assertEquals(expected[y * 128 + x], view.getPixels()[y * PatternTableView.WIDTH + table * 128 + x]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPatternViewRedrawsOnlyChangedTiles() throws IOException {
+        PPU ppu = createPpu(1);
+        PatternTableView view = new PatternTableView();
+
+        view.refresh(ppu, 2);
+        assertEquals(512, view.getTilesRedrawn());
+        assertPatternTables(ppu, view, 2);
+
+        view.refresh(ppu, 2);
+        assertEquals(0, view.getTilesRedrawn());
+
+        // One CHR byte of tile 0x123 (right table)
+        ppu.writeVram(0x1235, 0xA5);
+        view.refresh(ppu, 2);
+        assertEquals(1, view.getTilesRedrawn());
+        assertPatternTables(ppu, view, 2);
+
+        // Another palette's colours don't matter; the shown one's do
+        ppu.writeVram(0x3F15, 0x30);
+        view.refresh(ppu, 2);
+        assertEquals(0, view.getTilesRedrawn());
+        ppu.writeVram(0x3F09, 0x16);
+        view.refresh(ppu, 2);
+        assertEquals(512, view.getTilesRedrawn());
+        assertPatternTables(ppu, view, 2);
+
+        view.refresh(ppu, 5);
+        assertEquals(512, view.getTilesRedrawn());
+        assertPatternTables(ppu, view, 5);
+    }
+
+    @Test
+    public void testNametableViewRedrawsOnlyChangedCells() throws IOException {
+        PPU ppu = createPpu(2);
+        NametableView view = new NametableView();
+
+        view.refresh(ppu);
+        assertEquals(4 * 960, view.getTilesRedrawn());
+        assertArrayEquals(referenceNametables(ppu), view.getPixels());
+        view.refresh(ppu);
+        assertEquals(0, view.getTilesRedrawn());
+
+        // Vertical mirroring: $2000 and $2800 share the byte, so two cells change
+        ppu.writeVram(0x2045, ppu.readVram(0x2045) ^ 0x01);
+        view.refresh(ppu);
+        assertEquals(2, view.getTilesRedrawn());
+        assertArrayEquals(referenceNametables(ppu), view.getPixels());
+
+        // An attribute byte covers 4x4 cells, also mirrored
+        ppu.writeVram(0x27C9, ppu.readVram(0x27C9) ^ 0x0C);
+        view.refresh(ppu);
+        assertEquals(2 * 16, view.getTilesRedrawn());
+        assertArrayEquals(referenceNametables(ppu), view.getPixels());
+
+        // CHR of the background table: only cells using that tile
+        int tile = ppu.readVram(0x2000);
+        int uses = 0;
+        for (int nt = 0; nt < 4; nt++) {
+            for (int cell = 0; cell < 960; cell++) {
+                if (ppu.readVram(0x2000 + nt * 0x400 + cell) == tile)
+                    uses++;
+            }
+        }
+        ppu.writeVram(tile * 16 + 3, ppu.readVram(tile * 16 + 3) ^ 0xFF);
+        view.refresh(ppu);
+        assertEquals(uses, view.getTilesRedrawn());
+        assertArrayEquals(referenceNametables(ppu), view.getPixels());
+
+        // Pixel 0 of every palette is the backdrop, so changing it redraws
+        // everything; palette 1's own colour 0 is never shown
+        ppu.writeVram(0x3F00, ppu.readVram(0x3F00) ^ 0x01);
+        view.refresh(ppu);
+        assertEquals(4 * 960, view.getTilesRedrawn());
+        assertArrayEquals(referenceNametables(ppu), view.getPixels());
+        ppu.writeVram(0x3F04, ppu.readVram(0x3F04) ^ 0x01);
+        view.refresh(ppu);
+        assertArrayEquals(referenceNametables(ppu), view.getPixels());
+
+        // Mirroring and background table switches redraw everything
+        ppu.setMirroring(PPU.MIRROR_HORIZONTAL);
+        view.refresh(ppu);
+        assertEquals(4 * 960, view.getTilesRedrawn());
+        assertArrayEquals(referenceNametables(ppu), view.getPixels());
+
+        ppu.writeRegister(0x2000, 0x10);
+        view.refresh(ppu);
+        assertEquals(4 * 960, view.getTilesRedrawn());
+        assertArrayEquals(referenceNametables(ppu), view.getPixels());
+    }
+
+    @Test
+    public void testFftFindsToneBin() {
+        double[] re = new double[256];
+        double[] im = new double[256];
+        for (int i = 0; i < re.length; i++) {
+            re[i] = Math.cos(2 * Math.PI * 10 * i / re.length) + 0.5 * Math.sin(2 * Math.PI * 33 * i / re.length);
+        }
+        AudioScopePanel.fft(re, im);
+        for (int k = 0; k < re.length / 2; k++) {
+            double expected = k == 10 ? 128 : k == 33 ? 64 : 0;
+            assertEquals(expected, Math.hypot(re[k], im[k]), 1e-6);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package nes;
+
+import java.util.concurrent.TimeUnit;
+
+import nes.video.FrameSink;
+import nes.video.PostProcessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// One frame through each filter chain, tiled on the post-processing pool.
+// "scale2x,scale2x,ntsc" is the 1024x960 (near 1080p) case.
+// Run with:
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=nes.FilterBenchmark
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark {
+
+    @Param({ "scale2x", "scale3x", "hqx", "ntsc", "scale2x,scale2x,ntsc" })
+    public String chain;
+
+    private PostProcessor processor;
+    private int[] frame;
+
+    @Setup
+    public void setup() {
+        processor = new PostProcessor((pixels, width, height) -> {
+        }, PostProcessor.parseFilters(chain));
+        frame = new int[FrameSink.WIDTH * FrameSink.HEIGHT];
+        java.util.Random random = new java.util.Random(1);
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (i > 0 && random.nextInt(4) != 0) ? frame[i - 1] : random.nextInt(0x1000000);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        processor.close();
+    }
+
+    @Benchmark
+    public int[] process() {
+        return processor.process(frame);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FilterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,108 @@
+package nes;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import nes.video.FrameSink;
+import nes.video.HqxFilter;
+import nes.video.NtscFilter;
+import nes.video.PostProcessor;
+import nes.video.Scale2xFilter;
+import nes.video.Scale3xFilter;
+import nes.video.VideoFilter;
+
+import org.junit.Test;
+
+public class FilterTest {
+
+    // Frame drawn from a handful of colours so the scalers' equality tests fire
+    private static int[] createFrame(long seed) {
+        Random random = new Random(seed);
+        int[] colours = { 0x000000, 0xECEEEC, 0x4C9AEC, 0xB062EC, 0x38CC6C, 0xE45A34 };
+        int[] frame = new int[FrameSink.WIDTH * FrameSink.HEIGHT];
+        for (int i = 0; i < frame.length; i++) {
+            // Runs of the same colour, like tiles
+            frame[i] = (i > 0 && random.nextInt(4) != 0) ? frame[i - 1] : colours[random.nextInt(colours.length)];
+        }
+        return frame;
+    }
+
+    @Test
+    public void testScale2xCorner() {
+        int x = 0xFF0000;
+        int y = 0x00FF00;
+        int[] src = {
+                y, x, y,
+                x, y, y,
+                y, y, y };
+        int[] dst = new int[6 * 6];
+        new Scale2xFilter().apply(src, 3, 3, dst, 0, 3);
+
+        // Centre pixel's top-left corner follows the X edge, the rest stay Y
+        assertEquals(x, dst[2 * 6 + 2]);
+        assertEquals(y, dst[2 * 6 + 3]);
+        assertEquals(y, dst[3 * 6 + 2]);
+        assertEquals(y, dst[3 * 6 + 3]);
+    }
+
+    @Test
+    public void testTiledMatchesWholeFrame() {
+        VideoFilter[] filters = { new Scale2xFilter(), new Scale3xFilter(), new HqxFilter(), new NtscFilter() };
+        int[] frame = createFrame(7);
+        for (VideoFilter filter : filters) {
+            int[] expected = new int[frame.length * filter.getScaleX() * filter.getScaleY()];
+            filter.apply(frame, FrameSink.WIDTH, FrameSink.HEIGHT, expected, 0, FrameSink.HEIGHT);
+
+            PostProcessor processor = new PostProcessor((pixels, width, height) -> {
+            }, filter);
+            assertArrayEquals(filter.getClass().getSimpleName(), expected, processor.process(frame));
+            processor.close();
+        }
+    }
+
+    @Test
+    public void testNtscKeepsFlatColour() {
+        int[] frame = new int[FrameSink.WIDTH * FrameSink.HEIGHT];
+        java.util.Arrays.fill(frame, 0x4C9AEC);
+        int[] out = new int[frame.length];
+        new NtscFilter().apply(frame, FrameSink.WIDTH, FrameSink.HEIGHT, out, 0, FrameSink.HEIGHT);
+        for (int rgb : out) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                assertTrue(Math.abs(((rgb >> shift) & 0xFF) - ((0x4C9AEC >> shift) & 0xFF)) <= 3);
+            }
+        }
+    }
+
+    @Test
+    public void testChainRunsOffCallerThread() throws InterruptedException {
+        int[] frame = createFrame(3);
+        int[][] delivered = new int[1][];
+        Thread[] deliveredOn = new Thread[1];
+        CountDownLatch latch = new CountDownLatch(1);
+
+        int[] size = new int[2];
+        PostProcessor processor = new PostProcessor((pixels, width, height) -> {
+            size[0] = width;
+            size[1] = height;
+            delivered[0] = pixels.clone();
+            deliveredOn[0] = Thread.currentThread();
+            latch.countDown();
+        }, PostProcessor.parseFilters("scale2x,scale2x,ntsc"));
+        processor.frameComplete(frame);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        processor.close();
+        assertEquals(FrameSink.WIDTH * 4, size[0]);
+        assertEquals(FrameSink.HEIGHT * 4, size[1]);
+
+        PostProcessor reference = new PostProcessor((pixels, width, height) -> {
+        }, PostProcessor.parseFilters("scale2x,scale2x,ntsc"));
+        assertArrayEquals(reference.process(frame), delivered[0]);
+        assertTrue(deliveredOn[0] != Thread.currentThread());
+        reference.close();
+    }
+}
@@ -0,0 +1,162 @@
+package nes;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import nes.video.BufferFrameSink;
+import nes.video.FanOutFrameSink;
+import nes.video.FileFrameSink;
+import nes.video.FrameCapture;
+import nes.video.FrameSink;
+
+import org.junit.Test;
+
+public class HeadlessTest {
+
+    @Test
+    public void testRunsWithoutDisplay() throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        BufferFrameSink sink = new BufferFrameSink();
+        NES nes = new NES(sink);
+        nes.loadROM("resources/nestest.nes");
+        nes.reset();
+
+        EmulatorRunner runner = new EmulatorRunner(nes);
+        for (int i = 0; i < 30; i++) {
+            runner.runFrame();
+        }
+
+        assertEquals(30, sink.getFrameCount());
+
+        // nestest draws its menu text over a flat background by now
+        int[] pixels = sink.copyPixels();
+        int background = pixels[0];
+        boolean drewSomething = false;
+        for (int p : pixels) {
+            if (p != background) {
+                drewSomething = true;
+                break;
+            }
+        }
+        assertTrue("Expected menu text in the frame", drewSomething);
+    }
+
+    @Test
+    public void testFileSinkWritesRawFrames() throws IOException {
+        File out = File.createTempFile("frames", ".rgb");
+        out.deleteOnExit();
+
+        NES nes = new NES();
+        nes.loadROM("resources/nestest.nes");
+        nes.reset();
+
+        FileFrameSink fileSink = new FileFrameSink(out.getPath());
+        nes.setFrameSink(fileSink);
+        EmulatorRunner runner = new EmulatorRunner(nes);
+        for (int i = 0; i < 3; i++) {
+            runner.runFrame();
+        }
+        fileSink.close();
+
+        assertEquals(3, fileSink.getFramesWritten());
+        assertEquals(3L * FrameSink.WIDTH * FrameSink.HEIGHT * 3, out.length());
+    }
+
+    @Test
+    public void testCatchUpMatchesLockStep() throws IOException {
+        BufferFrameSink[] sinks = { new BufferFrameSink(), new BufferFrameSink() };
+        NES[] systems = new NES[2];
+        EmulatorRunner[] runners = new EmulatorRunner[2];
+        for (int i = 0; i < 2; i++) {
+            systems[i] = new NES(sinks[i]);
+            systems[i].loadROM("resources/nestest.nes");
+            systems[i].reset();
+            runners[i] = new EmulatorRunner(systems[i]);
+        }
+        runners[0].setCatchUpScheduling(false);
+
+        for (int frame = 0; frame < 60; frame++) {
+            runners[0].runFrame();
+            runners[1].runFrame();
+
+            CPU lockStep = systems[0].getCpu();
+            CPU catchUp = systems[1].getCpu();
+            assertEquals(lockStep.getTotalCycles(), catchUp.getTotalCycles());
+            assertEquals(lockStep.PC, catchUp.PC);
+            assertEquals(systems[0].getPpu().getScanline(), systems[1].getPpu().getScanline());
+            assertEquals(systems[0].getPpu().getCycle(), systems[1].getPpu().getCycle());
+            assertArrayEquals(sinks[0].copyPixels(), sinks[1].copyPixels());
+        }
+    }
+
+    @Test
+    public void testFrameDumpWritesEveryNthFrame() throws IOException {
+        File dir = Files.createTempDirectory("dump").toFile();
+        List<int[]> frames = new ArrayList<>();
+        FrameCapture capture = new FrameCapture();
+        capture.startDump(dir, 5, FrameCapture.Format.INDEX);
+
+        NES nes = new NES(new FanOutFrameSink(frame -> frames.add(frame.clone()), capture));
+        nes.loadROM("resources/nestest.nes");
+        nes.reset();
+        EmulatorRunner runner = new EmulatorRunner(nes);
+        for (int i = 0; i < 30; i++) {
+            runner.runFrame();
+        }
+        capture.close();
+
+        assertEquals(0, capture.getFramesDropped());
+        assertEquals(6, capture.getFramesWritten());
+        int[] palette = PPU.getSystemPalette();
+        for (int n = 0; n < 30; n += 5) {
+            File file = new File(dir, String.format("frame-%06d.idx", n));
+            byte[] indices = Files.readAllBytes(file.toPath());
+            assertEquals(FrameSink.WIDTH * FrameSink.HEIGHT, indices.length);
+            for (int i = 0; i < indices.length; i++) {
+                assertEquals(frames.get(n)[i], palette[indices[i]]);
+            }
+        }
+        assertEquals(6, dir.list().length);
+    }
+
+    @Test
+    public void testScreenshotSavesNextFrame() throws Exception {
+        File file = File.createTempFile("screenshot", ".png");
+        file.deleteOnExit();
+        BufferFrameSink sink = new BufferFrameSink();
+        FrameCapture capture = new FrameCapture();
+        NES nes = new NES(new FanOutFrameSink(sink, capture));
+        nes.loadROM("resources/nestest.nes");
+        nes.reset();
+        EmulatorRunner runner = new EmulatorRunner(nes);
+        for (int i = 0; i < 10; i++) {
+            runner.runFrame();
+        }
+
+        Future<File> saved = capture.requestScreenshot(file);
+        runner.runFrame();
+        int[] expected = sink.copyPixels();
+        runner.runFrame(); // Later frames don't change the screenshot
+        assertEquals(file, saved.get(10, TimeUnit.SECONDS));
+        capture.close();
+
+        BufferedImage image = ImageIO.read(file);
+        int[] actual = image.getRGB(0, 0, FrameSink.WIDTH, FrameSink.HEIGHT, null, 0, FrameSink.WIDTH);
+        for (int i = 0; i < actual.length; i++) {
+            assertEquals(expected[i], actual[i] & 0xFFFFFF);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package nes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import nes.audio.BufferAudioSink;
+import nes.nsf.NsfFile;
+import nes.nsf.NsfPlayer;
+
+import org.junit.Test;
+
+public class NsfPlayerTest {
+
+    // Two songs sharing one pulse tone. Song 1 writes a frame counter to the
+    // period every PLAY, so it repeats every 256 frames; song 2 silences the
+    // APU after 60 frames.
+    private static final int[] CODE = {
+            // INIT $8000
+            0x85, 0x01, // STA $01 (song index)
+            0xA9, 0xBF, 0x8D, 0x00, 0x40, // $4000 = $BF: 50% duty, halted length, volume 15
+            0xA9, 0xFD, 0x8D, 0x02, 0x40,
+            0xA9, 0x00, 0x8D, 0x03, 0x40,
+            0x60, // RTS
+            // PLAY $8012
+            0xE6, 0x00, // INC $00
+            0xA5, 0x01, // LDA $01
+            0xD0, 0x07, // BNE song2
+            0xA5, 0x00, 0x8D, 0x02, 0x40, // $4002 = frame counter
+            0x60,
+            0xEA,
+            // song2 $801F
+            0xA5, 0x00, // LDA $00
+            0xC9, 0x3C, // CMP #60
+            0xD0, 0x05, // BNE done
+            0xA9, 0x00, 0x8D, 0x15, 0x40, // $4015 = 0
+            0x60, // done: RTS
+    };
+
+    private static byte[] createNsf(int songs, int load, int init, int play, int[] banks, byte[] data) {
+        byte[] nsf = new byte[NsfFile.HEADER_SIZE + data.length];
+        nsf[0] = 'N';
+        nsf[1] = 'E';
+        nsf[2] = 'S';
+        nsf[3] = 'M';
+        nsf[4] = 0x1A;
+        nsf[5] = 1;
+        nsf[6] = (byte) songs;
+        nsf[7] = 1;
+        putWord(nsf, 0x08, load);
+        putWord(nsf, 0x0A, init);
+        putWord(nsf, 0x0C, play);
+        byte[] title = "Test Tune".getBytes();
+        System.arraycopy(title, 0, nsf, 0x0E, title.length);
+        putWord(nsf, 0x6E, 16639);
+        for (int i = 0; i < banks.length; i++) {
+            nsf[0x70 + i] = (byte) banks[i];
+        }
+        System.arraycopy(data, 0, nsf, NsfFile.HEADER_SIZE, data.length);
+        return nsf;
+    }
+
+    private static void putWord(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) value;
+        dst[offset + 1] = (byte) (value >> 8);
+    }
+
+    private static NsfFile createTestNsf() throws IOException {
+        byte[] code = new byte[CODE.length];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = (byte) CODE[i];
+        }
+        return new NsfFile(createNsf(2, 0x8000, 0x8000, 0x8012, new int[0], code));
+    }
+
+    @Test
+    public void testHeaderIsParsed() throws IOException {
+        NsfFile nsf = createTestNsf();
+        assertEquals(2, nsf.getSongCount());
+        assertEquals(1, nsf.getStartingSong());
+        assertEquals(0x8012, nsf.getPlayAddress());
+        assertEquals("Test Tune", nsf.getTitle());
+        assertEquals(false, nsf.isBankswitched());
+        assertEquals(0x8000, nsf.getPrgImage().length);
+    }
+
+    @Test
+    public void testLoopIsDetectedAndFaded() throws IOException {
+        NsfPlayer player = new NsfPlayer(createTestNsf());
+        player.setLoops(1);
+        player.setFadeSeconds(0.5);
+        BufferAudioSink sink = new BufferAudioSink();
+        NsfPlayer.Result result = player.render(1, sink);
+
+        assertEquals(NsfPlayer.EndReason.LOOP, result.reason);
+        assertEquals(0, result.loopStart);
+        assertEquals(256, result.loopLength);
+        assertEquals(sink.getSampleCount(), result.samples);
+        // One pass of the loop, then half a second of fade (whole frames)
+        double seconds = result.samples / (double) APU.SAMPLE_RATE;
+        assertEquals(257 * 16639e-6 + 0.5, seconds, 0.05);
+
+        short[] samples = sink.copySamples();
+        int peak = 0;
+        for (int i = 0; i < APU.SAMPLE_RATE; i++) {
+            peak = Math.max(peak, Math.abs(samples[i]));
+        }
+        assertTrue(peak > 1000);
+        assertTrue(Math.abs(samples[samples.length - 1]) < 64);
+    }
+
+    @Test
+    public void testSilenceEndsSong() throws IOException {
+        NsfPlayer player = new NsfPlayer(createTestNsf());
+        player.setSilenceSeconds(1.0);
+        NsfPlayer.Result result = player.render(2, new BufferAudioSink(22050));
+
+        // Silenced on the 60th PLAY, then a second of quiet
+        assertEquals(NsfPlayer.EndReason.SILENCE, result.reason);
+        assertEquals(60 + 60, result.frames, 3);
+        assertEquals(-1, result.loopStart);
+    }
+
+    @Test
+    public void testTimeLimitStopsEndlessSong() throws IOException {
+        NsfPlayer player = new NsfPlayer(createTestNsf());
+        player.setLoops(100);
+        player.setMaxSeconds(2.0);
+        player.setFadeSeconds(0);
+        NsfPlayer.Result result = player.render(1, new BufferAudioSink());
+        assertEquals(NsfPlayer.EndReason.TIME_LIMIT, result.reason);
+        assertEquals(2.0, result.samples / (double) APU.SAMPLE_RATE, 0.05);
+    }
+
+    @Test
+    public void testBanksSwitchThroughRegisters() throws IOException {
+        // Data loads at $8005 in 4KB banks; $9000 starts on bank 1
+        byte[] data = new byte[3 * 4096 - 5];
+        data[0] = 0x11; // Bank 0 at $8005
+        data[4096 - 5] = 0x22; // Bank 1 at $9000
+        data[2 * 4096 - 5] = 0x33; // Bank 2 at $A000
+        NsfFile nsf = new NsfFile(createNsf(1, 0x8005, 0x8005, 0x8005, new int[] { 0, 1, 2, 0, 0, 0, 0, 0 }, data));
+        assertTrue(nsf.isBankswitched());
+        assertEquals(3 * 4096, nsf.getPrgImage().length);
+
+        Memory memory = new Memory(nsf.getPrgImage(), nsf.getInitialBanks());
+        assertEquals(0x11, memory.read(0x8005));
+        assertEquals(0x22, memory.read(0x9000));
+        assertEquals(0x33, memory.read(0xA000));
+        memory.write(0x5FF8, 2);
+        memory.write(0x5FFA, 1);
+        assertEquals(0x33, memory.read(0x8000));
+        assertEquals(0x22, memory.read(0xA000));
+
+        // $6000-$7FFF is RAM
+        memory.write(0x6123, 0x5A);
+        assertEquals(0x5A, memory.read(0x6123));
+    }
+}
@@ -0,0 +1,76 @@
+package nes;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// One full frame per invocation, through each PPU stepping strategy.
+// Run with:
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=nes.PPUBenchmark
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PPUBenchmark {
+    private static final int DOTS_PER_FRAME = 341 * 262;
+
+    @Param({ "accurate", "scanline" })
+    public String renderer;
+
+    @Param({ "true", "false" })
+    public boolean rendering;
+
+    private PPU ppu;
+
+    @Setup
+    public void setup() throws IOException {
+        ppu = PPUTest.createScene(1)[0];
+        ppu.setRenderer("scanline".equals(renderer) ? PPU.RENDERER_SCANLINE : PPU.RENDERER_ACCURATE);
+        ppu.writeRegister(0x2001, rendering ? 0x1E : 0x00);
+    }
+
+    // Original per-dot range checks
+    @Benchmark
+    public int branching() {
+        for (int i = 0; i < DOTS_PER_FRAME; i++) {
+            ppu.tickReference();
+        }
+        return ppu.getStatus();
+    }
+
+    // Precomputed action table
+    @Benchmark
+    public int actionTable() {
+        for (int i = 0; i < DOTS_PER_FRAME; i++) {
+            ppu.tick();
+        }
+        return ppu.getStatus();
+    }
+
+    // Action table + idle range skipping
+    @Benchmark
+    public int batched() {
+        ppu.run(DOTS_PER_FRAME);
+        return ppu.getStatus();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PPUBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,435 @@
+package nes;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import nes.video.BufferFrameSink;
+
+import org.junit.Test;
+
+public class PPUTest {
+
+    private static final int DOTS_PER_FRAME = 341 * 262;
+
+    // Builds an NROM cartridge with pseudo-random CHR so every tile is populated
+    static Memory createMemory(long seed) throws IOException {
+        byte[] rom = new byte[16 + 16384 + 8192];
+        rom[0] = 'N';
+        rom[1] = 'E';
+        rom[2] = 'S';
+        rom[3] = 0x1A;
+        rom[4] = 1; // 16KB PRG
+        rom[5] = 1; // 8KB CHR
+        Random random = new Random(seed);
+        for (int i = 16 + 16384; i < rom.length; i++) {
+            // Bias towards transparent pixels so sprite/background priority matters
+            rom[i] = (byte) (random.nextInt() & random.nextInt());
+        }
+
+        File file = File.createTempFile("ppu-test", ".nes");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(rom);
+        }
+        return new Memory(file.getPath());
+    }
+
+    // Two PPUs with identical VRAM, OAM and register state
+    static PPU[] createScene(long seed) throws IOException {
+        Memory memory = createMemory(seed);
+        PPU[] ppus = { new PPU(), new PPU() };
+        for (PPU ppu : ppus) {
+            ppu.setMemory(memory);
+            Random random = new Random(seed);
+            ppu.setMirroring(random.nextBoolean() ? PPU.MIRROR_VERTICAL : PPU.MIRROR_HORIZONTAL);
+
+            // Nametables + Palettes
+            ppu.writeRegister(0x2006, 0x20);
+            ppu.writeRegister(0x2006, 0x00);
+            for (int i = 0; i < 0x1000; i++) {
+                ppu.writeRegister(0x2007, random.nextInt(256));
+            }
+            ppu.writeRegister(0x2006, 0x3F);
+            ppu.writeRegister(0x2006, 0x00);
+            for (int i = 0; i < 32; i++) {
+                ppu.writeRegister(0x2007, random.nextInt(64));
+            }
+
+            // OAM, with sprite 0 somewhere in the middle of the screen
+            ppu.writeRegister(0x2003, 0);
+            for (int i = 0; i < 256; i++) {
+                ppu.writeRegister(0x2004, random.nextInt(256));
+            }
+            ppu.oam[0] = (byte) (40 + random.nextInt(150));
+            ppu.oam[3] = (byte) random.nextInt(256);
+
+            ppu.readRegister(0x2002, 0);
+            ppu.writeRegister(0x2000, random.nextInt(256) & 0x3B); // Random tables + sprite size, no NMI
+            ppu.writeRegister(0x2005, random.nextInt(256));
+            ppu.writeRegister(0x2005, random.nextInt(240));
+            ppu.writeRegister(0x2001, 0x1E);
+        }
+        return ppus;
+    }
+
+    // Runs one frame and returns the dot (scanline * 341 + cycle) sprite 0 hit was raised, or -1
+    private static int runFrame(PPU ppu) {
+        int hitDot = -1;
+        for (int i = 0; i < DOTS_PER_FRAME; i++) {
+            boolean before = (ppu.getStatus() & 0x40) != 0;
+            int dot = ppu.getScanline() * 341 + ppu.getCycle();
+            ppu.tick();
+            if (!before && (ppu.getStatus() & 0x40) != 0)
+                hitDot = dot;
+        }
+        return hitDot;
+    }
+
+    @Test
+    public void testScanlineRendererMatchesAccurate() throws IOException {
+        int hits = 0;
+        for (long seed = 1; seed <= 24; seed++) {
+            PPU[] ppus = createScene(seed);
+            ppus[1].setRenderer(PPU.RENDERER_SCANLINE);
+
+            for (int frame = 0; frame < 3; frame++) {
+                int accurateHit = runFrame(ppus[0]);
+                int scanlineHit = runFrame(ppus[1]);
+
+                assertEquals("Sprite 0 hit dot, seed " + seed, accurateHit, scanlineHit);
+                assertArrayEquals("Frame " + frame + ", seed " + seed, ppus[0].getFrameBuffer(),
+                        ppus[1].getFrameBuffer());
+                if (accurateHit != -1)
+                    hits++;
+            }
+        }
+        assertTrue("Scenes should exercise sprite 0 hit", hits > 0);
+    }
+
+    @Test
+    public void testRendererSwitchAppliesOnLineBoundary() throws IOException {
+        PPU[] ppus = createScene(99);
+        runFrame(ppus[0]);
+        runFrame(ppus[1]);
+
+        // Switch mid-frame, mid-line
+        for (int i = 0; i < 100 * 341 + 50; i++) {
+            ppus[0].tick();
+            ppus[1].tick();
+        }
+        ppus[1].setRenderer(PPU.RENDERER_SCANLINE);
+        for (int i = 0; i < DOTS_PER_FRAME; i++) {
+            ppus[0].tick();
+            ppus[1].tick();
+        }
+        assertArrayEquals(ppus[0].getFrameBuffer(), ppus[1].getFrameBuffer());
+    }
+
+    @Test
+    public void testFrameSkipKeepsSideEffects() throws IOException {
+        for (int renderer : new int[] { PPU.RENDERER_ACCURATE, PPU.RENDERER_SCANLINE }) {
+            for (long seed = 1; seed <= 8; seed++) {
+                PPU[] ppus = createScene(seed);
+                BufferFrameSink sink = new BufferFrameSink();
+                ppus[1].setFrameSink(sink);
+                ppus[1].setRenderer(renderer);
+                ppus[1].setFrameSkip(2);
+
+                for (int frame = 0; frame < 7; frame++) {
+                    int referenceHit = runFrame(ppus[0]);
+                    int skippedHit = runFrame(ppus[1]);
+                    assertEquals("Sprite 0 hit dot, seed " + seed + " frame " + frame, referenceHit, skippedHit);
+
+                    // Frames 0, 3 and 6 are rendered
+                    if (frame % 3 == 0)
+                        assertArrayEquals(ppus[0].getFrameBuffer(), sink.getPixels());
+                }
+
+                assertEquals(3, ppus[1].getFramesRendered());
+                assertEquals(4, ppus[1].getFramesSkipped());
+                assertEquals(3, sink.getFrameCount());
+            }
+        }
+    }
+
+    @Test
+    public void testRunMatchesTick() throws IOException {
+        for (long seed = 1; seed <= 4; seed++) {
+            PPU[] ppus = createScene(seed);
+            Random random = new Random(seed);
+            ppus[0].setOddFrameSkip(seed % 2 == 0);
+            ppus[1].setOddFrameSkip(seed % 2 == 0);
+
+            for (int batch = 0; batch < 4000; batch++) {
+                // Register writes between batches, as the CPU would make them
+                if (random.nextInt(500) == 0) {
+                    int mask = random.nextBoolean() ? 0x1E : random.nextInt(256);
+                    ppus[0].writeRegister(0x2001, mask);
+                    ppus[1].writeRegister(0x2001, mask);
+                }
+                if (random.nextInt(3000) == 0) {
+                    int renderer = random.nextBoolean() ? PPU.RENDERER_ACCURATE : PPU.RENDERER_SCANLINE;
+                    ppus[0].setRenderer(renderer);
+                    ppus[1].setRenderer(renderer);
+                }
+
+                int dots = 1 + random.nextInt(random.nextBoolean() ? 24 : 3000);
+                for (int i = 0; i < dots; i++) {
+                    ppus[0].tick();
+                }
+                ppus[1].run(dots);
+
+                assertEquals(ppus[0].getScanline(), ppus[1].getScanline());
+                assertEquals(ppus[0].getCycle(), ppus[1].getCycle());
+                assertEquals(ppus[0].getStatus(), ppus[1].getStatus());
+                assertEquals(ppus[0].frameComplete, ppus[1].frameComplete);
+                ppus[0].frameComplete = false;
+                ppus[1].frameComplete = false;
+            }
+            assertArrayEquals(ppus[0].getFrameBuffer(), ppus[1].getFrameBuffer());
+        }
+    }
+
+    @Test
+    public void testScheduleMatchesReference() throws IOException {
+        for (long seed = 1; seed <= 6; seed++) {
+            PPU[] ppus = createScene(seed);
+            Random random = new Random(seed);
+            ppus[0].setOddFrameSkip(seed > 3);
+            ppus[1].setOddFrameSkip(seed > 3);
+            if (seed % 3 == 0) {
+                ppus[0].setFrameSkip(1);
+                ppus[1].setFrameSkip(1);
+            }
+
+            for (int i = 0; i < 4 * DOTS_PER_FRAME; i++) {
+                if (random.nextInt(20000) == 0) {
+                    int mask = random.nextInt(256);
+                    ppus[0].writeRegister(0x2001, mask);
+                    ppus[1].writeRegister(0x2001, mask);
+                }
+                ppus[0].tickReference();
+                ppus[1].tick();
+
+                assertEquals(ppus[0].getCycle(), ppus[1].getCycle());
+                assertEquals(ppus[0].getStatus(), ppus[1].getStatus());
+            }
+            assertArrayEquals(ppus[0].getFrameBuffer(), ppus[1].getFrameBuffer());
+            assertEquals(ppus[0].getFramesRendered(), ppus[1].getFramesRendered());
+        }
+    }
+
+    @Test
+    public void testEventPredictionMatchesExecution() throws IOException {
+        int hits = 0;
+        for (long seed = 1; seed <= 12; seed++) {
+            PPU ppu = createScene(seed)[0];
+            Random random = new Random(seed);
+            ppu.setOddFrameSkip(seed % 2 == 0);
+            if (seed % 3 == 0)
+                ppu.setRenderer(PPU.RENDERER_SCANLINE);
+            ppu.run(DOTS_PER_FRAME); // The first frame starts without a pre-render line
+
+            for (int probe = 0; probe < 12; probe++) {
+                ppu.run(1 + random.nextInt(DOTS_PER_FRAME));
+                ppu.nextSprite0HitDot();
+                if (random.nextBoolean()) {
+                    // Move sprite 0 after a prediction was cached
+                    ppu.writeRegister(0x2003, 3);
+                    ppu.writeRegister(0x2004, random.nextInt(256));
+                }
+
+                long vblank = ppu.nextVBlankDot();
+                long clear = ppu.nextFlagClearDot();
+                long frameEnd = ppu.nextFrameEndDot();
+                long hit = ppu.nextSprite0HitDot();
+                assertEquals(vblank / 3 + 1, ppu.nextVBlankCycle()); // Visible once synced past it
+
+                long seenVBlank = -1;
+                long seenClear = -1;
+                long seenFrameEnd = -1;
+                long seenHit = PPU.NEVER;
+                ppu.frameComplete = false;
+                for (int i = 0; i < 2 * DOTS_PER_FRAME; i++) {
+                    int before = ppu.getStatus();
+                    long dot = ppu.getDotClock();
+                    ppu.tick();
+                    int after = ppu.getStatus();
+                    if (seenVBlank < 0 && (before & 0x80) == 0 && (after & 0x80) != 0)
+                        seenVBlank = dot;
+                    if (seenClear < 0 && (before & 0x80) != 0 && (after & 0x80) == 0)
+                        seenClear = dot;
+                    if (seenFrameEnd < 0 && ppu.frameComplete)
+                        seenFrameEnd = dot;
+                    if (seenHit == PPU.NEVER && (before & 0x40) == 0 && (after & 0x40) != 0)
+                        seenHit = dot;
+                }
+
+                assertEquals(vblank, seenVBlank);
+                assertEquals(clear, seenClear);
+                assertEquals(frameEnd, seenFrameEnd);
+                assertEquals("seed " + seed + " probe " + probe, hit, seenHit);
+                if (hit != PPU.NEVER)
+                    hits++;
+            }
+        }
+        assertTrue("Expected sprite 0 hits in the test scenes", hits > 20);
+    }
+
+    @Test
+    public void testPipelinedRenderingMatchesSerial() throws IOException {
+        for (long seed = 1; seed <= 4; seed++) {
+            PPU[] ppus = createScene(seed);
+            Random random = new Random(seed);
+            List<List<int[]>> frames = new ArrayList<>();
+            for (PPU ppu : ppus) {
+                List<int[]> captured = new ArrayList<>();
+                frames.add(captured);
+                ppu.setFrameSink(frame -> captured.add(frame.clone()));
+            }
+            ppus[1].setPipelinedRendering(true); // Takes over from the first frame wrap
+            if (seed % 2 == 0) {
+                ppus[0].setRenderer(PPU.RENDERER_SCANLINE);
+                ppus[1].setRenderer(PPU.RENDERER_SCANLINE);
+            }
+
+            for (int frame = 0; frame < 8; frame++) {
+                // Mid-frame writes: scroll splits, VRAM and OAM updates, mask flips
+                for (int write = 0; write < 40; write++) {
+                    int dots = random.nextInt(DOTS_PER_FRAME / 50);
+                    ppus[0].run(dots);
+                    ppus[1].run(dots);
+
+                    int addr;
+                    int value = random.nextInt(256);
+                    switch (random.nextInt(6)) {
+                        case 0:
+                            addr = 0x2005;
+                            break;
+                        case 1:
+                            addr = 0x2006;
+                            break;
+                        case 2:
+                            addr = 0x2007;
+                            break;
+                        case 3:
+                            addr = 0x2004;
+                            break;
+                        case 4:
+                            addr = 0x2001;
+                            value = random.nextInt(8) == 0 ? 0 : 0x1E;
+                            break;
+                        default:
+                            ppus[0].readRegister(0x2002, 0);
+                            ppus[1].readRegister(0x2002, 0);
+                            continue;
+                    }
+                    ppus[0].writeRegister(addr, value);
+                    ppus[1].writeRegister(addr, value);
+                }
+                if (frame == 4) {
+                    ppus[0].setOddFrameSkip(true);
+                    ppus[1].setOddFrameSkip(true);
+                }
+                while (!ppus[0].frameComplete) {
+                    ppus[0].tick();
+                    ppus[1].tick();
+                }
+                assertTrue(ppus[1].frameComplete);
+                ppus[0].frameComplete = false;
+                ppus[1].frameComplete = false;
+            }
+            ppus[1].drainPipeline();
+
+            assertEquals(frames.get(0).size(), frames.get(1).size());
+            for (int i = 0; i < frames.get(0).size(); i++) {
+                assertArrayEquals("seed " + seed + " frame " + i, frames.get(0).get(i), frames.get(1).get(i));
+            }
+            assertEquals(ppus[0].getFramesRendered(), ppus[1].getFramesRendered());
+            ppus[1].setPipelinedRendering(false);
+            ppus[1].run(DOTS_PER_FRAME); // Shuts the render thread down at the wrap
+        }
+    }
+
+    @Test
+    public void testEventLogStampsWritesWithPosition() throws IOException {
+        PPU ppu = createScene(5)[0];
+        PPUEventLog log = new PPUEventLog(16);
+
+        // Detached: nothing recorded
+        ppu.writeRegister(0x2005, 0x11);
+        ppu.setEventLog(log);
+        assertEquals(0, log.getCount());
+
+        // Two frames of writes, more than the ring holds
+        long frame = ppu.getFrameNumber();
+        int[] written = new int[2];
+        for (int f = 0; f < 2; f++) {
+            for (int i = 0; i < 12; i++) {
+                for (int d = 0; d < 20 * 341 + 7; d++) {
+                    ppu.tick();
+                }
+                if (ppu.getScanline() < 240) {
+                    ppu.writeRegister(0x2005, i);
+                    written[f]++;
+                }
+            }
+            while (ppu.getFrameNumber() == frame + f) {
+                ppu.tick();
+            }
+        }
+        assertTrue(written[0] + written[1] > 16);
+
+        int[] positions = new int[16];
+        int[] writes = new int[16];
+        // Only the newest 16 survive: the first frame lost its oldest events
+        assertEquals(16 - written[1], log.copyFrame(frame, positions, writes));
+        int count = log.copyFrame(frame + 1, positions, writes);
+        assertEquals(written[1], count);
+        // The second frame started at line 0 dot 0, so the first write landed 20 lines and 7 dots in
+        assertEquals(20, PPUEventLog.scanlineOf(positions[0]));
+        assertEquals(7, PPUEventLog.dotOf(positions[0]));
+        int previous = -1;
+        for (int i = 0; i < count; i++) {
+            assertEquals(0x2005, PPUEventLog.addressOf(writes[i]));
+            int dot = PPUEventLog.scanlineOf(positions[i]) * 341 + PPUEventLog.dotOf(positions[i]);
+            assertTrue(dot > previous);
+            previous = dot;
+        }
+
+        ppu.setEventLog(null);
+        long recorded = log.getCount();
+        ppu.writeRegister(0x2000, 0);
+        assertEquals(recorded, log.getCount());
+    }
+
+    @Test
+    public void testEventLogRecordsDmaAndMapperWrites() throws IOException {
+        NES nes = new NES(null);
+        nes.loadROM("resources/nestest.nes");
+        nes.reset();
+        PPUEventLog log = new PPUEventLog();
+        nes.getPpu().setEventLog(log);
+
+        nes.getMemory().write(0x4014, 0x02);
+        nes.getMemory().write(0x8000, 0x80);
+        nes.getMemory().write(0x2001, 0x1E);
+
+        int[] positions = new int[8];
+        int[] writes = new int[8];
+        assertEquals(3, log.copyFrame(nes.getPpu().getFrameNumber(), positions, writes));
+        assertEquals(0x4014, PPUEventLog.addressOf(writes[0]));
+        assertEquals(0x02, PPUEventLog.valueOf(writes[0]));
+        assertEquals(0x8000, PPUEventLog.addressOf(writes[1]));
+        assertEquals(0x2001, PPUEventLog.addressOf(writes[2]));
+        assertEquals(0x1E, PPUEventLog.valueOf(writes[2]));
+    }
+}
@@ -0,0 +1,145 @@
+package nes;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import nes.recording.Recorder;
+import nes.recording.RecordingExporter;
+import nes.recording.RecordingFormat;
+import nes.recording.RecordingReader;
+import nes.video.FanOutFrameSink;
+import nes.video.FrameSink;
+
+import org.junit.Test;
+
+public class RecorderTest {
+
+    @Test
+    public void testRecordingRoundTrip() throws IOException {
+        File file = File.createTempFile("gameplay", ".nesr");
+        file.deleteOnExit();
+
+        // Record nestest while keeping our own copy of every frame and sample
+        List<int[]> frames = new ArrayList<>();
+        ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+        Recorder recorder = new Recorder(new FileOutputStream(file), 64);
+        NES nes = new NES(new FanOutFrameSink(frame -> frames.add(frame.clone()), recorder));
+        nes.loadROM("resources/nestest.nes");
+        nes.reset();
+        nes.getApu().addHook((samples, offset, length) -> pcm.write(samples, offset, length));
+        nes.getApu().addHook(recorder);
+
+        EmulatorRunner runner = new EmulatorRunner(nes);
+        for (int i = 0; i < 30; i++) {
+            runner.runFrame();
+        }
+        recorder.close();
+        assertEquals(0, recorder.getFramesDropped());
+        assertEquals(30, recorder.getFramesRecorded());
+
+        // Delta-compressed nestest frames are tiny next to raw RGB
+        assertTrue(file.length() < 30L * FrameSink.WIDTH * FrameSink.HEIGHT / 10);
+
+        List<int[]> decodedFrames = new ArrayList<>();
+        ByteArrayOutputStream decodedPcm = new ByteArrayOutputStream();
+        try (RecordingReader reader = new RecordingReader(file.getPath())) {
+            assertEquals(APU.SAMPLE_RATE, reader.getSampleRate());
+            int type;
+            while ((type = reader.next()) != RecordingReader.END) {
+                if (type == RecordingFormat.VIDEO || type == RecordingFormat.VIDEO_RGB)
+                    decodedFrames.add(reader.getFrame().clone());
+                else if (type == RecordingFormat.AUDIO)
+                    decodedPcm.write(reader.getAudio(), 0, reader.getAudioLength());
+            }
+        }
+
+        assertEquals(frames.size(), decodedFrames.size());
+        for (int i = 0; i < frames.size(); i++) {
+            assertArrayEquals("Frame " + i, frames.get(i), decodedFrames.get(i));
+        }
+        assertTrue(pcm.size() > 0);
+        assertArrayEquals(pcm.toByteArray(), decodedPcm.toByteArray());
+    }
+
+    @Test
+    public void testOffPaletteFrameStaysLossless() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Recorder recorder = new Recorder(out, 4);
+        int[] palette = PPU.getSystemPalette();
+        int[] first = new int[FrameSink.WIDTH * FrameSink.HEIGHT];
+        for (int i = 0; i < first.length; i++) {
+            first[i] = palette[(i / 7) & 0x3F];
+        }
+        int[] second = first.clone();
+        second[1234] = 0x123456; // Not a system colour
+        int[] third = first.clone();
+        recorder.frameComplete(first);
+        recorder.frameComplete(second);
+        recorder.frameComplete(third);
+        recorder.close();
+
+        File file = File.createTempFile("offpalette", ".nesr");
+        file.deleteOnExit();
+        try (FileOutputStream stream = new FileOutputStream(file)) {
+            out.writeTo(stream);
+        }
+        int[] expectedTypes = { RecordingFormat.VIDEO, RecordingFormat.VIDEO_RGB, RecordingFormat.VIDEO };
+        int[][] expectedFrames = { first, second, third };
+        try (RecordingReader reader = new RecordingReader(file.getPath())) {
+            for (int i = 0; i < 3; i++) {
+                assertEquals(expectedTypes[i], reader.next());
+                assertArrayEquals(expectedFrames[i], reader.getFrame());
+            }
+            assertEquals(RecordingReader.END, reader.next());
+        }
+    }
+
+    @Test
+    public void testExportWritesRgbAndWav() throws IOException {
+        File file = File.createTempFile("export", ".nesr");
+        File rgb = File.createTempFile("export", ".rgb");
+        File wav = File.createTempFile("export", ".wav");
+        file.deleteOnExit();
+        rgb.deleteOnExit();
+        wav.deleteOnExit();
+
+        Recorder recorder = new Recorder(new FileOutputStream(file), 8);
+        int[] frame = new int[FrameSink.WIDTH * FrameSink.HEIGHT];
+        byte[] samples = new byte[1470];
+        Arrays.fill(samples, (byte) 0x11);
+        for (int i = 0; i < 5; i++) {
+            recorder.frameComplete(frame);
+            recorder.onSamples(samples, 0, samples.length);
+        }
+        recorder.close();
+
+        RecordingExporter exporter = new RecordingExporter();
+        exporter.export(file.getPath(), rgb.getPath(), wav.getPath());
+        assertEquals(5, exporter.getFramesWritten());
+        assertEquals(5L * FrameSink.WIDTH * FrameSink.HEIGHT * 3, rgb.length());
+        assertEquals(44 + 5L * samples.length, wav.length());
+
+        try (RandomAccessFile in = new RandomAccessFile(wav, "r")) {
+            byte[] header = new byte[44];
+            in.readFully(header);
+            assertEquals("RIFF", new String(header, 0, 4, "US-ASCII"));
+            assertEquals("WAVE", new String(header, 8, 4, "US-ASCII"));
+            assertEquals("data", new String(header, 36, 4, "US-ASCII"));
+            int rate = (header[24] & 0xFF) | (header[25] & 0xFF) << 8 | (header[26] & 0xFF) << 16;
+            assertEquals(APU.SAMPLE_RATE, rate);
+            int dataLength = (header[40] & 0xFF) | (header[41] & 0xFF) << 8 | (header[42] & 0xFF) << 16;
+            assertEquals(5 * samples.length, dataLength);
+            assertEquals(0x11, in.read());
+        }
+    }
+}
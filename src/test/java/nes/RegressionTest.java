@@ -0,0 +1,83 @@
+package nes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import nes.regression.InputScript;
+import nes.regression.RegressionHarness;
+
+import org.junit.Test;
+
+public class RegressionTest {
+    private static final File GOLDEN = new File("src/test/resources/regression");
+
+    @Test
+    public void testGoldenFramesMatch() throws IOException {
+        RegressionHarness harness = new RegressionHarness(GOLDEN, new File("target/regression"));
+        // Same ROM twice exercises the parallel path: emulators must not share state
+        List<RegressionHarness.Result> results = harness
+                .runAll(Arrays.asList("resources/nestest.nes", "resources/nestest.nes"));
+        assertEquals(2, results.size());
+        for (RegressionHarness.Result result : results) {
+            assertTrue(result.toString(), result.passed());
+            assertEquals(RegressionHarness.DEFAULT_FRAMES, result.framesRun);
+        }
+    }
+
+    @Test
+    public void testReportsFirstDivergingFrame() throws IOException {
+        // Copy the goldens and corrupt frame 40's hash
+        File golden = Files.createTempDirectory("golden").toFile();
+        File out = Files.createTempDirectory("regression").toFile();
+        for (String file : new String[] { "nestest.input", "nestest.nesr" }) {
+            Files.copy(new File(GOLDEN, file).toPath(), new File(golden, file).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        List<String> lines = Files.readAllLines(new File(GOLDEN, "nestest.crc").toPath());
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i).startsWith("40 "))
+                lines.set(i, "40 00000000");
+        }
+        Files.write(new File(golden, "nestest.crc").toPath(), lines);
+
+        RegressionHarness.Result result = new RegressionHarness(golden, out).run("resources/nestest.nes");
+        assertFalse(result.passed());
+        assertEquals(40, result.firstDivergence);
+        assertEquals(41, result.framesRun);
+
+        // The reference frame really is the same picture, so the diff panel has no red
+        BufferedImage diff = ImageIO.read(result.diffImage);
+        assertEquals(256 * 3, diff.getWidth());
+        for (int y = 0; y < 240; y++) {
+            for (int x = 0; x < 256; x++) {
+                assertEquals(diff.getRGB(x, y), diff.getRGB(256 + x, y));
+                assertTrue((diff.getRGB(512 + x, y) & 0xFFFFFF) != 0xFF0000);
+            }
+        }
+    }
+
+    @Test
+    public void testInputScriptHoldsUntilNextEntry() throws IOException {
+        File file = File.createTempFile("input", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), Arrays.asList("# comment", "10 START", "", "12 a+right", "20 -"));
+
+        InputScript script = InputScript.load(file.getPath());
+        assertEquals(0, script.buttonsAt(9));
+        assertEquals(1 << 3, script.buttonsAt(10));
+        assertEquals(1 << 3, script.buttonsAt(11));
+        assertEquals(1 | 1 << 7, script.buttonsAt(12));
+        assertEquals(0, script.buttonsAt(25));
+    }
+}